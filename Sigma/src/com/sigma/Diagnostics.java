@@ -0,0 +1,60 @@
+package com.sigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * The errors reported for one script. The lexer and parser record syntax errors here
+ * and carry on; runtime and reference errors are thrown as SigmaExceptions and only
+ * end up here once whoever runs the script catches them.
+ */
+public class Diagnostics {
+    private final ArrayList<String> syntaxErrors = new ArrayList<>();
+    private final ArrayList<String> runtimeErrors = new ArrayList<>();
+    private final ArrayList<String> referenceErrors = new ArrayList<>();
+
+    void syntaxError(String message) {
+        syntaxErrors.add(message);
+    }
+
+    public void add(SigmaException error) {
+        switch (error.getKind()) {
+            case RUNTIME -> runtimeErrors.add(error.getMessage());
+            case REFERENCE -> referenceErrors.add(error.getMessage());
+        }
+    }
+
+    public List<String> getSyntaxErrors() {
+        return Collections.unmodifiableList(syntaxErrors);
+    }
+
+    public List<String> getRuntimeErrors() {
+        return Collections.unmodifiableList(runtimeErrors);
+    }
+
+    public List<String> getReferenceErrors() {
+        return Collections.unmodifiableList(referenceErrors);
+    }
+
+    public boolean hasErrors() {
+        return !syntaxErrors.isEmpty() || !runtimeErrors.isEmpty() || !referenceErrors.isEmpty();
+    }
+
+    public void print(PrintStream out) {
+        final String ANSI_YELLOW = "\u001B[33m";
+        final String ANSI_RED_BACKGROUND = "\u001B[41m";
+        final String ANSI_RED = "\u001B[31m";
+        final String ANSI_RESET = "\u001B[0m";
+        for (String syntaxErrorMessage : syntaxErrors) {
+            out.println(ANSI_YELLOW + syntaxErrorMessage + ANSI_RESET);
+        }
+        for (String runtimeErrorMessage : runtimeErrors) {
+            out.println(ANSI_RED_BACKGROUND + runtimeErrorMessage + ANSI_RESET);
+        }
+        for (String referenceErrorMessage : referenceErrors) {
+            out.println(ANSI_RED + referenceErrorMessage + ANSI_RESET);
+        }
+    }
+}
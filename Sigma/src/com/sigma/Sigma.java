@@ -1,50 +1,80 @@
 package com.sigma;
 
+import com.sigma.ast.Node;
+import com.sigma.ast.Program;
 import com.sigma.environments.Environment;
-import com.sigma.evaluation.Evaluator;
 import com.sigma.lexicalAnalysis.*;
+import com.sigma.output.ChannelSink;
+import com.sigma.output.OutputSink;
 import com.sigma.parsing.Parser;
+import com.sigma.profiling.Profiler;
+import com.sigma.profiling.ProfilingEvaluator;
+import com.sigma.scripting.SigmaEngine;
+import com.sigma.scripting.SigmaScript;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+
+import static com.sigma.SigmaException.Kind.*;
 
 public class Sigma {
-    private static final ArrayList<String> syntaxErrorMessages = new ArrayList<>();
-    private static final ArrayList<String> runtimeErrorMessages = new ArrayList<>();
-    private static final ArrayList<String> referenceErrorMessages = new ArrayList<>();
+    private static final ThreadLocal<Diagnostics> diagnostics = ThreadLocal.withInitial(Diagnostics::new);
 
     public static void main(String[] args) throws IOException {
         try {
-            if (args.length == 1) runFile(args[0]);
-            else {
-                System.out.println("Usage: sigma [path to .sigma file]");
-                System.exit(64);
+            String profile = null;
+            String path = null;
+            for (String arg : args) {
+                if (arg.equals("--profile")) profile = "";
+                else if (arg.startsWith("--profile=")) profile = arg.substring("--profile=".length());
+                else if (path == null && !arg.startsWith("--")) path = arg;
+                else usage();
             }
+            if (path == null) usage();
+            runFile(path, profile);
         } catch (IOException e) {
             throw new IOException(e.toString());
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: sigma [--profile[=output file]] [path to .sigma file]");
+        System.exit(64);
+    }
+
     public static void runFile(String path) throws IOException {
+        runFile(path, null);
+    }
+
+    // profile is where to write the collapsed stacks, empty for next to the script, or
+    // null to run without profiling. Scripts run on the tree engine: the VM is only
+    // available through SigmaEngine until it outruns it.
+    public static void runFile(String path, String profile) throws IOException {
         if (!path.endsWith(".sigma")) path += ".sigma";
+        if (profile != null && profile.isEmpty()) profile = path.substring(0, path.length() - ".sigma".length()) + ".collapsed";
         System.out.println("Running " + path + "...");
-        String sourceCode = getSourceCodeFromFile(path);
-
-        Lexer lexer = new Lexer(sourceCode);
-
-        Parser parser = new Parser(lexer.lex());
-        //lexer.printLexemes();
-        Lexeme programParseTree = parser.program();
-        //programParseTree.printTree();
-        System.out.println();
-
         Environment global = new Environment();
-
-        Evaluator evaluator = new Evaluator();
-        evaluator.eval(programParseTree, global);
+        OutputSink out = ChannelSink.standard();
+        // The lexer reports a stray = as a runtime error, so lexing and parsing end the
+        // run the same way running does
+        try {
+            // The Parser pulls lexemes from the mapped file as it goes, so only the tree
+            // is ever held in memory
+            Lexer lexer = Lexer.open(Paths.get(path));
+
+            Parser parser = new Parser(lexer);
+            //lexer.printLexemes();
+            Program programParseTree = parser.program();
+            System.out.println();
+
+            SigmaScript script = new SigmaEngine().compile(programParseTree);
+            if (profile == null) script.run(global, out);
+            else profile(script.getProgram(), global, out, profile);
+        } catch (SigmaException e) {
+            getDiagnostics().add(e);
+            printErrors();
+            System.exit(e.getExitCode());
+        }
         //evaluator.print();
         System.out.println();
         System.out.println(global);
@@ -52,50 +82,65 @@ public class Sigma {
         printErrors();
     }
 
-    private static String getSourceCodeFromFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        return new String(bytes, Charset.defaultCharset());
+    // The profile is reported even when the script ends with an error
+    private static void profile(Program program, Environment global, OutputSink out, String path) throws IOException {
+        Profiler profiler = new Profiler();
+        profiler.start();
+        try {
+            new ProfilingEvaluator(out, profiler).eval(program, global);
+        } finally {
+            out.flush();
+            profiler.stop();
+            profiler.writeCollapsed(Paths.get(path));
+            profiler.report(System.err);
+            System.err.println("Collapsed stacks written to " + path);
+        }
+    }
+
+    // Errors
+    // Calls can only nest this deep. Either engine ends a deeper run with a runtime
+    // error instead of growing its stack until the JVM runs out of memory.
+    public static final int MAX_CALL_DEPTH = 10_000;
+
+    // Syntax errors are recorded in the Diagnostics of the script being compiled on
+    // this thread. Runtime and reference errors end the run by throwing.
+    public static Diagnostics getDiagnostics() {
+        return diagnostics.get();
+    }
+
+    public static void setDiagnostics(Diagnostics diagnostics) {
+        Sigma.diagnostics.set(diagnostics);
     }
 
     public static void syntaxError(String message, int lineNumber) {
-        syntaxErrorMessages.add("Syntax error (line " + lineNumber + "): " + message);
+        diagnostics.get().syntaxError("Syntax error (line " + lineNumber + "): " + message);
     }
 
     public static void syntaxError(String message, Lexeme lexeme) {
-        syntaxErrorMessages.add("Syntax error at " + lexeme + ": " + message);
+        diagnostics.get().syntaxError("Syntax error at " + lexeme + ": " + message);
     }
 
     public static void runtimeError(String message, int lineNumber) {
-        runtimeErrorMessages.add("Runtime error at line " + lineNumber + ": " + message);
-        printErrors();
-        System.exit(65);
+        throw new SigmaException(RUNTIME, "Runtime error at line " + lineNumber + ": " + message, lineNumber);
     }
 
     public static void runtimeError(String message, Lexeme lexeme) {
-        runtimeErrorMessages.add("Runtime error at " + lexeme + ": " + message);
-        printErrors();
-        System.exit(65);
+        throw new SigmaException(RUNTIME, "Runtime error at " + lexeme + ": " + message, lexeme);
+    }
+
+    public static void runtimeError(String message, Node node) {
+        throw new SigmaException(RUNTIME, "Runtime error at " + node + ": " + message, node);
     }
 
     public static void referenceError(String message, Lexeme lexeme) {
-        referenceErrorMessages.add("Reference error at " + lexeme + ": " + message);
-        printErrors();
-        System.exit(66);
+        throw new SigmaException(REFERENCE, "Reference error at " + lexeme + ": " + message, lexeme);
+    }
+
+    public static void referenceError(String message, Node node) {
+        throw new SigmaException(REFERENCE, "Reference error at " + node + ": " + message, node);
     }
 
     private static void printErrors() {
-        final String ANSI_YELLOW = "\u001B[33m";
-        final String ANSI_RED_BACKGROUND = "\u001B[41m";
-        final String ANSI_RED = "\u001B[31m";
-        final String ANSI_RESET = "\u001B[0m";
-        for (String syntaxErrorMessage : syntaxErrorMessages) {
-            System.out.println(ANSI_YELLOW + syntaxErrorMessage + ANSI_RESET);
-        }
-        for (String runtimeErrorMessage : runtimeErrorMessages) {
-            System.out.println(ANSI_RED_BACKGROUND + runtimeErrorMessage + ANSI_RESET);
-        }
-        for (String referenceErrorMessage : referenceErrorMessages) {
-            System.out.println(ANSI_RED + referenceErrorMessage + ANSI_RESET);
-        }
+        diagnostics.get().print(System.out);
     }
 }
@@ -0,0 +1,54 @@
+package com.sigma;
+
+import com.sigma.ast.Node;
+import com.sigma.lexicalAnalysis.Lexeme;
+
+/*
+ * A runtime or reference error. Either one ends the script: the exception unwinds the
+ * whole run, and the command line prints it and exits while a SigmaEngine reports it
+ * to its host as a ScriptException.
+ */
+public class SigmaException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        RUNTIME(65),
+        REFERENCE(66);
+
+        private final int exitCode;
+
+        Kind(int exitCode) {
+            this.exitCode = exitCode;
+        }
+    }
+
+    private final Kind kind;
+    private final int lineNumber;
+
+    public SigmaException(Kind kind, String message, int lineNumber) {
+        super(message);
+        this.kind = kind;
+        this.lineNumber = lineNumber;
+    }
+
+    public SigmaException(Kind kind, String message, Lexeme lexeme) {
+        this(kind, message, lexeme == null || lexeme.getLineNumber() == null ? -1 : lexeme.getLineNumber());
+    }
+
+    public SigmaException(Kind kind, String message, Node node) {
+        this(kind, message, node == null ? -1 : node.getLineNumber());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getExitCode() {
+        return kind.exitCode;
+    }
+
+    // -1 when the error has no position in the source
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,30 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+public final class ArrayLiteral extends Node {
+    private final Node[] elements;
+
+    public ArrayLiteral(int lineNumber, List<Node> elements) {
+        super(lineNumber);
+        this.elements = elements.toArray(new Node[0]);
+    }
+
+    public int size() {
+        return elements.length;
+    }
+
+    public Node get(int index) {
+        return elements[index];
+    }
+
+    public TokenType getType() {
+        return TokenType.ARRAY;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitArrayLiteral(this, context);
+    }
+}
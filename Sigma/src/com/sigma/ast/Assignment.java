@@ -0,0 +1,33 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+// x <- value. The Parser turns x +<- y into x <- x + y, and ++x‼ into x <- x + 1, so
+// value is the whole right hand side.
+public final class Assignment extends Node {
+    private final Lexeme name;
+    private final Node value;
+
+    public Assignment(int lineNumber, Lexeme name, Node value) {
+        super(lineNumber);
+        this.name = name;
+        this.value = value;
+    }
+
+    public Lexeme getName() {
+        return name;
+    }
+
+    public Node getValue() {
+        return value;
+    }
+
+    public TokenType getType() {
+        return TokenType.ASSIGNMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitAssignment(this, context);
+    }
+}
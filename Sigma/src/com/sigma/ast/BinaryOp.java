@@ -0,0 +1,50 @@
+package com.sigma.ast;
+
+import com.sigma.evaluation.OperatorNode;
+import com.sigma.lexicalAnalysis.TokenType;
+
+// Arithmetic, comparison and boolean operators, named by the operator's token type
+public final class BinaryOp extends Node {
+    private final TokenType operator;
+    private final Node left;
+    private final Node right;
+
+    // Rewritten by the Evaluator as it learns the operand types. Volatile because the
+    // tasks of a pareach run the same tree and rewrite it from their own threads.
+    private volatile OperatorNode node = OperatorNode.UNINITIALIZED;
+
+    public BinaryOp(int lineNumber, TokenType operator, Node left, Node right) {
+        super(lineNumber);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    public TokenType getOperator() {
+        return operator;
+    }
+
+    public Node getLeft() {
+        return left;
+    }
+
+    public Node getRight() {
+        return right;
+    }
+
+    public OperatorNode getNode() {
+        return node;
+    }
+
+    public void rewrite(OperatorNode node) {
+        this.node = node;
+    }
+
+    public TokenType getType() {
+        return operator;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitBinaryOp(this, context);
+    }
+}
@@ -0,0 +1,48 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+// A statement list. Its value is the value of its last statement, and an empty block,
+// like » «, has no value.
+public final class Block extends Node {
+    private final Node[] statements;
+    private final boolean declares;
+
+    public Block(int lineNumber, List<Node> statements) {
+        super(lineNumber);
+        this.statements = statements.toArray(new Node[0]);
+        boolean declares = false;
+        for (Node statement : this.statements) {
+            if (statement instanceof VariableDeclaration || statement instanceof FunctionDefinition) declares = true;
+        }
+        this.declares = declares;
+    }
+
+    public int size() {
+        return statements.length;
+    }
+
+    public Node get(int index) {
+        return statements[index];
+    }
+
+    public Node last() {
+        return statements.length == 0 ? null : statements[statements.length - 1];
+    }
+
+    // Whether it declares variables or functions of its own. A loop body that doesn't
+    // runs in the loop's environment instead of a new one each time around.
+    public boolean hasDeclarations() {
+        return declares;
+    }
+
+    public TokenType getType() {
+        return TokenType.STATEMENT_LIST;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitBlock(this, context);
+    }
+}
@@ -0,0 +1,18 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+// Leaves the innermost loop it is in
+public final class BreakStatement extends Node {
+    public BreakStatement(int lineNumber) {
+        super(lineNumber);
+    }
+
+    public TokenType getType() {
+        return TokenType.BREAK_STATEMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitBreakStatement(this, context);
+    }
+}
@@ -0,0 +1,80 @@
+package com.sigma.ast;
+
+import com.sigma.evaluation.Builtin;
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+public final class Call extends Node {
+    private final Lexeme name;
+    private final Node[] arguments;
+
+    // Set by the Resolver
+    private boolean tailCall;
+    private Builtin builtin;
+
+    // Inline cache: the last function called from here, once its parameters have
+    // been checked against this call. It holds the definition rather than the
+    // closure, since one tree is shared by every run of a compiled script and a
+    // closure belongs to one run's environments. Finding the closure is already a
+    // walk up a known number of environments to a known slot, the same work a guard
+    // on the binding would do, so the closure itself isn't cached.
+    //
+    // Threads running the same tree, like a pareach's, may each set it. A definition
+    // is complete before any run starts and a reader only trusts the cache when it
+    // holds the very definition it is calling, so any write a thread sees is safe;
+    // volatile makes that visible without relying on it.
+    private volatile FunctionDefinition target;
+
+    public Call(int lineNumber, Lexeme name, List<Node> arguments) {
+        super(lineNumber);
+        this.name = name;
+        this.arguments = arguments.toArray(new Node[0]);
+    }
+
+    public Lexeme getName() {
+        return name;
+    }
+
+    public int getArgumentCount() {
+        return arguments.length;
+    }
+
+    public Node getArgument(int index) {
+        return arguments[index];
+    }
+
+    public boolean isTailCall() {
+        return tailCall;
+    }
+
+    public void setTailCall(boolean tailCall) {
+        this.tailCall = tailCall;
+    }
+
+    // null for log and calls to Sigma functions
+    public Builtin getBuiltin() {
+        return builtin;
+    }
+
+    public void bind(Builtin builtin) {
+        this.builtin = builtin;
+    }
+
+    public FunctionDefinition getTarget() {
+        return target;
+    }
+
+    public void setTarget(FunctionDefinition target) {
+        this.target = target;
+    }
+
+    public TokenType getType() {
+        return TokenType.FUNCTION_CALL;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitCall(this, context);
+    }
+}
@@ -0,0 +1,87 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * The value switched on, the cases as parallel lists of values and blocks, and the
+ * nocase block, which is null when there isn't one.
+ *
+ * Cases that are literals, including ones the ConstantFolder made literals, are found
+ * with one lookup in a table of the first case with each value. Only the other cases
+ * have to be evaluated and compared in turn, and only those before the literal match.
+ */
+public final class ChangeStatement extends Node {
+    private final Node value;
+    private final Node[] cases;
+    private final Block[] blocks;
+    private final Block otherwise;
+    private final HashMap<Value, Integer> literalCases = new HashMap<>();
+    private final int[] computedCases; // indexes, in order
+
+    public ChangeStatement(int lineNumber, Node value, List<Node> cases, List<Block> blocks, Block otherwise) {
+        super(lineNumber);
+        this.value = value;
+        this.cases = cases.toArray(new Node[0]);
+        this.blocks = blocks.toArray(new Block[0]);
+        this.otherwise = otherwise;
+        ArrayList<Integer> computed = new ArrayList<>();
+        for (int i = 0; i < this.cases.length; i++) {
+            if (this.cases[i] instanceof Literal) literalCases.putIfAbsent(((Literal) this.cases[i]).getValue(), i);
+            else computed.add(i);
+        }
+        computedCases = computed.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public Node getValue() {
+        return value;
+    }
+
+    public int getCaseCount() {
+        return cases.length;
+    }
+
+    public Node getCase(int index) {
+        return cases[index];
+    }
+
+    public Block getBlock(int index) {
+        return blocks[index];
+    }
+
+    public Block getOtherwise() {
+        return otherwise;
+    }
+
+    // The first literal case equal to value, or getCaseCount() if there is none. Only
+    // numbers, strings, booleans and nothing can equal a literal.
+    public int matchLiteral(Value value) {
+        if (literalCases.isEmpty() || !(value instanceof NumberValue || value instanceof StringValue
+                || value instanceof BooleanValue || value instanceof NothingValue)) {
+            return cases.length;
+        }
+        Integer index = literalCases.get(value);
+        return index == null ? cases.length : index;
+    }
+
+    public int getComputedCaseCount() {
+        return computedCases.length;
+    }
+
+    // The index of the index-th case that isn't a literal
+    public int getComputedCase(int index) {
+        return computedCases[index];
+    }
+
+    public TokenType getType() {
+        return TokenType.CHANGE_STATEMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitChangeStatement(this, context);
+    }
+}
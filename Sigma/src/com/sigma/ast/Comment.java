@@ -0,0 +1,25 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+// Kept as a statement because it counts as one: a block ending in a comment has no value
+public final class Comment extends Node {
+    private final String text;
+
+    public Comment(int lineNumber, String text) {
+        super(lineNumber);
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public TokenType getType() {
+        return TokenType.COMMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitComment(this, context);
+    }
+}
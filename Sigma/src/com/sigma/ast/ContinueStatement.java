@@ -0,0 +1,19 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+// Skips the rest of the innermost loop's body. The loop's count still goes up, and a
+// for loop still runs its update.
+public final class ContinueStatement extends Node {
+    public ContinueStatement(int lineNumber) {
+        super(lineNumber);
+    }
+
+    public TokenType getType() {
+        return TokenType.CONTINUE_STATEMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitContinueStatement(this, context);
+    }
+}
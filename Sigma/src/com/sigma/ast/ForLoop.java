@@ -0,0 +1,117 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+/*
+ * A loop of the form for {var i <- a‼ i < n‼ ++i}, with < or <? (or ≤), is a counted
+ * loop as long as nothing but the update changes i: the evaluator keeps i as a double
+ * and only compares it against n. getLimit() is n for a loop of that form.
+ */
+public final class ForLoop extends Node {
+    private final VariableDeclaration initializer;
+    private final Node condition;
+    private final Node update;
+    private final Block body;
+    private final Lexeme counter;
+    private boolean counterUsed = false;
+    private final Node limit;
+    private boolean variableRead = false;
+    private boolean variableWritten = false;
+
+    public ForLoop(int lineNumber, VariableDeclaration initializer, Node condition, Node update, Block body) {
+        super(lineNumber);
+        this.initializer = initializer;
+        this.condition = condition;
+        this.update = update;
+        this.body = body;
+        this.counter = new Lexeme(TokenType.IDENTIFIER, lineNumber, "count");
+        this.limit = countedLimit(initializer, condition, update);
+    }
+
+    private static Node countedLimit(VariableDeclaration initializer, Node condition, Node update) {
+        if (initializer == null || initializer.getValue() == null) return null;
+        if (!(condition instanceof BinaryOp) || !(update instanceof UnaryOp)) return null;
+        BinaryOp comparison = (BinaryOp) condition;
+        UnaryOp step = (UnaryOp) update;
+        TokenType operator = comparison.getOperator();
+        if (operator != LESS && operator != LEQ && operator != LESS_QUESTION) return null;
+        if (step.getOperator() != INCREMENT) return null;
+        String name = initializer.getName().getStringVal();
+        if (!isVariable(comparison.getLeft(), name) || !isVariable(step.getOperand(), name)) return null;
+        return comparison.getRight();
+    }
+
+    private static boolean isVariable(Node node, String name) {
+        return node instanceof Variable && ((Variable) node).getName().getStringVal().equals(name);
+    }
+
+    public VariableDeclaration getInitializer() {
+        return initializer;
+    }
+
+    public Node getCondition() {
+        return condition;
+    }
+
+    public Node getUpdate() {
+        return update;
+    }
+
+    public Block getBody() {
+        return body;
+    }
+
+    // Counted loops
+    public Node getLimit() {
+        return limit;
+    }
+
+    public boolean isCounted() {
+        return limit != null && !variableWritten;
+    }
+
+    // Whether the limit goes up to and including n
+    public boolean isInclusive() {
+        return ((BinaryOp) condition).getOperator() != LESS;
+    }
+
+    // Whether anything but the condition and the update reads i, so that it has to be
+    // stored for it each time around
+    public boolean isVariableRead() {
+        return variableRead;
+    }
+
+    public void setVariableRead(boolean variableRead) {
+        this.variableRead = variableRead;
+    }
+
+    public void setVariableWritten(boolean variableWritten) {
+        this.variableWritten = variableWritten;
+    }
+
+    // The loop's implicit count variable
+    public Lexeme getCounter() {
+        return counter;
+    }
+
+    // Whether anything refers to count; set by the Resolver, and count is only kept
+    // up to date when it is
+    public boolean isCounterUsed() {
+        return counterUsed;
+    }
+
+    public void setCounterUsed(boolean counterUsed) {
+        this.counterUsed = counterUsed;
+    }
+
+    public TokenType getType() {
+        return TokenType.FOR_LOOP;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitForLoop(this, context);
+    }
+}
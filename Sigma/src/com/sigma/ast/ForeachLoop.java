@@ -0,0 +1,55 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+public final class ForeachLoop extends Node {
+    private final Lexeme variable;
+    private final Node array;
+    private final Block body;
+    private final Lexeme counter;
+    private boolean counterUsed = false;
+
+    public ForeachLoop(int lineNumber, Lexeme variable, Node array, Block body) {
+        super(lineNumber);
+        this.variable = variable;
+        this.array = array;
+        this.body = body;
+        this.counter = new Lexeme(TokenType.IDENTIFIER, lineNumber, "count");
+    }
+
+    public Lexeme getVariable() {
+        return variable;
+    }
+
+    public Node getArray() {
+        return array;
+    }
+
+    public Block getBody() {
+        return body;
+    }
+
+    // The loop's implicit count variable
+    public Lexeme getCounter() {
+        return counter;
+    }
+
+    // Whether anything refers to count; set by the Resolver, and count is only kept
+    // up to date when it is
+    public boolean isCounterUsed() {
+        return counterUsed;
+    }
+
+    public void setCounterUsed(boolean counterUsed) {
+        this.counterUsed = counterUsed;
+    }
+
+    public TokenType getType() {
+        return TokenType.FOREACH_LOOP;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitForeachLoop(this, context);
+    }
+}
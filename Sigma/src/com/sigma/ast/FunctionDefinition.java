@@ -0,0 +1,63 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+public final class FunctionDefinition extends Node {
+    private final Lexeme name;
+    private final Lexeme[] parameters;
+    private final Block body;
+
+    // Set by the Resolver
+    private int frameSize;
+    private boolean directParameters;
+
+    public FunctionDefinition(int lineNumber, Lexeme name, List<Lexeme> parameters, Block body) {
+        super(lineNumber);
+        this.name = name;
+        this.parameters = parameters.toArray(new Lexeme[0]);
+        this.body = body;
+    }
+
+    public Lexeme getName() {
+        return name;
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    public Lexeme getParameter(int index) {
+        return parameters[index];
+    }
+
+    public Block getBody() {
+        return body;
+    }
+
+    // Slots in a call's environment: the parameters, then the body's declarations
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    // Whether parameter i is always in slot i and can't clash with an outer variable,
+    // so arguments can be stored without checking
+    public boolean hasDirectParameters() {
+        return directParameters;
+    }
+
+    public void setFrame(int frameSize, boolean directParameters) {
+        this.frameSize = frameSize;
+        this.directParameters = directParameters;
+    }
+
+    public TokenType getType() {
+        return TokenType.FUNCTION_DEFINITION;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitFunctionDefinition(this, context);
+    }
+}
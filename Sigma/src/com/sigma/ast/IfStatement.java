@@ -0,0 +1,44 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+// The if and butif branches as parallel lists of conditions and blocks, tried in
+// order, and the but block, which is null when there isn't one
+public final class IfStatement extends Node {
+    private final Node[] conditions;
+    private final Block[] blocks;
+    private final Block otherwise;
+
+    public IfStatement(int lineNumber, List<Node> conditions, List<Block> blocks, Block otherwise) {
+        super(lineNumber);
+        this.conditions = conditions.toArray(new Node[0]);
+        this.blocks = blocks.toArray(new Block[0]);
+        this.otherwise = otherwise;
+    }
+
+    public int getBranchCount() {
+        return conditions.length;
+    }
+
+    public Node getCondition(int branch) {
+        return conditions[branch];
+    }
+
+    public Block getBlock(int branch) {
+        return blocks[branch];
+    }
+
+    public Block getOtherwise() {
+        return otherwise;
+    }
+
+    public TokenType getType() {
+        return TokenType.IF_STATEMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitIfStatement(this, context);
+    }
+}
@@ -0,0 +1,37 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.Value;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+// A number, string, boolean or nothing, with its value made once by the Parser
+public final class Literal extends Node {
+    private final Value value;
+
+    public Literal(int lineNumber, Value value) {
+        super(lineNumber);
+        this.value = value;
+    }
+
+    public Value getValue() {
+        return value;
+    }
+
+    public TokenType getType() {
+        return value.getType();
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitLiteral(this, context);
+    }
+
+    public String toString() {
+        return switch (value.getType()) {
+            case NUMBER -> super.toString() + ": " + value.getNumVal();
+            case STRING -> super.toString() + ": \"" + value.getStringVal() + "\"";
+            case BOOLEAN -> super.toString() + ": " + (value.getBoolVal() ? "true" : "fals");
+            default -> super.toString();
+        };
+    }
+}
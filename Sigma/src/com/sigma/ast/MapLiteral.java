@@ -0,0 +1,41 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+// [key <- value, ...] for a map, or [key, ...] for a set, which has no values
+public final class MapLiteral extends Node {
+    private final Node[] keys;
+    private final Node[] values;
+
+    public MapLiteral(int lineNumber, List<Node> keys, List<Node> values) {
+        super(lineNumber);
+        this.keys = keys.toArray(new Node[0]);
+        this.values = values == null ? null : values.toArray(new Node[0]);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean isSet() {
+        return values == null;
+    }
+
+    public Node getKey(int index) {
+        return keys[index];
+    }
+
+    public Node getValue(int index) {
+        return values[index];
+    }
+
+    public TokenType getType() {
+        return TokenType.MAP;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitMapLiteral(this, context);
+    }
+}
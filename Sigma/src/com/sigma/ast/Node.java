@@ -0,0 +1,32 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+/*
+ * A node of the syntax tree the Parser builds. Each kind of node is its own final class
+ * with typed fields, so passes reach a node's parts directly instead of by child index.
+ * The shape of a tree never changes after parsing; passes that rewrite it, like the
+ * ConstantFolder, build new nodes. The Resolver's annotations (lexical addresses on
+ * names, tail calls) are the only state filled in later.
+ *
+ * getType() names the node like the parse tree used to, for error messages.
+ */
+public abstract class Node {
+    private final int lineNumber;
+
+    protected Node(int lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public abstract TokenType getType();
+
+    public abstract <R, C> R accept(Visitor<R, C> visitor, C context);
+
+    public String toString() {
+        return "[" + getType() + "] (line " + lineNumber + ")";
+    }
+}
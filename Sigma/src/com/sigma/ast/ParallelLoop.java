@@ -0,0 +1,107 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.List;
+
+/*
+ * pareach {var x of array} runs its body for every element at once, each in an
+ * environment of its own, with count as the element's index. The reduction form,
+ * pareach {var x of array‼ total <- combine}, folds the values the body gives into
+ * total with the two-argument function combine once every element is done.
+ *
+ * Combining two values runs the call combine {<left>, <right>}, made here, in a scope
+ * holding just those two; the names can't be written in a script, so they never clash
+ * with one that is.
+ */
+public final class ParallelLoop extends Node {
+    private final Lexeme variable;
+    private final Node array;
+    private final Lexeme target;
+    private final Lexeme combiner;
+    private final Block body;
+    private final Lexeme counter;
+    private boolean counterUsed = false;
+    private final Lexeme left;
+    private final Lexeme right;
+    private final Block combination;
+
+    public ParallelLoop(int lineNumber, Lexeme variable, Node array, Lexeme target, Lexeme combiner, Block body) {
+        super(lineNumber);
+        this.variable = variable;
+        this.array = array;
+        this.target = target;
+        this.combiner = combiner;
+        this.body = body;
+        this.counter = new Lexeme(TokenType.IDENTIFIER, lineNumber, "count");
+        if (target == null || combiner == null) {
+            left = null;
+            right = null;
+            combination = null;
+        } else {
+            left = new Lexeme(TokenType.IDENTIFIER, lineNumber, "<left>");
+            right = new Lexeme(TokenType.IDENTIFIER, lineNumber, "<right>");
+            Call call = new Call(lineNumber, combiner, List.of(new Variable(lineNumber, left), new Variable(lineNumber, right)));
+            combination = new Block(lineNumber, List.of(call));
+        }
+    }
+
+    public Lexeme getVariable() {
+        return variable;
+    }
+
+    public Node getArray() {
+        return array;
+    }
+
+    public Block getBody() {
+        return body;
+    }
+
+    // The loop's implicit count variable
+    public Lexeme getCounter() {
+        return counter;
+    }
+
+    // Whether anything refers to count; set by the Resolver, and count is only defined
+    // when it is
+    public boolean isCounterUsed() {
+        return counterUsed;
+    }
+
+    public void setCounterUsed(boolean counterUsed) {
+        this.counterUsed = counterUsed;
+    }
+
+    // Reduction
+    // The variable the values are folded into, or null for a loop without a reduction
+    public Lexeme getTarget() {
+        return target;
+    }
+
+    public Lexeme getCombiner() {
+        return combiner;
+    }
+
+    public Lexeme getLeft() {
+        return left;
+    }
+
+    public Lexeme getRight() {
+        return right;
+    }
+
+    // combine {<left>, <right>}
+    public Block getCombination() {
+        return combination;
+    }
+
+    public TokenType getType() {
+        return TokenType.PARALLEL_LOOP;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitParallelLoop(this, context);
+    }
+}
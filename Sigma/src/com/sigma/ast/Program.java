@@ -0,0 +1,24 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+public final class Program extends Node {
+    private final Block body;
+
+    public Program(int lineNumber, Block body) {
+        super(lineNumber);
+        this.body = body;
+    }
+
+    public Block getBody() {
+        return body;
+    }
+
+    public TokenType getType() {
+        return TokenType.PROGRAM;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitProgram(this, context);
+    }
+}
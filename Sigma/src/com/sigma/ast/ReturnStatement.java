@@ -0,0 +1,26 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+// Ends the function it is in. A bare return‼ returns nothing.
+public final class ReturnStatement extends Node {
+    private final Node value;
+
+    public ReturnStatement(int lineNumber, Node value) {
+        super(lineNumber);
+        this.value = value;
+    }
+
+    // null for a bare return‼
+    public Node getValue() {
+        return value;
+    }
+
+    public TokenType getType() {
+        return TokenType.RETURN_STATEMENT;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitReturnStatement(this, context);
+    }
+}
@@ -0,0 +1,32 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.TokenType;
+
+// Negation (MINUS), not (EXCLAMATION or NOT_KEYWORD), and ++ and -- used as expressions,
+// which update their variable and evaluate to the new value
+public final class UnaryOp extends Node {
+    private final TokenType operator;
+    private final Node operand;
+
+    public UnaryOp(int lineNumber, TokenType operator, Node operand) {
+        super(lineNumber);
+        this.operator = operator;
+        this.operand = operand;
+    }
+
+    public TokenType getOperator() {
+        return operator;
+    }
+
+    public Node getOperand() {
+        return operand;
+    }
+
+    public TokenType getType() {
+        return operator;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitUnaryOp(this, context);
+    }
+}
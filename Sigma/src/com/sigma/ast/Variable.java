@@ -0,0 +1,30 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+// A variable read. The name carries the lexical address the Resolver gives it.
+public final class Variable extends Node {
+    private final Lexeme name;
+
+    public Variable(int lineNumber, Lexeme name) {
+        super(lineNumber);
+        this.name = name;
+    }
+
+    public Lexeme getName() {
+        return name;
+    }
+
+    public TokenType getType() {
+        return TokenType.IDENTIFIER;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitVariable(this, context);
+    }
+
+    public String toString() {
+        return name.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+public final class VariableDeclaration extends Node {
+    private final Lexeme name;
+    private final Node value;
+
+    // value is null for a declaration without one, which starts out as nothing
+    public VariableDeclaration(int lineNumber, Lexeme name, Node value) {
+        super(lineNumber);
+        this.name = name;
+        this.value = value;
+    }
+
+    public Lexeme getName() {
+        return name;
+    }
+
+    public Node getValue() {
+        return value;
+    }
+
+    public TokenType getType() {
+        return TokenType.VARIABLE_DECLARATION;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitVariableDeclaration(this, context);
+    }
+}
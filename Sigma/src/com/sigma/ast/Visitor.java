@@ -0,0 +1,53 @@
+package com.sigma.ast;
+
+/*
+ * One method per kind of node. context is passed through unchanged, for passes that
+ * need something alongside the node, like the Evaluator's current environment.
+ */
+public interface Visitor<R, C> {
+    R visitProgram(Program program, C context);
+
+    R visitBlock(Block block, C context);
+
+    R visitComment(Comment comment, C context);
+
+    R visitVariableDeclaration(VariableDeclaration declaration, C context);
+
+    R visitFunctionDefinition(FunctionDefinition definition, C context);
+
+    R visitAssignment(Assignment assignment, C context);
+
+    R visitIfStatement(IfStatement ifStatement, C context);
+
+    R visitChangeStatement(ChangeStatement changeStatement, C context);
+
+    R visitForLoop(ForLoop loop, C context);
+
+    R visitForeachLoop(ForeachLoop loop, C context);
+
+    R visitWhenLoop(WhenLoop loop, C context);
+
+    R visitLoopLoop(LoopLoop loop, C context);
+
+    R visitParallelLoop(ParallelLoop loop, C context);
+
+    R visitReturnStatement(ReturnStatement returnStatement, C context);
+
+    R visitBreakStatement(BreakStatement breakStatement, C context);
+
+    R visitContinueStatement(ContinueStatement continueStatement, C context);
+
+    R visitCall(Call call, C context);
+
+    R visitBinaryOp(BinaryOp operation, C context);
+
+    R visitUnaryOp(UnaryOp operation, C context);
+
+    R visitLiteral(Literal literal, C context);
+
+    R visitVariable(Variable variable, C context);
+
+    R visitArrayLiteral(ArrayLiteral array, C context);
+
+    R visitMapLiteral(MapLiteral map, C context);
+}
@@ -0,0 +1,49 @@
+package com.sigma.ast;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+
+public final class WhenLoop extends Node {
+    private final Node condition;
+    private final Block body;
+    private final Lexeme counter;
+    private boolean counterUsed = false;
+
+    public WhenLoop(int lineNumber, Node condition, Block body) {
+        super(lineNumber);
+        this.condition = condition;
+        this.body = body;
+        this.counter = new Lexeme(TokenType.IDENTIFIER, lineNumber, "count");
+    }
+
+    public Node getCondition() {
+        return condition;
+    }
+
+    public Block getBody() {
+        return body;
+    }
+
+    // The loop's implicit count variable
+    public Lexeme getCounter() {
+        return counter;
+    }
+
+    // Whether anything refers to count; set by the Resolver, and count is only kept
+    // up to date when it is
+    public boolean isCounterUsed() {
+        return counterUsed;
+    }
+
+    public void setCounterUsed(boolean counterUsed) {
+        this.counterUsed = counterUsed;
+    }
+
+    public TokenType getType() {
+        return TokenType.WHEN_LOOP;
+    }
+
+    public <R, C> R accept(Visitor<R, C> visitor, C context) {
+        return visitor.visitWhenLoop(this, context);
+    }
+}
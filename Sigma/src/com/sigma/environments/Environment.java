@@ -1,16 +1,29 @@
 package com.sigma.environments;
 
 import com.sigma.Sigma;
+import com.sigma.ast.FunctionDefinition;
+import com.sigma.ast.Node;
 import com.sigma.lexicalAnalysis.*;
-
-import static com.sigma.lexicalAnalysis.TokenType.*;
+import com.sigma.runtime.Value;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
 
 public class Environment {
+    private static final int DEFAULT_CAPACITY = 4;
+
     Environment parent;
-    public ArrayList<Lexeme> names = new ArrayList<>();
-    public ArrayList<Lexeme> values = new ArrayList<>();
+    private static final Lexeme[] NO_NAMES = {};
+    private static final Value[] NO_VALUES = {};
+
+    // Allocated on the first add, since most block environments never declare anything
+    private Lexeme[] names = NO_NAMES;
+    private Value[] values = NO_VALUES;
+    private int size = 0;
+    private int[] symbols;
+    private int symbolCount = 0;
+    private boolean unindexed = false; // names added by slot that aren't in symbols yet
 
     public Environment(Environment parent) {
         this.parent = parent;
@@ -20,64 +33,183 @@ public class Environment {
         this(null);
     }
 
-    public void add(Lexeme name, Lexeme value) {
+    // A call's frame, sized for the whole function. If the function has direct
+    // parameters they're already in place and the caller stores each argument with
+    // bind; otherwise the caller adds them with extend.
+    public Environment(Environment parent, FunctionDefinition function) {
+        this.parent = parent;
+        names = new Lexeme[Math.max(function.getFrameSize(), 1)];
+        values = new Value[names.length];
+        if (function.hasDirectParameters()) {
+            for (int i = 0; i < function.getParameterCount(); i++) names[i] = function.getParameter(i);
+            size = function.getParameterCount();
+            unindexed = true;
+        }
+    }
+
+    // Frames
+    public Environment getParent() {
+        return parent;
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) environment = environment.parent;
+        return environment;
+    }
+
+    private boolean isDefined(int slot) {
+        return slot < size && names[slot] != null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= names.length) return;
+        int newCapacity = Math.max(Math.max(capacity, DEFAULT_CAPACITY), names.length * 2);
+        names = Arrays.copyOf(names, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+    }
+
+    // Symbol table
+    // Open-addressing map from symbol id to slot, used for names without a lexical
+    // address. Each bucket is a key and a slot side by side in symbols; keys are
+    // stored as symbol + 1 so that 0 marks an empty bucket.
+    private int indexOf(Lexeme name) {
+        if (unindexed) indexAll();
+        if (symbols == null) return -1;
+        int key = name.getSymbol() + 1;
+        int mask = symbols.length / 2 - 1;
+        for (int bucket = hash(key) & mask; symbols[bucket * 2] != 0; bucket = (bucket + 1) & mask) {
+            if (symbols[bucket * 2] == key) return symbols[bucket * 2 + 1];
+        }
+        return -1;
+    }
+
+    private void index(Lexeme name, int slot) {
+        if (symbols == null) {
+            symbols = new int[DEFAULT_CAPACITY * 4];
+        } else if ((symbolCount + 1) * 4 > symbols.length) {
+            rehash(symbols.length * 2);
+        }
+        if (insert(name.getSymbol() + 1, slot)) symbolCount++;
+    }
+
+    // Variables added by their lexical address are only indexed once something looks
+    // a name up without one, which most environments never do
+    private void indexAll() {
+        unindexed = false;
+        for (int i = 0; i < size; i++) {
+            if (names[i] != null) index(names[i], i);
+        }
+    }
+
+    // Indexes this environment and its parents now instead of on their first lookup by
+    // name, so threads sharing them, like a pareach's, only ever read them
+    public void indexForSharing() {
+        for (Environment environment = this; environment != null; environment = environment.parent) {
+            if (environment.unindexed) environment.indexAll();
+        }
+    }
+
+    private boolean insert(int key, int slot) {
+        int mask = symbols.length / 2 - 1;
+        int bucket = hash(key) & mask;
+        while (symbols[bucket * 2] != 0) {
+            if (symbols[bucket * 2] == key) {
+                symbols[bucket * 2 + 1] = slot;
+                return false;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        symbols[bucket * 2] = key;
+        symbols[bucket * 2 + 1] = slot;
+        return true;
+    }
+
+    private void rehash(int length) {
+        int[] oldSymbols = symbols;
+        symbols = new int[length];
+        for (int i = 0; i < oldSymbols.length; i += 2) {
+            if (oldSymbols[i] != 0) insert(oldSymbols[i], oldSymbols[i + 1]);
+        }
+    }
+
+    private static int hash(int key) {
+        return key * 0x9E3779B9 >>> 16 ^ key;
+    }
+
+    // Variables
+    public void add(Lexeme name, Value value) {
+        if (name.isResolved()) {
+            int slot = name.getSlot();
+            if (isDefined(slot) || shadowsDefinedVariable(name)) {
+                Sigma.referenceError("Variable " + name.getStringVal() + " already exists", name);
+            }
+            ensureCapacity(slot + 1);
+            names[slot] = name;
+            values[slot] = value;
+            if (slot >= size) size = slot + 1;
+            unindexed = true;
+            return;
+        }
         if (this.softLookup(name)) {
             Sigma.referenceError("Variable " + name.getStringVal() + " already exists", name);
         }
-        names.add(name);
-        values.add(value);
+        ensureCapacity(size + 1);
+        names[size] = name;
+        values[size] = value;
+        index(name, size);
+        size++;
     }
 
-    public void update(Lexeme name, Lexeme value) {
-        int index = -1;
-        for (int i = 0; i < names.size(); i++) {
-            if (names.get(i).equals(name)) index = i;
+    private boolean shadowsDefinedVariable(Lexeme name) {
+        if (name.getShadowed() == null) return false;
+        for (Lexeme address : name.getShadowed()) {
+            if (defines(address)) return true;
         }
-        if (index == -1) {
-            if (this.parent == null) {
-                Sigma.referenceError("Variable " + name.getStringVal() + " not found", name);
-            } else {
-                this.parent.update(name, value);
-            }
-        } else {
-            int lineNumber = values.get(index).getLineNumber();
-            values.remove(index);
-            if (value.getNumVal() != null) {
-                values.add(index, new Lexeme(NUMBER, lineNumber, value.getNumVal()));
+        return false;
+    }
+
+    // Whether the variable at a lexical address, counted from this environment, has
+    // been defined yet
+    public boolean defines(Lexeme address) {
+        return ancestor(address.getDepth()).isDefined(address.getSlot());
+    }
+
+    // A name whose slot isn't defined yet, or that has no lexical address, is looked up
+    // by name, from this environment outwards
+    public void update(Lexeme name, Value value) {
+        if (name.isResolved()) {
+            Environment environment = ancestor(name.getDepth());
+            if (environment.isDefined(name.getSlot())) {
+                environment.values[name.getSlot()] = value;
                 return;
             }
-            if (value.getStringVal() != null) {
-                values.add(index, new Lexeme(STRING, lineNumber, value.getStringVal()));
+        }
+        for (Environment environment = this; environment != null; environment = environment.parent) {
+            int index = environment.indexOf(name);
+            if (index != -1) {
+                environment.values[index] = value;
                 return;
             }
-            if (value.getBoolVal() != null) {
-                values.add(index, new Lexeme(BOOLEAN, lineNumber, value.getBoolVal()));
-            }
         }
+        Sigma.referenceError("Variable " + name.getStringVal() + " not found", name);
     }
 
-    public Lexeme lookup(Lexeme name) {
-        int index = -1;
-        for (int i = 0; i < names.size(); i++) {
-            if (names.get(i).equals(name)) index = i;
+    public Value lookup(Lexeme name) {
+        if (name.isResolved()) {
+            Environment environment = ancestor(name.getDepth());
+            if (environment.isDefined(name.getSlot())) return environment.values[name.getSlot()];
         }
-        if (index == -1) {
-            if (this.parent == null) {
-                Sigma.referenceError("Variable " + name.getStringVal() + " not found", name);
-                return null;
-            } else {
-                return this.parent.lookup(name);
-            }
-        } else {
-            return values.get(index);
+        for (Environment environment = this; environment != null; environment = environment.parent) {
+            int index = environment.indexOf(name);
+            if (index != -1) return environment.values[index];
         }
+        Sigma.referenceError("Variable " + name.getStringVal() + " not found", name);
+        return null;
     }
 
     private boolean softLookup(Lexeme name) {
-        int index = -1;
-        for (int i = 0; i < names.size(); i++) {
-            if (names.get(i).equals(name)) index = i;
-        }
+        int index = indexOf(name);
         if (index == -1) {
             if (this.parent == null) {
                 return false;
@@ -89,20 +221,40 @@ public class Environment {
         }
     }
 
-    public void extend(Lexeme param, Lexeme arg) {
-        if (arg.getNumChildren() != param.getNumChildren()) {
-            Sigma.runtimeError("Invalid number of function arguments", arg);
+    // Stores argument i of a frame made for a function with direct parameters
+    public void bind(int slot, Value value) {
+        values[slot] = value;
+    }
+
+    public void extend(FunctionDefinition function, Value[] args, Node call) {
+        if (args.length != function.getParameterCount()) {
+            Sigma.runtimeError("Invalid number of function arguments", call);
             return;
         }
-        for (int i = 0; i < param.getNumChildren(); i++) {
-            this.add(param.getChild(i), arg.getChild(i));
+        for (int i = 0; i < args.length; i++) {
+            this.add(function.getParameter(i), args[i]);
+        }
+    }
+
+    // Only this environment's own variables, not its parents'
+    public void forEach(BiConsumer<String, Value> action) {
+        for (int i = 0; i < size; i++) {
+            if (names[i] != null) action.accept(names[i].getStringVal(), values[i]);
+        }
+    }
+
+    private ArrayList<Object> definedEntries(Object[] entries) {
+        ArrayList<Object> defined = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (names[i] != null) defined.add(entries[i]);
         }
+        return defined;
     }
 
     public String toString() {
         if (this.parent == null)
-            return "ID: " + this.hashCode() + "\nNames: " + this.names.toString() + "\nValues: " + this.values.toString();
+            return "ID: " + this.hashCode() + "\nNames: " + definedEntries(names) + "\nValues: " + definedEntries(values);
         else
-            return "ID: " + this.hashCode() + "\nParent: " + this.parent.hashCode() + "\nNames: " + this.names.toString() + "\nValues: " + this.values.toString();
+            return "ID: " + this.hashCode() + "\nParent: " + this.parent.hashCode() + "\nNames: " + definedEntries(names) + "\nValues: " + definedEntries(values);
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,10 @@
 package com.sigma.environments;
 
+import com.sigma.SigmaException;
 import com.sigma.lexicalAnalysis.Lexeme;
 import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.StringValue;
+import com.sigma.runtime.Value;
 
 public class EnvironmentTest {
     public static void main(String[] args) {
@@ -10,23 +13,27 @@ public class EnvironmentTest {
         Environment local2 = new Environment(global);
         Environment local3 = new Environment(local1);
         Lexeme a = new Lexeme(TokenType.IDENTIFIER, 1, "a");
-        Lexeme aVal = new Lexeme(TokenType.STRING, 1, "avalue");
+        Value aVal = new StringValue("avalue");
         Lexeme b = new Lexeme(TokenType.IDENTIFIER, 1, "b");
-        Lexeme bVal = new Lexeme(TokenType.STRING, 1, "bvalue");
+        Value bVal = new StringValue("bvalue");
         Lexeme c = new Lexeme(TokenType.IDENTIFIER, 1, "c");
-        Lexeme cVal = new Lexeme(TokenType.STRING, 1, "cvalue");
+        Value cVal = new StringValue("cvalue");
         Lexeme d = new Lexeme(TokenType.IDENTIFIER, 1, "d");
-        Lexeme dVal = new Lexeme(TokenType.STRING, 1, "dvalue");
+        Value dVal = new StringValue("dvalue");
         global.add(a, aVal);
         local1.add(b, bVal);
         local3.add(c, cVal);
         local2.add(d, dVal);
         System.out.println(global);
         System.out.println(local1);
-        global.update(a, new Lexeme(TokenType.STRING, 1, "avalue2"));
+        global.update(a, new StringValue("avalue2"));
         System.out.println(local3.lookup(a));
         System.out.println(local2.lookup(d));
         System.out.println(local1.lookup(b));
-        System.out.println(local1.lookup(c));
+        try {
+            System.out.println(local1.lookup(c));
+        } catch (SigmaException e) {
+            System.out.println(e.getMessage());
+        }
     }
 }
\ No newline at end of file
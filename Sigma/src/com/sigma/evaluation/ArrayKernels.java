@@ -0,0 +1,53 @@
+package com.sigma.evaluation;
+
+import com.sigma.runtime.ArrayValue;
+
+/*
+ * The element-wise operators of Operations for arrays of numbers only. Each kernel is
+ * a plain counted loop over a leaf's double[], which the JIT unrolls and, for the
+ * operations the hardware has, turns into vector instructions. Every method returns
+ * null when an element isn't a number, and Operations falls back to going through
+ * the elements one by one.
+ */
+final class ArrayKernels {
+    private ArrayKernels() {
+    }
+
+    // Number on the left
+    static ArrayValue divide(double left, ArrayValue right) {
+        return right.mapNumbers((values, results, count) -> {
+            for (int i = 0; i < count; i++) results[i] = left / values[i];
+        });
+    }
+
+    static ArrayValue doubleDivide(double left, ArrayValue right) {
+        return right.mapNumbers((values, results, count) -> {
+            for (int i = 0; i < count; i++) results[i] = Math.floor(left / values[i]);
+        });
+    }
+
+    static ArrayValue caret(double left, ArrayValue right) {
+        return right.mapNumbers((values, results, count) -> {
+            for (int i = 0; i < count; i++) results[i] = Math.pow(left, values[i]);
+        });
+    }
+
+    static ArrayValue percent(double left, ArrayValue right) {
+        return right.mapNumbers((values, results, count) -> {
+            for (int i = 0; i < count; i++) results[i] = left % values[i];
+        });
+    }
+
+    // Number on the right
+    static ArrayValue caret(ArrayValue left, double right) {
+        return left.mapNumbers((values, results, count) -> {
+            for (int i = 0; i < count; i++) results[i] = Math.pow(values[i], right);
+        });
+    }
+
+    static ArrayValue percent(ArrayValue left, double right) {
+        return left.mapNumbers((values, results, count) -> {
+            for (int i = 0; i < count; i++) results[i] = values[i] % right;
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.sigma.evaluation;
+
+import com.sigma.ast.Node;
+import com.sigma.runtime.Value;
+
+/*
+ * A built-in function as registered in the BuiltinRegistry. The Resolver binds each
+ * call to one of these, so running the call doesn't look its name up again.
+ */
+public final class Builtin {
+    @FunctionalInterface
+    public interface Implementation {
+        // args has exactly arity values; call is the FUNCTION_CALL node, for errors
+        Value call(Value[] args, Node call);
+    }
+
+    private final String name;
+    private final int arity;
+    private final boolean changesArgument;
+    private final Implementation implementation;
+
+    Builtin(String name, int arity, boolean changesArgument, Implementation implementation) {
+        this.name = name;
+        this.arity = arity;
+        this.changesArgument = changesArgument;
+        this.implementation = implementation;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    // Whether the call changes the array or map it's given first, like set and put do
+    public boolean changesArgument() {
+        return changesArgument;
+    }
+
+    public Value call(Value[] args, Node call) {
+        return implementation.call(args, call);
+    }
+
+    public String toString() {
+        return name + "/" + arity;
+    }
+}
@@ -0,0 +1,82 @@
+package com.sigma.evaluation;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Every built-in function by name. The Resolver looks each call up here once and binds
+ * it to the Builtin, so both engines run built-ins without comparing names. Programs
+ * embedding Sigma can add their own before compiling the scripts that use them:
+ *
+ *     BuiltinRegistry.register("twice", 1, (args, call) -> new NumberValue(args[0].getNumVal() * 2));
+ *
+ * A built-in that changes the array or map passed as its first argument says so when
+ * it's registered, so the Resolver can keep pareach bodies from calling it on a variable
+ * they share.
+ *
+ * Built-in names can't be redefined by Sigma functions. log isn't registered because it
+ * takes any number of arguments and writes to the engine's output, but it's protected
+ * all the same.
+ */
+public final class BuiltinRegistry {
+    private static final ConcurrentHashMap<String, Builtin> builtins = new ConcurrentHashMap<>();
+
+    static {
+        register("random", 2, Builtins::random);
+        register("abs", 1, Builtins::abs);
+        register("floor", 1, Builtins::floor);
+        register("ceil", 1, Builtins::ceil);
+        register("round", 1, Builtins::round);
+        register("sqrt", 1, Builtins::sqrt);
+        register("min", 2, Builtins::min);
+        register("max", 2, Builtins::max);
+        register("lowercase", 1, Builtins::lowercase);
+        register("uppercase", 1, Builtins::uppercase);
+        register("getchar", 2, Builtins::getchar);
+        register("substring", 3, Builtins::substring);
+        register("length", 1, Builtins::length);
+        register("get", 2, Builtins::get);
+        register("set", 3, true, Builtins::set);
+        register("add", 3, true, Builtins::add);
+        register("remove", 2, true, Builtins::remove);
+        register("contains", 2, Builtins::contains);
+        register("put", 3, true, Builtins::put);
+        register("include", 2, true, Builtins::include);
+        register("has", 2, Builtins::has);
+        register("delete", 2, true, Builtins::delete);
+        register("keys", 1, Builtins::keys);
+        register("num", 1, Builtins::num);
+        register("str", 1, Builtins::str);
+        register("tf", 1, Builtins::tf);
+        register("arr", 1, Builtins::arr);
+    }
+
+    private BuiltinRegistry() {
+    }
+
+    // Registering
+    public static Builtin register(String name, int arity, Builtin.Implementation implementation) {
+        return register(name, arity, false, implementation);
+    }
+
+    public static Builtin register(String name, int arity, boolean changesArgument, Builtin.Implementation implementation) {
+        Objects.requireNonNull(implementation);
+        if (arity < 0) throw new IllegalArgumentException("Negative arity for built-in function " + name);
+        if (name.equals("log")) throw new IllegalArgumentException("Cannot register built-in function log");
+        Builtin builtin = new Builtin(name, arity, changesArgument, implementation);
+        if (builtins.putIfAbsent(name, builtin) != null) {
+            throw new IllegalArgumentException("Built-in function " + name + " is already registered");
+        }
+        return builtin;
+    }
+
+    // Lookup
+    // null when name isn't a built-in
+    public static Builtin lookup(String name) {
+        return builtins.get(name);
+    }
+
+    public static boolean isProtected(String name) {
+        return name.equals("log") || builtins.containsKey(name);
+    }
+}
@@ -0,0 +1,387 @@
+package com.sigma.evaluation;
+
+import com.sigma.Sigma;
+import com.sigma.ast.Node;
+import com.sigma.runtime.*;
+
+import java.util.*;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+/*
+ * Sigma's built-in functions, called with already evaluated arguments. Each one is
+ * registered with its arity in the BuiltinRegistry, and the Resolver checks the
+ * argument count of every call before the script runs; the tree argument is the
+ * FUNCTION_CALL node, used for line numbers and errors.
+ */
+final class Builtins {
+    private Builtins() {
+    }
+
+    // Functions
+    static Value random(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() != NUMBER || arg2.getType() != NUMBER) {
+            Sigma.runtimeError("random takes in two number arguments", tree);
+            return null;
+        }
+        Random rand = new Random();
+        double random = rand.nextDouble();
+        random = random * (arg2.getNumVal() - arg1.getNumVal()) + arg1.getNumVal();
+        return new NumberValue(random);
+    }
+
+    static Value abs(Value[] args, Node tree) {
+        Value arg = args[0];
+        if (arg.getType() != NUMBER) {
+            Sigma.runtimeError("abs takes in one number argument", tree);
+            return null;
+        }
+        return new NumberValue(Math.abs(arg.getNumVal()));
+    }
+
+    static Value floor(Value[] args, Node tree) {
+        Value arg = args[0];
+        if (arg.getType() != NUMBER) {
+            Sigma.runtimeError("floor takes in one number argument", tree);
+            return null;
+        }
+        return new NumberValue(Math.floor(arg.getNumVal()));
+    }
+
+    static Value ceil(Value[] args, Node tree) {
+        Value arg = args[0];
+        if (arg.getType() != NUMBER) {
+            Sigma.runtimeError("ceil takes in one number argument", tree);
+            return null;
+        }
+        return new NumberValue(Math.ceil(arg.getNumVal()));
+    }
+
+    static Value round(Value[] args, Node tree) {
+        Value arg = args[0];
+        if (arg.getType() != NUMBER) {
+            Sigma.runtimeError("round takes in one number argument", tree);
+            return null;
+        }
+        return new NumberValue(Math.round(arg.getNumVal()));
+    }
+
+    static Value sqrt(Value[] args, Node tree) {
+        Value arg = args[0];
+        if (arg.getType() != NUMBER) {
+            Sigma.runtimeError("sqrt takes in one number argument", tree);
+            return null;
+        }
+        if (arg.getNumVal() < 0) {
+            Sigma.runtimeError("Cannot take square root of negative number", tree);
+            return null;
+        }
+        return new NumberValue(Math.sqrt(arg.getNumVal()));
+    }
+
+    static Value min(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() != NUMBER || arg2.getType() != NUMBER) {
+            Sigma.runtimeError("min takes in two number arguments", tree);
+            return null;
+        }
+        return new NumberValue(Math.min(arg1.getNumVal(), arg2.getNumVal()));
+    }
+
+    static Value max(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() != NUMBER || arg2.getType() != NUMBER) {
+            Sigma.runtimeError("max takes in two number arguments", tree);
+            return null;
+        }
+        return new NumberValue(Math.max(arg1.getNumVal(), arg2.getNumVal()));
+    }
+
+    static Value lowercase(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        if (arg1.getType() != STRING) {
+            Sigma.runtimeError("lowercase takes in one string argument", tree);
+            return null;
+        }
+        return new StringValue(arg1.getStringVal().toLowerCase());
+    }
+
+    static Value uppercase(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        if (arg1.getType() != STRING) {
+            Sigma.runtimeError("uppercase takes in one string argument", tree);
+            return null;
+        }
+        return new StringValue(arg1.getStringVal().toUpperCase());
+    }
+
+    static Value getchar(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() != STRING || arg2.getType() != NUMBER) {
+            Sigma.runtimeError("getchar takes in one string and one number arguments", tree);
+            return null;
+        }
+        String arg1str = arg1.getStringVal();
+        int index = (int) Math.floor(arg2.getNumVal());
+        if (index > arg1str.length() - 1) {
+            Sigma.runtimeError("getchar string index out of range", tree);
+            return null;
+        }
+        return new StringValue(Character.toString(arg1str.charAt(index)));
+    }
+
+    static Value substring(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        Value arg3 = args[2];
+        if (arg1.getType() != STRING || arg2.getType() != NUMBER || arg3.getType() != NUMBER) {
+            Sigma.runtimeError("substring takes in one string and two number arguments", tree);
+            return null;
+        }
+        return new StringValue(arg1.getStringVal().substring((int) Math.floor(arg2.getNumVal()), (int) Math.floor(arg3.getNumVal())));
+    }
+
+    static Value length(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        if (arg1.getType() == STRING) {
+            return new NumberValue(((StringValue) arg1).length());
+        } else if (arg1.getType() == ARRAY) {
+            return new NumberValue(((ArrayValue) arg1).size());
+        } else if (arg1.getType() == MAP) {
+            return new NumberValue(((MapValue) arg1).size());
+        } else {
+            Sigma.runtimeError("length takes in one string, array or map argument", tree);
+            return null;
+        }
+    }
+
+    static Value get(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() == MAP) {
+            MapValue map = map(arg1, arg2, "get", tree);
+            if (!map.has(arg2)) {
+                Sigma.runtimeError("get key not found", tree);
+                return null;
+            }
+            return map.get(arg2);
+        }
+        if (arg1.getType() != ARRAY || arg2.getType() != NUMBER) {
+            Sigma.runtimeError("get takes in one array and one number arguments", tree);
+            return null;
+        }
+        int index = (int) Math.floor(arg2.getNumVal());
+        if (index < 0 || index >= ((ArrayValue) arg1).size()) {
+            Sigma.runtimeError("get index out of bounds", tree);
+            return null;
+        }
+        return ((ArrayValue) arg1).get(index);
+    }
+
+    static Value set(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        Value arg3 = args[2];
+        if (arg1.getType() != ARRAY || arg3.getType() != NUMBER) {
+            Sigma.runtimeError("add takes in one array, one anytype, and one number arguments", tree);
+            return null;
+        }
+        int index = (int) Math.floor(arg3.getNumVal());
+        if (index < 0 || index >= ((ArrayValue) arg1).size()) {
+            Sigma.runtimeError("set index out of bounds", tree);
+            return null;
+        }
+        ((ArrayValue) arg1).set(index, arg2);
+        return null;
+    }
+
+    static Value add(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        Value arg3 = args[2];
+        if (arg1.getType() != ARRAY || arg3.getType() != NUMBER) {
+            Sigma.runtimeError("add takes in one array, one anytype, and one number arguments", tree);
+            return null;
+        }
+        int index = (int) Math.floor(arg3.getNumVal());
+        if (index < 0 || index > ((ArrayValue) arg1).size()) {
+            Sigma.runtimeError("add index out of bounds", tree);
+            return null;
+        }
+        ((ArrayValue) arg1).add(index, arg2);
+        return null;
+    }
+
+    static Value remove(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() != ARRAY || arg2.getType() != NUMBER) {
+            Sigma.runtimeError("remove takes in one array and one number arguments", tree);
+            return null;
+        }
+        int index = (int) Math.floor(arg2.getNumVal());
+        if (index < 0 || index >= ((ArrayValue) arg1).size()) {
+            Sigma.runtimeError("remove index out of bounds", tree);
+            return null;
+        }
+        ((ArrayValue) arg1).remove(index);
+        return null;
+    }
+
+    static Value contains(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() == MAP) return has(args, tree);
+        if (arg1.getType() != ARRAY) {
+            Sigma.runtimeError("remove takes in one array and one number arguments", tree);
+            return null;
+        }
+        return BooleanValue.of(((ArrayValue) arg1).contains(arg2));
+    }
+
+    // Maps
+    static Value put(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() == MAP && ((MapValue) arg1).isSet()) {
+            Sigma.runtimeError("put takes in a map; use include for a set", tree);
+            return null;
+        }
+        map(arg1, arg2, "put", tree).put(arg2, args[2]);
+        return null;
+    }
+
+    static Value include(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        Value arg2 = args[1];
+        if (arg1.getType() == MAP && ((MapValue) arg1).isMap()) {
+            Sigma.runtimeError("include takes in a set; use put for a map", tree);
+            return null;
+        }
+        map(arg1, arg2, "include", tree).include(arg2);
+        return null;
+    }
+
+    static Value has(Value[] args, Node tree) {
+        return BooleanValue.of(map(args[0], args[1], "has", tree).has(args[1]));
+    }
+
+    static Value delete(Value[] args, Node tree) {
+        return BooleanValue.of(map(args[0], args[1], "delete", tree).delete(args[1]));
+    }
+
+    static Value keys(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        if (arg1.getType() != MAP) {
+            Sigma.runtimeError("keys takes in one map argument", tree);
+            return null;
+        }
+        return ((MapValue) arg1).keys();
+    }
+
+    // Checks the arguments every map function starts with
+    private static MapValue map(Value map, Value key, String name, Node tree) {
+        if (map.getType() != MAP) Sigma.runtimeError(name + " takes in a map as its first argument", tree);
+        if (!MapValue.isKey(key)) Sigma.runtimeError(name + " takes in a number, string or boolean key", tree);
+        return (MapValue) map;
+    }
+
+    static Value num(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        switch (arg1.getType()) {
+            case NUMBER:
+                return arg1;
+            case STRING:
+                return new NumberValue(((StringValue) arg1).length());
+            case BOOLEAN:
+                return new NumberValue(arg1.getBoolVal() ? 1 : 0);
+            case ARRAY:
+                return new NumberValue(((ArrayValue) arg1).size());
+            default:
+                error("Could not perform cast", tree);
+                return null;
+        }
+    }
+
+    static Value str(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        switch (arg1.getType()) {
+            case NUMBER:
+                return new StringValue(Double.toString(arg1.getNumVal()));
+            case STRING:
+                return arg1;
+            case BOOLEAN:
+                return new StringValue(arg1.getBoolVal() ? "true" : "fals");
+            case ARRAY:
+                StringBuilder builder = new StringBuilder();
+                appendStr(builder, arg1, tree);
+                return new StringValue(builder.toString());
+            default:
+                error("Could not perform cast", tree);
+                return null;
+        }
+    }
+
+    // Writes what str gives for the value, nested arrays included, into one builder
+    private static void appendStr(StringBuilder builder, Value value, Node tree) {
+        switch (value.getType()) {
+            case NUMBER -> builder.append(value.getNumVal());
+            case STRING -> builder.append(value.getStringVal());
+            case BOOLEAN -> builder.append(value.getBoolVal() ? "true" : "fals");
+            case ARRAY -> {
+                builder.append('(');
+                boolean first = true;
+                for (Value element : (ArrayValue) value) {
+                    if (!first) builder.append(' ');
+                    appendStr(builder, element, tree);
+                    first = false;
+                }
+                builder.append(')');
+            }
+            default -> error("Could not perform cast", tree);
+        }
+    }
+
+        static Value tf(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        switch (arg1.getType()) {
+            case NUMBER:
+                return BooleanValue.of(arg1.getNumVal() != 0);
+            case STRING:
+                return BooleanValue.of(((StringValue) arg1).length() != 0);
+            case BOOLEAN:
+                return arg1;
+            case ARRAY:
+                return BooleanValue.of(((ArrayValue) arg1).size() != 0);
+            case MAP:
+                return BooleanValue.of(((MapValue) arg1).size() != 0);
+            default:
+                error("Could not perform cast", tree);
+                return null;
+        }
+    }
+
+    static Value arr(Value[] args, Node tree) {
+        Value arg1 = args[0];
+        switch (arg1.getType()) {
+            case NUMBER, STRING, BOOLEAN:
+                ArrayValue array = new ArrayValue();
+                array.add(arg1);
+                return array;
+            case ARRAY:
+                return arg1;
+            default:
+                error("Could not perform cast", tree);
+                return null;
+        }
+    }
+
+    private static void error(String message, Node node) {
+        Sigma.runtimeError(message, node);
+    }
+}
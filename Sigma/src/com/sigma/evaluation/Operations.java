@@ -0,0 +1,980 @@
+package com.sigma.evaluation;
+
+import com.sigma.Sigma;
+import com.sigma.ast.Node;
+import com.sigma.runtime.*;
+import com.sigma.lexicalAnalysis.TokenType;
+
+import java.util.*;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+/*
+ * Semantics of Sigma's operators on already evaluated operands. Shared by the
+ * tree-walking Evaluator and the bytecode VM so that both engines agree on every
+ * mixed-type combination; the tree argument is the operator node, used for line
+ * numbers and error reporting.
+ *
+ * The operators that go element by element through an array take a shortcut through
+ * ArrayKernels when every element is a number.
+ */
+public final class Operations {
+    private static final boolean printDebugMessages = false;
+
+    private Operations() {
+    }
+
+    public static Value compare(Value left, Value right, TokenType operator, Node tree) { // TODO REDO
+        log("compare");
+        TokenType lType = left.getType();
+        TokenType rType = right.getType();
+
+        boolean result;
+        switch (operator) {
+            case QUESTION -> result = left.equals(right);
+            case NOT_QUESTION -> result = !left.equals(right);
+            case APPROX -> {
+                if (lType == NUMBER && rType == NUMBER) {
+                    result = Math.abs(left.getNumVal() - right.getNumVal()) < (left.getNumVal() + right.getNumVal()) / 2 * 0.05;
+                } else {
+                    result = false;
+                }
+            }
+            case NOT_APPROX -> {
+                if (lType == NUMBER && rType == NUMBER) {
+                    result = !(Math.abs(left.getNumVal() - right.getNumVal()) < (left.getNumVal() + right.getNumVal()) / 2 * 0.05);
+                } else {
+                    result = true;
+                }
+            }
+            case DOUBLE_QUESTION -> result = lType == rType;
+            case NOT_DOUBLE_QUESTION -> result = !(lType == rType);
+            case GREATER -> {
+                switch (lType) {
+                    case NUMBER:
+                        switch (rType) {
+                            case NUMBER -> result = left.getNumVal() > right.getNumVal();
+                            case STRING -> result = left.getNumVal() > length(right);
+                            case BOOLEAN -> result = left.getNumVal() > (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = false;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case STRING:
+                        switch (rType) {
+                            case NUMBER -> result = length(left) > right.getNumVal();
+                            case STRING -> result = length(left) > length(right);
+                            case BOOLEAN -> result = length(left) > (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = false;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case BOOLEAN:
+                        switch (rType) {
+                            case NUMBER -> result = (left.getBoolVal() ? 1 : 0) > right.getNumVal();
+                            case STRING -> result = (left.getBoolVal() ? 1 : 0) > length(right);
+                            case BOOLEAN -> result = (left.getBoolVal() ? 1 : 0) > (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = false;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case ARRAY:
+                        switch (rType) {
+                            case NUMBER, STRING, BOOLEAN -> result = true;
+                            case ARRAY -> result = size(left) > size(right);
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    default:
+                        Sigma.runtimeError("Could not compute binary operator", tree);
+                        return null;
+                }
+            }
+            case LESS -> {
+                switch (lType) {
+                    case NUMBER:
+                        switch (rType) {
+                            case NUMBER -> result = left.getNumVal() < right.getNumVal();
+                            case STRING -> result = left.getNumVal() < length(right);
+                            case BOOLEAN -> result = left.getNumVal() < (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = true;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case STRING:
+                        switch (rType) {
+                            case NUMBER -> result = length(left) < right.getNumVal();
+                            case STRING -> result = length(left) < length(right);
+                            case BOOLEAN -> result = length(left) < (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = true;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case BOOLEAN:
+                        switch (rType) {
+                            case NUMBER -> result = (left.getBoolVal() ? 1 : 0) < right.getNumVal();
+                            case STRING -> result = (left.getBoolVal() ? 1 : 0) < length(right);
+                            case BOOLEAN -> result = (left.getBoolVal() ? 1 : 0) < (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = true;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case ARRAY:
+                        switch (rType) {
+                            case NUMBER, STRING, BOOLEAN -> result = false;
+                            case ARRAY -> result = size(left) < size(right);
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    default:
+                        Sigma.runtimeError("Could not compute binary operator", tree);
+                        return null;
+                }
+            }
+            case GEQ, GREATER_QUESTION -> {
+                switch (lType) {
+                    case NUMBER:
+                        switch (rType) {
+                            case NUMBER -> result = left.getNumVal() >= right.getNumVal();
+                            case STRING -> result = left.getNumVal() >= length(right);
+                            case BOOLEAN -> result = left.getNumVal() >= (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = false;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case STRING:
+                        switch (rType) {
+                            case NUMBER -> result = length(left) >= right.getNumVal();
+                            case STRING -> result = length(left) >= length(right);
+                            case BOOLEAN -> result = length(left) >= (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = false;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case BOOLEAN:
+                        switch (rType) {
+                            case NUMBER -> result = (left.getBoolVal() ? 1 : 0) >= right.getNumVal();
+                            case STRING -> result = (left.getBoolVal() ? 1 : 0) >= length(right);
+                            case BOOLEAN -> result = (left.getBoolVal() ? 1 : 0) >= (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = false;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case ARRAY:
+                        switch (rType) {
+                            case NUMBER, STRING, BOOLEAN -> result = true;
+                            case ARRAY -> result = size(left) >= size(right);
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    default:
+                        Sigma.runtimeError("Could not compute binary operator", tree);
+                        return null;
+                }
+            }
+            case LEQ, LESS_QUESTION -> {
+                switch (lType) {
+                    case NUMBER:
+                        switch (rType) {
+                            case NUMBER -> result = left.getNumVal() <= right.getNumVal();
+                            case STRING -> result = left.getNumVal() <= length(right);
+                            case BOOLEAN -> result = left.getNumVal() <= (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = true;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case STRING:
+                        switch (rType) {
+                            case NUMBER -> result = length(left) <= right.getNumVal();
+                            case STRING -> result = length(left) <= length(right);
+                            case BOOLEAN -> result = length(left) <= (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = true;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case BOOLEAN:
+                        switch (rType) {
+                            case NUMBER -> result = (left.getBoolVal() ? 1 : 0) <= right.getNumVal();
+                            case STRING -> result = (left.getBoolVal() ? 1 : 0) <= length(right);
+                            case BOOLEAN -> result = (left.getBoolVal() ? 1 : 0) <= (right.getBoolVal() ? 1 : 0);
+                            case ARRAY -> result = true;
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    case ARRAY:
+                        switch (rType) {
+                            case NUMBER, STRING, BOOLEAN -> result = false;
+                            case ARRAY -> result = size(left) <= size(right);
+                            default -> {
+                                Sigma.runtimeError("Could not compute binary operator", tree);
+                                return null;
+                            }
+                        }
+                        break;
+                    default:
+                        Sigma.runtimeError("Could not compute binary operator", tree);
+                        return null;
+                }
+            }
+            default -> {
+                error("Could not calculate binary comparison", tree);
+                return null;
+            }
+        }
+        return BooleanValue.of(result);
+    }
+
+    public static Value booleanOperator(Value left, Value right, TokenType operator, Node tree) {
+        log("booleanOperator");
+        boolean l = left.isTruthy();
+        boolean r = right.isTruthy();
+        boolean result;
+        switch (operator) {
+            case AND_KEYWORD -> result = l && r;
+            case OR_KEYWORD -> result = l || r;
+            case NAND_KEYWORD -> result = !(l && r);
+            case XOR_KEYWORD -> result = l ^ r;
+            case XNOR_KEYWORD -> result = l == r;
+            default -> {
+                error("Problem with binary boolean operator", tree);
+                return null;
+            }
+        }
+        return BooleanValue.of(result);
+    }
+
+    public static Value plus(Value l, Value r, Node tree) {
+        log("plus");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(l.getNumVal() + r.getNumVal());
+                    case STRING:
+                        return StringValue.concat(Double.toString(l.getNumVal()), (StringValue) r);
+                    case BOOLEAN:
+                        return new NumberValue(l.getNumVal() + (r.getBoolVal() ? 1 : 0));
+                    case ARRAY:
+                        return ((ArrayValue) r).prepended(l);
+                    default:
+                        error("Could not calculate plus operation", tree);
+                        return null;
+                }
+            case STRING:
+                switch (rType) {
+                    case NUMBER:
+                        return StringValue.concat((StringValue) l, Double.toString(r.getNumVal()));
+                    case STRING:
+                        return StringValue.concat((StringValue) l, (StringValue) r);
+                    case BOOLEAN:
+                        return StringValue.concat((StringValue) l, r.getBoolVal() ? "true" : "fals");
+                    case ARRAY:
+                        return ((ArrayValue) r).prepended(l);
+                    default:
+                        error("Could not calculate plus operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue((l.getBoolVal() ? 1 : 0) + r.getNumVal());
+                    case STRING:
+                        return StringValue.concat(l.getBoolVal() ? "true" : "fals", (StringValue) r);
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() || r.getBoolVal());
+                    case ARRAY:
+                        return ((ArrayValue) r).prepended(l);
+                    default:
+                        error("Could not calculate plus operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                switch (rType) {
+                    case NUMBER, STRING, BOOLEAN -> {
+                        return ((ArrayValue) l).appended(r);
+                    }
+                    case ARRAY -> {
+                        return ((ArrayValue) l).concat((ArrayValue) r);
+                    }
+                    default -> {
+                        error("Could not calculate plus operation", tree);
+                        return null;
+                    }
+                }
+            default:
+                error("Could not calculate plus operation", tree);
+                return null;
+        }
+    }
+
+    public static Value minus(Value l, Value r, Node tree) {
+        log("minus");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(l.getNumVal() - r.getNumVal());
+                    case STRING:
+                        return new NumberValue(l.getNumVal() - length(r));
+                    case BOOLEAN:
+                        return new NumberValue(l.getNumVal() - (r.getBoolVal() ? 1 : 0));
+                    case ARRAY:
+                        return ((ArrayValue) r).reversed().without(l);
+                    default:
+                        error("Could not calculate minus operation", tree);
+                        return null;
+                }
+            case STRING:
+                switch (rType) {
+                    case NUMBER:
+                        return new StringValue(l.getStringVal().substring(0, Math.max(0, (int) (length(l) - Math.floor(r.getNumVal())))));
+                    case STRING:
+                        return new StringValue(l.getStringVal().replaceAll(r.getStringVal(), ""));
+                    case BOOLEAN:
+                        return new StringValue(l.getStringVal().substring(0, length(l) - (r.getBoolVal() ? 1 : 0)));
+                    case ARRAY:
+                        return ((ArrayValue) r).reversed().without(l);
+                    default:
+                        error("Could not calculate minus operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue((l.getBoolVal() ? 1 : 0) - r.getNumVal());
+                    case STRING:
+                        return new StringValue((l.getBoolVal() ? "true" : "fals").replaceAll(r.getStringVal(), ""));
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() ^ r.getBoolVal());
+                    case ARRAY:
+                        return ((ArrayValue) r).reversed().without(l);
+                    default:
+                        error("Could not calculate minus operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                switch (rType) {
+                    case NUMBER, STRING, BOOLEAN -> {
+                        return ((ArrayValue) l).without(r);
+                    }
+                    case ARRAY -> {
+                        ArrayValue result = (ArrayValue) l;
+                        for (Value element : (ArrayValue) r) {
+                            result = result.without(element);
+                        }
+                        return result;
+                    }
+                    default -> {
+                        error("Could not calculate minus operation", tree);
+                        return null;
+                    }
+                }
+            default:
+                error("Could not calculate minus operation", tree);
+                return null;
+        }
+    }
+
+    public static Value negate(Value child, Node tree) {
+        log("negate");
+        TokenType type = child.getType();
+        switch (type) {
+            case NUMBER:
+                return new NumberValue(-child.getNumVal());
+            case STRING:
+                return new StringValue(new StringBuilder(child.getStringVal()).reverse().toString());
+            case BOOLEAN:
+                return BooleanValue.of(!child.getBoolVal());
+            case ARRAY:
+                return ((ArrayValue) child).reversed();
+            case NOTHING:
+                return child;
+            default:
+                error("Invalid type after unary minus operator", tree);
+                return null;
+        }
+    }
+
+    public static Value not(Value child, Node tree) {
+        log("not");
+        TokenType type = child.getType();
+        switch (type) {
+            case NUMBER:
+                return BooleanValue.of(child.getNumVal() == 0);
+            case STRING:
+                return BooleanValue.of(length(child) == 0);
+            case BOOLEAN:
+                return BooleanValue.of(!child.getBoolVal());
+            case ARRAY:
+                return BooleanValue.of(size(child) == 0);
+            case NOTHING:
+                return child;
+            default:
+                error("Invalid type after not operator", tree);
+                return null;
+        }
+    }
+
+    public static Value times(Value l, Value r, Node tree) {
+        log("times");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(l.getNumVal() * r.getNumVal());
+                    case STRING:
+                        return new StringValue(r.getStringVal().repeat((int) Math.floor(l.getNumVal())) + r.getStringVal().substring(0, (int) (length(r) * (l.getNumVal() % 1))));
+                    case BOOLEAN:
+                        return BooleanValue.of(r.getBoolVal());
+                    case ARRAY:
+                        ArrayList<Value> tempR = new ArrayList<>();
+                        for (int i = 0; i <= l.getNumVal() - 1; i++) {
+                            tempR.addAll(r.getElements());
+                        }
+                        tempR.addAll(r.getElements().subList(0, (int) (l.getNumVal() % 1)));
+                        return new ArrayValue(tempR);
+                    default:
+                        error("Could not calculate times operation", tree);
+                        return null;
+                }
+            case STRING:
+                switch (rType) {
+                    case NUMBER:
+                        return new StringValue(l.getStringVal().repeat((int) Math.floor(r.getNumVal())) + l.getStringVal().substring(0, (int) (length(l) * (r.getNumVal() % 1))));
+                    case STRING:
+                        char[] tempArray = (l.getStringVal() + r.getStringVal()).toCharArray();
+                        Arrays.sort(tempArray);
+                        return new StringValue(new String(tempArray));
+                    case BOOLEAN:
+                        return new StringValue(r.getBoolVal() ? l.getStringVal() : "");
+                    case ARRAY:
+                        ArrayList<Value> tempR = new ArrayList<>();
+                        for (int i = 0; i < length(l); i++) {
+                            tempR.addAll(r.getElements());
+                        }
+                        return new ArrayValue(tempR);
+                    default:
+                        error("Could not calculate times operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                        return BooleanValue.of(l.getBoolVal());
+                    case STRING:
+                        return new StringValue(l.getBoolVal() ? r.getStringVal() : "");
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() && r.getBoolVal());
+                    case ARRAY:
+                        return l.getBoolVal() ? r : new ArrayValue();
+                    default:
+                        error("Could not calculate times operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                ArrayList<Value> tempL = new ArrayList<>();
+                switch (rType) {
+                    case NUMBER:
+                        for (int i = 0; i <= r.getNumVal() - 1; i++) {
+                            tempL.addAll(l.getElements());
+                        }
+                        tempL.addAll(l.getElements().subList(0, (int) (r.getNumVal() % 1)));
+                        return new ArrayValue(tempL);
+                    case STRING:
+                        for (int i = 0; i < length(r); i++) {
+                            tempL.addAll(l.getElements());
+                        }
+                        return new ArrayValue(tempL);
+                    case BOOLEAN:
+                        return l.getBoolVal() ? r : new ArrayValue();
+                    case ARRAY:
+                        tempL = l.getElements();
+                        tempL.addAll(r.getElements());
+                        ArrayList<Value> newList = new ArrayList<>();
+                        for (Value element : tempL) {
+                            boolean duplicate = false;
+                            for (Value newElement : newList) {
+                                if (newElement.equals(element)) duplicate = true;
+                                break;
+                            }
+                            if (!duplicate) newList.add(element);
+                        }
+                        return new ArrayValue(newList);
+                    default:
+                        error("Could not calculate times operation", tree);
+                        return null;
+                }
+            default:
+                error("Could not calculate times operation", tree);
+                return null;
+        }
+    }
+
+    public static Value divide(Value l, Value r, Node tree) {
+        log("divide");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(l.getNumVal() / r.getNumVal());
+                    case STRING:
+                        return new NumberValue(l.getNumVal() / length(r));
+                    case BOOLEAN:
+                        return new NumberValue(l.getNumVal() / (r.getBoolVal() ? 1 : 0));
+                    case ARRAY:
+                        ArrayValue mapped = ArrayKernels.divide(l.getNumVal(), (ArrayValue) r);
+                        if (mapped != null) return mapped;
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(divide(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate divide operation", tree);
+                        return null;
+                }
+            case STRING:
+                switch (rType) {
+                    case NUMBER:
+                        return new StringValue(l.getStringVal().substring(0, (int) Math.floor(length(l) / r.getNumVal())));
+                    case STRING:
+                        return new StringValue(l.getStringVal().substring(0, length(l) / length(r)));
+                    case BOOLEAN:
+                        return new StringValue(r.getBoolVal() ? l.getStringVal() : "");
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(divide(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate divide operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                        return BooleanValue.of(l.getBoolVal());
+                    case STRING:
+                        return BooleanValue.of(l.getBoolVal() != (length(r) == 0));
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() == r.getBoolVal());
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(divide(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate divide operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                ArrayList<Value> temp;
+                switch (rType) {
+                    case NUMBER:
+                        temp = new ArrayList<>(l.getElements().subList(0, (int) (size(l) / r.getNumVal())));
+                        return new ArrayValue(temp);
+                    case STRING:
+                        temp = new ArrayList<>(l.getElements().subList(0, size(l) / length(r)));
+                        return new ArrayValue(temp);
+                    case BOOLEAN:
+                        return r.getBoolVal() ? l : new ArrayValue();
+                    case ARRAY:
+                        temp = new ArrayList<>(l.getElements().subList(0, size(l) / size(r)));
+                        return new ArrayValue(temp);
+                    default:
+                        error("Could not calculate divide operation", tree);
+                        return null;
+                }
+            default:
+                error("Could not calculate divide operation", tree);
+                return null;
+        }
+    }
+
+    public static Value doubleDivide(Value l, Value r, Node tree) {
+        log("doubleDivide");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(Math.floor(l.getNumVal() / r.getNumVal()));
+                    case STRING:
+                        return new NumberValue(Math.floor(l.getNumVal() / length(r)));
+                    case BOOLEAN:
+                        return new NumberValue(Math.floor(l.getNumVal() / (r.getBoolVal() ? 1 : 0)));
+                    case ARRAY:
+                        ArrayValue mapped = ArrayKernels.doubleDivide(l.getNumVal(), (ArrayValue) r);
+                        if (mapped != null) return mapped;
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(doubleDivide(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate integer divide operation", tree);
+                        return null;
+                }
+            case STRING:
+                switch (rType) {
+                    case NUMBER:
+                        return new StringValue(l.getStringVal().substring(0, (int) Math.floor(length(l) / r.getNumVal())));
+                    case STRING:
+                        return new StringValue(l.getStringVal().substring(0, length(l) / length(r)));
+                    case BOOLEAN:
+                        return new StringValue(r.getBoolVal() ? l.getStringVal() : "");
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(doubleDivide(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate integer divide operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                        return BooleanValue.of(l.getBoolVal());
+                    case STRING:
+                        return BooleanValue.of(l.getBoolVal() != (length(r) == 0));
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() == r.getBoolVal());
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(doubleDivide(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate integer divide operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                switch (rType) {
+                    case NUMBER:
+                        return new ArrayValue(new ArrayList<>(l.getElements().subList(0, size(l) / ((int) Math.floor(r.getNumVal())))));
+                    case STRING:
+                        return new ArrayValue(new ArrayList<>(l.getElements().subList(0, size(l) / length(r))));
+                    case BOOLEAN:
+                        return r.getBoolVal() ? l : new ArrayValue();
+                    case ARRAY:
+                        return new ArrayValue(new ArrayList<>(l.getElements().subList(0, size(l) / size(r))));
+                    default:
+                        error("Could not calculate integer divide operation", tree);
+                        return null;
+                }
+            default:
+                error("Could not calculate integer divide operation", tree);
+                return null;
+        }
+    }
+
+    public static Value caret(Value l, Value r, Node tree) {
+        log("caret");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(Math.pow(l.getNumVal(), r.getNumVal()));
+                    case STRING:
+                        return new NumberValue(Math.pow(l.getNumVal(), length(r)));
+                    case BOOLEAN:
+                        return new NumberValue(Math.pow(l.getNumVal(), (r.getBoolVal() ? 1 : 0)));
+                    case ARRAY:
+                        ArrayValue mapped = ArrayKernels.caret(l.getNumVal(), (ArrayValue) r);
+                        if (mapped != null) return mapped;
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(caret(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate exponent operation", tree);
+                        return null;
+                }
+            case STRING:
+                char[] lArr = l.getStringVal().toCharArray();
+                StringBuilder result = new StringBuilder();
+                switch (rType) {
+                    case NUMBER:
+                        for (char i : lArr) {
+                            result.append(String.valueOf(i).repeat((int) Math.floor(r.getNumVal())));
+                        }
+                        return new StringValue(result.toString());
+                    case STRING:
+                        for (char i : lArr) {
+                            result.append(String.valueOf(i).repeat(length(r)));
+                        }
+                        return new StringValue(result.toString());
+                    case BOOLEAN:
+                        return new StringValue(r.getBoolVal() ? l.getStringVal() : "");
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(caret(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate exponent operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                        return BooleanValue.of(l.getBoolVal() || r.getNumVal() == 0);
+                    case STRING:
+                        return BooleanValue.of(l.getBoolVal() || length(r) == 0);
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() || !r.getBoolVal());
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(caret(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate exponent operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                ArrayValue newList = new ArrayValue();
+                switch (rType) {
+                    case NUMBER, STRING, BOOLEAN -> {
+                        double exponent = rType == NUMBER ? r.getNumVal() : rType == STRING ? length(r) : r.getBoolVal() ? 1 : 0;
+                        ArrayValue mapped = ArrayKernels.caret((ArrayValue) l, exponent);
+                        if (mapped != null) return mapped;
+                        for (Value element : (ArrayValue) l) {
+                            newList.add(caret(element, r, tree));
+                        }
+                        return newList;
+                    }
+                    case ARRAY -> {
+                        ArrayValue mapped = ArrayKernels.caret((ArrayValue) l, size(r));
+                        if (mapped != null) return mapped;
+                        for (Value element : (ArrayValue) l) {
+                            newList.add(caret(element, new NumberValue(size(r)), tree));
+                        }
+                        return newList;
+                    }
+                    default -> {
+                        error("Could not calculate exponent operation", tree);
+                        return null;
+                    }
+                }
+            default:
+                error("Could not calculate exponent operation", tree);
+                return null;
+        }
+    }
+
+    public static Value percent(Value l, Value r, Node tree) {
+        log("percent");
+        TokenType lType = l.getType();
+        TokenType rType = r.getType();
+
+        if (lType == NOTHING || rType == NOTHING) {
+            error("Could not calculate binary operation with nothing keyword", tree);
+            return null;
+        }
+
+        switch (lType) {
+            case NUMBER:
+                switch (rType) {
+                    case NUMBER:
+                        return new NumberValue(l.getNumVal() % r.getNumVal());
+                    case STRING:
+                        return new NumberValue(l.getNumVal() % length(r));
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getNumVal() != 0 && r.getBoolVal());
+                    case ARRAY:
+                        ArrayValue mapped = ArrayKernels.percent(l.getNumVal(), (ArrayValue) r);
+                        if (mapped != null) return mapped;
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(percent(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate modulus operation", tree);
+                        return null;
+                }
+            case STRING:
+                switch (rType) {
+                    case NUMBER:
+                        return new StringValue(l.getStringVal().substring(0, (int) (length(l) % r.getNumVal())));
+                    case STRING:
+                        return new StringValue(l.getStringVal().substring(0, length(l) % length(r)));
+                    case BOOLEAN:
+                        return BooleanValue.of(length(l) != 0 && r.getBoolVal());
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(percent(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate modulus operation", tree);
+                        return null;
+                }
+            case BOOLEAN:
+                switch (rType) {
+                    case NUMBER:
+                    case STRING:
+                        return BooleanValue.of(l.getBoolVal());
+                    case BOOLEAN:
+                        return BooleanValue.of(l.getBoolVal() && !r.getBoolVal());
+                    case ARRAY:
+                        ArrayValue newList = new ArrayValue();
+                        for (Value element : (ArrayValue) r) {
+                            newList.add(percent(l, element, tree));
+                        }
+                        return newList;
+                    default:
+                        error("Could not calculate modulus operation", tree);
+                        return null;
+                }
+            case ARRAY:
+                ArrayValue newList = new ArrayValue();
+                switch (rType) {
+                    case NUMBER, STRING, BOOLEAN -> {
+                        // A number % a boolean is a boolean, so only the other two map
+                        if (rType != BOOLEAN) {
+                            ArrayValue mapped = ArrayKernels.percent((ArrayValue) l, rType == NUMBER ? r.getNumVal() : length(r));
+                            if (mapped != null) return mapped;
+                        }
+                        for (Value element : (ArrayValue) l) {
+                            newList.add(percent(element, r, tree));
+                        }
+                        return newList;
+                    }
+                    case ARRAY -> {
+                        ArrayValue mapped = ArrayKernels.percent((ArrayValue) l, size(r));
+                        if (mapped != null) return mapped;
+                        for (Value element : (ArrayValue) l) {
+                            newList.add(percent(element, new NumberValue(size(r)), tree));
+                        }
+                        return newList;
+                    }
+                    default -> {
+                        error("Could not calculate modulus operation", tree);
+                        return null;
+                    }
+                }
+            default:
+                error("Could not calculate modulus operation", tree);
+                return null;
+        }
+    }
+
+    private static int size(Value array) {
+        return ((ArrayValue) array).size();
+    }
+
+    private static int length(Value string) {
+        return ((StringValue) string).length();
+    }
+
+    private static void log(String message) {
+        if (printDebugMessages) System.out.println(message);
+    }
+
+    private static void error(String message, Node node) {
+        Sigma.runtimeError(message, node);
+    }
+}
@@ -0,0 +1,192 @@
+package com.sigma.evaluation;
+
+import com.sigma.ast.BinaryOp;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.*;
+
+/*
+ * How the Evaluator runs one binary operator. Every BinaryOp starts out UNINITIALIZED;
+ * the first time it runs it looks at the operand types and rewrites itself to a node
+ * for just those types, like PlusNumNum, which checks its guard and does the arithmetic
+ * without going through Operations' switches. If a site later sees other types it
+ * rewrites itself to Generic for good, so a site changes at most twice.
+ *
+ * Every node gives the same result as Operations for the operands it accepts. Threads
+ * running the same tree, like a pareach's, may each rewrite a site, so a site can
+ * change more than twice, but whichever node it ends up with is correct. BinaryOp's
+ * field is volatile and nodes only have final fields, so a thread never sees one half
+ * built.
+ */
+public abstract class OperatorNode {
+    public static final OperatorNode UNINITIALIZED = new Uninitialized();
+
+    public abstract Value execute(Value left, Value right, BinaryOp site);
+
+    // Specializing
+    static OperatorNode specialize(TokenType operator, Value left, Value right) {
+        if (left instanceof NumberValue && right instanceof NumberValue) {
+            switch (operator) {
+                case PLUS: return new PlusNumNum();
+                case MINUS: return new MinusNumNum();
+                case TIMES: return new TimesNumNum();
+                case DIVIDE: return new DivideNumNum();
+                case DOUBLE_DIVIDE: return new DoubleDivideNumNum();
+                case CARET: return new CaretNumNum();
+                case PERCENT: return new PercentNumNum();
+                case GREATER: return new GreaterNumNum();
+                case LESS: return new LessNumNum();
+                case GEQ: return new GeqNumNum();
+                case LEQ: return new LeqNumNum();
+                case QUESTION: return new EqualNumNum();
+                case NOT_QUESTION: return new NotEqualNumNum();
+            }
+        } else if (left instanceof StringValue && right instanceof StringValue) {
+            if (operator == TokenType.PLUS) return new PlusStrStr();
+        }
+        return new Generic(operator);
+    }
+
+    // Called by a specialized node whose guard failed
+    static Value generalize(Value left, Value right, BinaryOp site) {
+        OperatorNode generic = new Generic(site.getOperator());
+        site.rewrite(generic);
+        return generic.execute(left, right, site);
+    }
+
+    private static final class Uninitialized extends OperatorNode {
+        public Value execute(Value left, Value right, BinaryOp site) {
+            OperatorNode node = specialize(site.getOperator(), left, right);
+            site.rewrite(node);
+            return node.execute(left, right, site);
+        }
+    }
+
+    // Any operands: the same dispatch the VM does
+    static final class Generic extends OperatorNode {
+        private final TokenType operator;
+
+        Generic(TokenType operator) {
+            this.operator = operator;
+        }
+
+        public Value execute(Value l, Value r, BinaryOp site) {
+            return switch (operator) {
+                case PLUS -> Operations.plus(l, r, site);
+                case MINUS -> Operations.minus(l, r, site);
+                case TIMES -> Operations.times(l, r, site);
+                case DIVIDE -> Operations.divide(l, r, site);
+                case DOUBLE_DIVIDE -> Operations.doubleDivide(l, r, site);
+                case CARET -> Operations.caret(l, r, site);
+                case PERCENT -> Operations.percent(l, r, site);
+                case AND_KEYWORD, OR_KEYWORD,
+                        NAND_KEYWORD, NOR_KEYWORD, XOR_KEYWORD, XNOR_KEYWORD -> Operations.booleanOperator(l, r, operator, site);
+                default -> Operations.compare(l, r, operator, site);
+            };
+        }
+    }
+
+    // Numbers
+    static final class PlusNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(l.getNumVal() + r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class MinusNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(l.getNumVal() - r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class TimesNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(l.getNumVal() * r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class DivideNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(l.getNumVal() / r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class DoubleDivideNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(Math.floor(l.getNumVal() / r.getNumVal()));
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class CaretNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(Math.pow(l.getNumVal(), r.getNumVal()));
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class PercentNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return new NumberValue(l.getNumVal() % r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class GreaterNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return BooleanValue.of(l.getNumVal() > r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class LessNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return BooleanValue.of(l.getNumVal() < r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class GeqNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return BooleanValue.of(l.getNumVal() >= r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class LeqNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) return BooleanValue.of(l.getNumVal() <= r.getNumVal());
+            return generalize(l, r, site);
+        }
+    }
+
+    // Same test as NumberValue.equals, so NaN ? NaN stays true and 0 ? -0 false
+    static final class EqualNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) {
+                return BooleanValue.of(Double.doubleToLongBits(l.getNumVal()) == Double.doubleToLongBits(r.getNumVal()));
+            }
+            return generalize(l, r, site);
+        }
+    }
+
+    static final class NotEqualNumNum extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof NumberValue && r instanceof NumberValue) {
+                return BooleanValue.of(Double.doubleToLongBits(l.getNumVal()) != Double.doubleToLongBits(r.getNumVal()));
+            }
+            return generalize(l, r, site);
+        }
+    }
+
+    // Strings
+    static final class PlusStrStr extends OperatorNode {
+        public Value execute(Value l, Value r, BinaryOp site) {
+            if (l instanceof StringValue && r instanceof StringValue) return StringValue.concat((StringValue) l, (StringValue) r);
+            return generalize(l, r, site);
+        }
+    }
+}
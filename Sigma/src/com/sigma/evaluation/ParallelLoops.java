@@ -0,0 +1,111 @@
+package com.sigma.evaluation;
+
+import com.sigma.Sigma;
+import com.sigma.ast.Block;
+import com.sigma.ast.ParallelLoop;
+import com.sigma.environments.Environment;
+import com.sigma.runtime.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/*
+ * Runs a pareach for either engine. The elements are split in halves until there are
+ * a few ranges for every thread of the common fork/join pool, and each range runs the
+ * body for its elements in order, each in an environment of its own under the loop's.
+ * The Resolver made sure the body only reads what's outside it, so the threads share
+ * nothing they write.
+ *
+ * With a reduction, a range folds the values its elements give from the left, two
+ * halves are folded left into right, and the thread that ran the loop folds the
+ * result into the target. That is the same as folding every value into the target one
+ * by one, in order, however the work was split, as long as the combining function is
+ * associative.
+ */
+public final class ParallelLoops {
+    private static final int RANGES_PER_THREAD = 4;
+
+    // Runs blocks on one thread. Engines keep state while they run, so each task gets
+    // its own from the supplier.
+    public interface Engine {
+        Value run(Block block, Environment environment);
+    }
+
+    private ParallelLoops() {
+    }
+
+    public static void run(ParallelLoop loop, Value iterated, Environment environment, Supplier<Engine> engines) {
+        if (iterated instanceof MapValue) iterated = ((MapValue) iterated).keys();
+        if (!(iterated instanceof ArrayValue)) {
+            Sigma.runtimeError("Cannot iterate over " + (iterated == null ? "nothing" : iterated.getType()), loop.getArray());
+            return;
+        }
+        Value[] elements = ((ArrayValue) iterated).getElements().toArray(new Value[0]);
+        if (elements.length == 0) return;
+        environment.indexForSharing();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int grain = Math.max(1, elements.length / (pool.getParallelism() * RANGES_PER_THREAD));
+        Value result = pool.invoke(new Range(loop, elements, environment, engines, grain, 0, elements.length));
+        if (loop.getTarget() != null) {
+            Value total = environment.lookup(loop.getTarget());
+            environment.update(loop.getTarget(), combine(loop, environment, engines.get(), total, result));
+        }
+    }
+
+    // Either value may be null, for a range with nothing in it yet
+    private static Value combine(ParallelLoop loop, Environment environment, Engine engine, Value left, Value right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        Environment pair = new Environment(environment);
+        pair.add(loop.getLeft(), left);
+        pair.add(loop.getRight(), right);
+        return engine.run(loop.getCombination(), pair);
+    }
+
+    // The elements from start up to end; the value is the range's fold, or null
+    // without a reduction
+    private static final class Range extends RecursiveTask<Value> {
+        private static final long serialVersionUID = 1L;
+
+        private final ParallelLoop loop;
+        private final Value[] elements;
+        private final Environment environment;
+        private final Supplier<Engine> engines;
+        private final int grain;
+        private final int start;
+        private final int end;
+
+        Range(ParallelLoop loop, Value[] elements, Environment environment, Supplier<Engine> engines, int grain, int start, int end) {
+            this.loop = loop;
+            this.elements = elements;
+            this.environment = environment;
+            this.engines = engines;
+            this.grain = grain;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected Value compute() {
+            if (end - start > grain) {
+                int middle = (start + end) >>> 1;
+                Range right = new Range(loop, elements, environment, engines, grain, middle, end);
+                right.fork();
+                Value left = new Range(loop, elements, environment, engines, grain, start, middle).compute();
+                return combine(loop, environment, engines.get(), left, right.join());
+            }
+            Engine engine = engines.get();
+            Value folded = null;
+            for (int i = start; i < end; i++) {
+                Environment element = new Environment(environment);
+                if (loop.isCounterUsed()) element.add(loop.getCounter(), new NumberValue(i));
+                element.add(loop.getVariable(), elements[i]);
+                Value value = engine.run(loop.getBody(), element);
+                if (loop.getTarget() == null) continue;
+                if (value == null) Sigma.runtimeError("Missing value to combine", loop);
+                folded = combine(loop, environment, engine, folded, value);
+            }
+            return folded;
+        }
+    }
+}
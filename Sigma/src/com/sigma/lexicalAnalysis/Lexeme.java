@@ -1,11 +1,8 @@
 package com.sigma.lexicalAnalysis;
 
-import com.sigma.environments.Environment;
-
 import static com.sigma.lexicalAnalysis.TokenType.*;
 
 import java.util.ArrayList;
-import java.util.Objects;
 
 public class Lexeme {
     // Instance Variables
@@ -15,11 +12,14 @@ public class Lexeme {
     private String stringVal;
     private Double numVal; // Sigma only supports a single real number type
     private Boolean boolVal;
-    public ArrayList<Lexeme> arrayVal;
 
-    private final ArrayList<Lexeme> children = new ArrayList<>();
+    // Interned name of an identifier (see Symbols); holding it keeps its id in use
+    private Symbols.Symbol symbol;
 
-    private Environment definingEnvironment;
+    // Lexical addressing (filled in by the resolver)
+    private int depth = -1;
+    private int slot = -1;
+    private ArrayList<Lexeme> shadowed;
 
     // Constructors
     public Lexeme(TokenType type, int lineNumber) {
@@ -45,12 +45,6 @@ public class Lexeme {
         this.boolVal = boolVal;
     }
 
-    public Lexeme(TokenType type, int lineNumber, ArrayList<Lexeme> arrayVal) {
-        this.type = type;
-        this.lineNumber = lineNumber;
-        this.arrayVal = arrayVal;
-    }
-
     // Getters
     public TokenType getType() {
         return this.type;
@@ -72,37 +66,40 @@ public class Lexeme {
         return this.boolVal;
     }
 
-    public Environment getDefiningEnvironment() {
-        return definingEnvironment;
+    // Identifiers made outside the Lexer are interned on first use
+    public int getSymbol() {
+        if (symbol == null) symbol = Symbols.intern(stringVal);
+        return symbol.getId();
     }
 
-    public void setDefiningEnvironment(Environment definingEnvironment) {
-        this.definingEnvironment = definingEnvironment;
+    public void setSymbol(Symbols.Symbol symbol) {
+        this.symbol = symbol;
     }
 
-    // Parse tree
-    public void addChild(Lexeme child) {
-        this.children.add(child);
+    public int getDepth() {
+        return depth;
     }
 
-    public Lexeme getChild(int index) {
-        return this.children.get(index);
+    public int getSlot() {
+        return slot;
     }
 
-    public int getNumChildren() {
-        return this.children.size();
+    public boolean isResolved() {
+        return slot != -1;
     }
 
-    // Equality
-    public boolean equals(Lexeme compare) {
-        boolean result = compare.getType() == this.getType();
-        if (!Objects.equals(compare.getStringVal(), this.getStringVal())) result = false;
-        if (!Objects.equals(compare.getNumVal(), this.getNumVal())) result = false;
-        if (!Objects.equals(compare.getBoolVal(), this.getBoolVal())) result = false;
-        if (this.arrayVal != null && compare.arrayVal != null) {
-            if (!this.arrayVal.equals(compare.arrayVal)) result = false;
-        }
-        return result;
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    public ArrayList<Lexeme> getShadowed() {
+        return shadowed;
+    }
+
+    public void addShadowed(Lexeme address) {
+        if (shadowed == null) shadowed = new ArrayList<>();
+        shadowed.add(address);
     }
 
     // toString
@@ -123,28 +120,8 @@ public class Lexeme {
                 } else {
                     output += ": " + getBoolVal();
                 }
-            } else if (arrayVal != null) {
-                output += ": " + arrayVal;
             }
         }
         return output;
     }
-
-    public void printTree(Lexeme root, int indents) {
-        System.out.print(root);
-        for (Lexeme lexeme : root.children) {
-            if (lexeme != null) {
-                System.out.print('\n');
-                for (int i = 0; i < indents + 1; i++) {
-                    System.out.print('\t');
-                }
-                printTree(lexeme, indents + 1);
-            }
-        }
-    }
-
-    public void printTree() {
-        printTree(this, 0);
-        System.out.print("\n");
-    }
-}
\ No newline at end of file
+}
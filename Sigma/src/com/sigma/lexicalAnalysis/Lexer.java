@@ -2,25 +2,116 @@ package com.sigma.lexicalAnalysis;
 
 import com.sigma.Sigma;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static com.sigma.lexicalAnalysis.TokenType.*;
 
+/*
+ * Turns source into tokens a batch at a time as the Parser asks for them. Source from a
+ * String is lexed in place; a file or channel is decoded from UTF-8 a window of
+ * characters at a time, so neither the whole source nor the whole token list is ever
+ * held in memory. Tokens go into a TokenBuffer rather than becoming Lexemes.
+ */
+public class Lexer implements TokenStream {
+    private static final int WINDOW = 8192;
 
-public class Lexer {
     // Instance variables
-    private final String source;
     private final ArrayList<Lexeme> lexemes = new ArrayList<>();
     private final HashMap<String, TokenType> keywords = getKeywords();
+    private final HashMap<String, String> names = new HashMap<>(); // One String per identifier name
 
-    private int currentPosition = 0;
-    private int startOfCurrentLexeme = 0;
+    // Characters from position to limit are decoded but not yet lexed. The current
+    // token starts at tokenStart, and shifted characters were dropped from the front.
+    private char[] buffer;
+    private int position = 0;
+    private int limit;
+    private int tokenStart = 0;
+    private int shifted = 0;
+
+    // Only set when decoding; a mapped file has all its bytes up front and no channel
+    private final ReadableByteChannel channel;
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private boolean channelEnded = false;
+    private boolean decoded = false;
+
+    private TokenBuffer tokens;
     private int lineNumber = 1;
 
-    // Constructor
+    // Constructors
     public Lexer(String source) {
-        this.source = source;
+        this.buffer = source.toCharArray();
+        this.limit = buffer.length;
+        this.channel = null;
+        this.bytes = null;
+        this.decoder = null;
+        this.decoded = true;
+    }
+
+    public Lexer(ReadableByteChannel channel) {
+        this(channel, ByteBuffer.allocate(WINDOW).flip());
+    }
+
+    private Lexer(ReadableByteChannel channel, ByteBuffer bytes) {
+        this.buffer = new char[WINDOW];
+        this.limit = 0;
+        this.channel = channel;
+        this.bytes = bytes;
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Maps the file instead of reading it. The mapping stays valid after the channel
+    // is closed, so the file can be closed as soon as this returns.
+    public static Lexer open(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path)) {
+            return new Lexer(null, file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+        }
+    }
+
+    // Decoding
+    // Keeps the current token and at least two characters ahead of position, for
+    // peekNext. The window grows when a single token fills it.
+    private void decode() {
+        System.arraycopy(buffer, tokenStart, buffer, 0, limit - tokenStart);
+        shifted += tokenStart;
+        position -= tokenStart;
+        limit -= tokenStart;
+        tokenStart = 0;
+        if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        CharBuffer chars = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+        try {
+            while (chars.hasRemaining() && !decoded) {
+                if (channel != null && !channelEnded) {
+                    bytes.compact();
+                    channelEnded = channel.read(bytes) < 0;
+                    bytes.flip();
+                }
+                boolean lastBytes = channel == null || channelEnded;
+                CoderResult result = decoder.decode(bytes, chars, lastBytes);
+                if (lastBytes && result.isUnderflow()) {
+                    decoder.flush(chars);
+                    decoded = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        limit = chars.position();
     }
 
     // Keywords
@@ -32,6 +123,7 @@ public class Lexer {
         keywords.put("foreach", FOREACH_KEYWORD);
         keywords.put("when", WHEN_KEYWORD);
         keywords.put("loop", LOOP_KEYWORD);
+        keywords.put("pareach", PAREACH_KEYWORD);
         keywords.put("of", OF_KEYWORD);
         keywords.put("nothing", NOTHING);
         keywords.put("and", AND_KEYWORD);
@@ -47,35 +139,41 @@ public class Lexer {
         keywords.put("nocase", NOCASE_KEYWORD);
         keywords.put("butif", BUTIF_KEYWORD);
         keywords.put("but", BUT_KEYWORD);
+        keywords.put("return", RETURN_KEYWORD);
+        keywords.put("break", BREAK_KEYWORD);
+        keywords.put("continue", CONTINUE_KEYWORD);
         return keywords;
     }
 
     // Helpers
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(currentPosition);
+        return buffer[position];
     }
 
     private char peekNext() {
-        if (currentPosition + 1 >= source.length()) return '\0';
-        return source.charAt(currentPosition + 1);
+        if (limit - position < 2 && !decoded) decode();
+        if (position + 1 >= limit) return '\0';
+        return buffer[position + 1];
     }
 
     private boolean match(char expected) {
-        if (isAtEnd() || source.charAt(currentPosition) != expected) return false;
-        currentPosition++;
+        if (isAtEnd() || buffer[position] != expected) return false;
+        position++;
         return true;
     }
 
     private char advance() {
-        char currentChar = source.charAt(currentPosition);
+        if (isAtEnd()) return '\0';
+        char currentChar = buffer[position];
         if (currentChar == '\n' || currentChar == '\r') lineNumber++;
-        currentPosition++;
+        position++;
         return currentChar;
     }
 
     private boolean isAtEnd() {
-        return currentPosition >= source.length();
+        if (position >= limit && !decoded) decode();
+        return position >= limit;
     }
 
     // Character classification
@@ -93,18 +191,53 @@ public class Lexer {
         return isAlpha(c) || isDigit(c);
     }
 
-    // Main lex function
-    public ArrayList<Lexeme> lex() {
-        while (!isAtEnd()) {
-            startOfCurrentLexeme = currentPosition;
-            Lexeme nextLexeme = getNextLexeme();
-            if (nextLexeme != null) lexemes.add(nextLexeme);
+    private String text() {
+        return new String(buffer, tokenStart, position - tokenStart);
+    }
+
+    private boolean token(TokenType type) {
+        return token(type, null);
+    }
+
+    private boolean token(TokenType type, Object value) {
+        tokens.add(type, shifted + tokenStart, position - tokenStart, lineNumber, value);
+        return true;
+    }
+
+    // Main lex functions
+    // Adds EOF once the source runs out, and again on every call after that
+    public void read(TokenBuffer tokens, int count) {
+        this.tokens = tokens;
+        int end = tokens.size() + count;
+        while (tokens.size() < end) {
+            if (isAtEnd()) {
+                tokenStart = position;
+                token(EOF);
+                return;
+            }
+            tokenStart = position;
+            lexToken();
         }
-        lexemes.add(new Lexeme(EOF, lineNumber));
+    }
+
+    // Lexes everything at once
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens = new TokenBuffer();
+        do {
+            read(tokens, 1024);
+        } while (!tokens.is(tokens.size() - 1, EOF));
+        return tokens;
+    }
+
+    // As Lexemes, for tools that want the whole list
+    public ArrayList<Lexeme> lex() {
+        TokenBuffer tokens = tokenize();
+        for (int i = 0; i < tokens.size(); i++) lexemes.add(tokens.lexeme(i));
         return lexemes;
     }
 
-    private Lexeme getNextLexeme() {
+    // Adds at most one token, and returns whether it did
+    private boolean lexToken() {
         char c = advance();
         switch (c) {
             // Whitespace
@@ -112,90 +245,90 @@ public class Lexer {
             case '\t':
             case '\n':
             case '\r':
-                return null;
+                return false;
 
             // Strictly one character
             case '=':
                 Sigma.runtimeError("Equals sign", lineNumber);
                 break;
             case ',':
-                return new Lexeme(COMMA, lineNumber);
+                return token(COMMA);
             case '‼':
-                return new Lexeme(BANGBANG, lineNumber);
+                return token(BANGBANG);
             case '{':
-                return new Lexeme(OPEN_CURLY, lineNumber);
+                return token(OPEN_CURLY);
             case '}':
-                return new Lexeme(CLOSED_CURLY, lineNumber);
+                return token(CLOSED_CURLY);
             case '»':
-                return new Lexeme(DOUBLE_FORWARD, lineNumber);
+                return token(DOUBLE_FORWARD);
             case '«':
-                return new Lexeme(DOUBLE_BACKWARD, lineNumber);
+                return token(DOUBLE_BACKWARD);
             case '(':
-                return new Lexeme(OPEN_PAREN, lineNumber);
+                return token(OPEN_PAREN);
             case ')':
-                return new Lexeme(CLOSED_PAREN, lineNumber);
+                return token(CLOSED_PAREN);
             case '[':
-                return new Lexeme(OPEN_SQUARE, lineNumber);
+                return token(OPEN_SQUARE);
             case ']':
-                return new Lexeme(CLOSED_SQUARE, lineNumber);
+                return token(CLOSED_SQUARE);
             case '≥':
-                return new Lexeme(GEQ, lineNumber);
+                return token(GEQ);
             case '≤':
-                return new Lexeme(LEQ, lineNumber);
+                return token(LEQ);
             case '~':
-                return new Lexeme(APPROX, lineNumber);
+                return token(APPROX);
             case '•':
-                return new Lexeme(DOT, lineNumber);
+                return token(DOT);
 
             // Multiple characters
             case '+':
-                if (match('+')) return new Lexeme(INCREMENT, lineNumber);
+                if (match('+')) return token(INCREMENT);
                 if (match('<')) {
-                    if (match('-')) return new Lexeme(PLUS_ASSIGNMENT, lineNumber);
+                    if (match('-')) return token(PLUS_ASSIGNMENT);
                 }
-                return new Lexeme(PLUS, lineNumber);
+                return token(PLUS);
             case '-':
-                if (match('-')) return new Lexeme(DECREMENT, lineNumber);
+                if (match('-')) return token(DECREMENT);
                 if (match('<')) {
-                    if (match('-')) return new Lexeme(MINUS_ASSIGNMENT, lineNumber);
+                    if (match('-')) return token(MINUS_ASSIGNMENT);
                 }
-                return new Lexeme(MINUS, lineNumber);
+                return token(MINUS);
             case '*':
                 if (match('<')) {
-                    if (match('-')) return new Lexeme(TIMES_ASSIGNMENT, lineNumber);
+                    if (match('-')) return token(TIMES_ASSIGNMENT);
                 }
-                return new Lexeme(TIMES, lineNumber);
+                return token(TIMES);
             case '/':
                 if (match('/')) {
                     if (match('<') && match('-')) {
-                        return new Lexeme(DOUBLE_DIVIDE_ASSIGNMENT, lineNumber);
+                        return token(DOUBLE_DIVIDE_ASSIGNMENT);
                     }
-                    return new Lexeme(DOUBLE_DIVIDE, lineNumber);
+                    return token(DOUBLE_DIVIDE);
                 }
                 if (match('<')) {
-                    if (match('-')) return new Lexeme(DIVIDE_ASSIGNMENT, lineNumber);
+                    if (match('-')) return token(DIVIDE_ASSIGNMENT);
                 }
-                return new Lexeme(DIVIDE, lineNumber);
+                return token(DIVIDE);
             case '^':
                 if (match('<')) {
-                    if (match('-')) return new Lexeme(CARET_ASSIGNMENT, lineNumber);
+                    if (match('-')) return token(CARET_ASSIGNMENT);
                 }
-                return new Lexeme(CARET, lineNumber);
+                return token(CARET);
             case '%':
                 if (match('<')) {
-                    if (match('-')) return new Lexeme(PERCENT_ASSIGNMENT, lineNumber);
+                    if (match('-')) return token(PERCENT_ASSIGNMENT);
                 }
-                return new Lexeme(PERCENT, lineNumber);
+                return token(PERCENT);
             case '?':
-                if (match('?')) return new Lexeme(DOUBLE_QUESTION, lineNumber);
-                return new Lexeme(QUESTION, lineNumber);
+                if (match('?')) return token(DOUBLE_QUESTION);
+                return token(QUESTION);
             case '>':
-                if (match('?')) return new Lexeme(GREATER_QUESTION, lineNumber);
-                return new Lexeme(GREATER, lineNumber);
+                if (match('?')) return token(GREATER_QUESTION);
+                return token(GREATER);
             case '<':
-                if (match('-')) return new Lexeme(ASSIGN_OPERATOR, lineNumber);
-                if (match('?')) return new Lexeme(LESS_QUESTION, lineNumber);
-                return new Lexeme(LESS, lineNumber);
+                if (match('-')) return token(ASSIGN_OPERATOR);
+                if (match('?')) return token(LESS_QUESTION);
+                return token(LESS);
             case '\\':
                 return lexComment();
             case '.':
@@ -203,12 +336,12 @@ public class Lexer {
             case '!':
                 if (match('?')) {
                     if (match('?')) {
-                        return new Lexeme(NOT_DOUBLE_QUESTION, lineNumber);
+                        return token(NOT_DOUBLE_QUESTION);
                     }
-                    return new Lexeme(NOT_QUESTION, lineNumber);
+                    return token(NOT_QUESTION);
                 }
-                if (match('~')) return new Lexeme(NOT_APPROX, lineNumber);
-                return new Lexeme(EXCLAMATION, lineNumber);
+                if (match('~')) return token(NOT_APPROX);
+                return token(EXCLAMATION);
 
             // Strings
             case '"':
@@ -218,11 +351,11 @@ public class Lexer {
                 if (isDigit(c)) return lexNumber();
                 else if (isAlpha(c)) return lexIdentifierOrKeyword();
         }
-        return null;
+        return false;
     }
 
     // Lex helpers
-    private Lexeme lexNumber() {
+    private boolean lexNumber() {
         boolean hasDecimal = false;
         boolean hasError = false;
         while (true) {
@@ -232,7 +365,7 @@ public class Lexer {
                 if (!isDigit(peekNext())) {
                     Sigma.syntaxError("Malformed real number (ends in decimal point)", lineNumber);
                     advance();
-                    return null;
+                    return false;
                 }
                 if (!hasDecimal) {
                     hasDecimal = true;
@@ -248,20 +381,19 @@ public class Lexer {
         if (hasError) {
             Sigma.syntaxError("Malformed real number (too many decimal points)", lineNumber);
             advance();
-            return null;
+            return false;
         }
-        String target = source.substring(startOfCurrentLexeme, currentPosition);
-        double number = Double.parseDouble(target);
-        return new Lexeme(NUMBER, lineNumber, number);
+        double number = Double.parseDouble(text());
+        return token(NUMBER, number);
     }
 
-    private Lexeme lexString() {
+    private boolean lexString() {
         StringBuilder target = new StringBuilder();
         while (true) {
             switch (peek()) {
                 case '\0' -> {
                     Sigma.syntaxError("Malformed string (not closed properly)", lineNumber);
-                    return null;
+                    return false;
                 }
                 case '¬' -> {
                     target.append('\t');
@@ -273,7 +405,7 @@ public class Lexer {
                 }
                 case '"' -> {
                     advance();
-                    return new Lexeme(STRING, lineNumber, String.valueOf(target));
+                    return token(STRING, String.valueOf(target));
                 }
                 default -> {
                     target.append(peek());
@@ -283,41 +415,39 @@ public class Lexer {
         }
     }
 
-    private Lexeme lexIdentifierOrKeyword() {
+    private boolean lexIdentifierOrKeyword() {
         while (isAlphaNumeric(peek())) advance();
-        String text = source.substring(startOfCurrentLexeme, currentPosition);
+        String text = text();
 
-        if (text.equals("true")) return new Lexeme(BOOLEAN, lineNumber, true);
-        if (text.equals("fals")) return new Lexeme(BOOLEAN, lineNumber, false);
+        if (text.equals("true")) return token(BOOLEAN, true);
+        if (text.equals("fals")) return token(BOOLEAN, false);
 
         TokenType type = keywords.get(text);
 
         if (type == null) {
-            return new Lexeme(IDENTIFIER, lineNumber, text);
+            return token(IDENTIFIER, names.computeIfAbsent(text, name -> name));
         } else {
-            return new Lexeme(type, lineNumber);
+            return token(type);
         }
     }
 
-    private Lexeme lexComment() {
+    private boolean lexComment() {
         if (peek() == '.') {
             while (true) {
                 advance();
                 if (peek() == '.' && peekNext() == '\\') {
                     advance();
                     advance();
-                    String target = source.substring(startOfCurrentLexeme, currentPosition);
-                    return new Lexeme(COMMENT, lineNumber, target);
+                    return token(COMMENT, text());
                 } else if (peek() == '\0') {
                     Sigma.syntaxError("Unclosed comment", lineNumber);
-                    return null;
+                    return false;
                 }
             }
         } else {
             while (true) {
                 if (peek() == '\n' || peek() == '\0') {
-                    String target = source.substring(startOfCurrentLexeme, currentPosition);
-                    return new Lexeme(COMMENT, lineNumber, target);
+                    return token(COMMENT, text());
                 }
                 advance();
             }
@@ -0,0 +1,67 @@
+package com.sigma.lexicalAnalysis;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/*
+ * Interns identifier names to small integer symbol ids, so that environments can
+ * compare and hash names as ints instead of strings. Ids are shared by every program
+ * run in the same JVM, but the table only holds its symbols weakly: a name stays
+ * interned while some Lexeme refers to its Symbol, and once none does, the entry is
+ * dropped and its id goes to the next new name. An environment keeps the Lexemes of
+ * the names it indexes, so no id is reused while an environment still holds it, and
+ * an embedding that compiles script after script only keeps the names still in use.
+ */
+public final class Symbols {
+    private static final HashMap<String, Entry> table = new HashMap<>();
+    private static final ReferenceQueue<Symbol> released = new ReferenceQueue<>();
+    private static final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private static int nextId = 0;
+
+    private Symbols() {
+    }
+
+    public static synchronized Symbol intern(String name) {
+        purge();
+        Entry entry = table.get(name);
+        Symbol symbol = entry == null ? null : entry.get();
+        if (symbol != null) return symbol;
+        symbol = new Symbol(freeIds.isEmpty() ? nextId++ : freeIds.pop());
+        table.put(name, new Entry(name, symbol));
+        return symbol;
+    }
+
+    // An entry replaced after its symbol was collected is still queued, so it only
+    // removes itself and frees its own id
+    private static void purge() {
+        for (Entry entry; (entry = (Entry) released.poll()) != null; ) {
+            table.remove(entry.name, entry);
+            freeIds.push(entry.id);
+        }
+    }
+
+    public static final class Symbol {
+        private final int id;
+
+        private Symbol(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    private static final class Entry extends WeakReference<Symbol> {
+        final String name;
+        final int id;
+
+        Entry(String name, Symbol symbol) {
+            super(symbol, released);
+            this.name = name;
+            this.id = symbol.id;
+        }
+    }
+}
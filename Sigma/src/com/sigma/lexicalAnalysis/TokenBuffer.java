@@ -0,0 +1,110 @@
+package com.sigma.lexicalAnalysis;
+
+import java.util.Arrays;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+/*
+ * Tokens as parallel arrays instead of one Lexeme each: the type, where the token
+ * starts in the source and how many characters it takes up, and its line. Only
+ * identifiers, literals and comments have a value. A Lexeme is made only when the
+ * Parser keeps a token in the tree, so punctuation like ‼ and { never becomes an object.
+ */
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private Object[] values; // String, Double or Boolean, for tokens that have a value
+    private int size = 0;
+
+    public TokenBuffer() {
+        this(1024);
+    }
+
+    public TokenBuffer(int capacity) {
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    // Adding
+    void add(TokenType type, int start, int length, int line, Object value) {
+        if (size == types.length) grow();
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        values[size] = value;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, types.length * 2);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    // Drops the tokens before from, so a streaming Parser only keeps the tokens it
+    // hasn't read yet
+    public void discard(int from) {
+        int remaining = size - from;
+        System.arraycopy(types, from, types, 0, remaining);
+        System.arraycopy(starts, from, starts, 0, remaining);
+        System.arraycopy(lengths, from, lengths, 0, remaining);
+        System.arraycopy(lines, from, lines, 0, remaining);
+        System.arraycopy(values, from, values, 0, remaining);
+        Arrays.fill(values, remaining, size, null);
+        size = remaining;
+    }
+
+    // Turns a keyword into an identifier with the keyword's text, for a Parser that
+    // finds a script using it as a variable name
+    public void rename(int index, String name) {
+        types[index] = (byte) IDENTIFIER.ordinal();
+        values[index] = name;
+    }
+
+    // Reading
+    public int size() {
+        return size;
+    }
+
+    public boolean is(int index, TokenType type) {
+        return types[index] == type.ordinal();
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public Lexeme lexeme(int index) {
+        TokenType type = type(index);
+        Object value = values[index];
+        if (value instanceof Double) return new Lexeme(type, lines[index], (double) (Double) value);
+        if (value instanceof Boolean) return new Lexeme(type, lines[index], (boolean) (Boolean) value);
+        if (value == null) return new Lexeme(type, lines[index]);
+        Lexeme lexeme = new Lexeme(type, lines[index], (String) value);
+        if (type == IDENTIFIER) lexeme.setSymbol(Symbols.intern((String) value));
+        return lexeme;
+    }
+}
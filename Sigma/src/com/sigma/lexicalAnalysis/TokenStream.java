@@ -0,0 +1,10 @@
+package com.sigma.lexicalAnalysis;
+
+/*
+ * Tokens handed to the Parser a batch at a time. Once the source runs out, read adds
+ * an EOF token on every call.
+ */
+public interface TokenStream {
+    // Adds up to count tokens to the end of tokens
+    void read(TokenBuffer tokens, int count);
+}
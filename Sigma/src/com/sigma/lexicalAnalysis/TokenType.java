@@ -28,13 +28,14 @@ public enum TokenType {
 
     // Keywords
     VAR_KEYWORD, FUNC_KEYWORD,
-    FOR_KEYWORD, FOREACH_KEYWORD, WHEN_KEYWORD, LOOP_KEYWORD,
+    FOR_KEYWORD, FOREACH_KEYWORD, WHEN_KEYWORD, LOOP_KEYWORD, PAREACH_KEYWORD,
     OF_KEYWORD,
     NOTHING,
     AND_KEYWORD, OR_KEYWORD, NOT_KEYWORD,
     NAND_KEYWORD, NOR_KEYWORD, XOR_KEYWORD, XNOR_KEYWORD,
     IF_KEYWORD, BUTIF_KEYWORD, BUT_KEYWORD,
     CHANGE_KEYWORD, CASE_KEYWORD, NOCASE_KEYWORD,
+    RETURN_KEYWORD, BREAK_KEYWORD, CONTINUE_KEYWORD,
 
     // End of file
     EOF,
@@ -47,7 +48,8 @@ public enum TokenType {
     ASSIGNMENT, REGULAR_ASSIGNMENT,
     IF_STATEMENT, BUTIF_STATEMENT_LIST, BUTIF_STATEMENT, BUT_STATEMENT,
     CHANGE_STATEMENT, CHANGE_CASES, CHANGE_CASE,
-    FOR_LOOP, FOREACH_LOOP, WHEN_LOOP, LOOP_LOOP,
+    FOR_LOOP, FOREACH_LOOP, WHEN_LOOP, LOOP_LOOP, PARALLEL_LOOP,
+    RETURN_STATEMENT, BREAK_STATEMENT, CONTINUE_STATEMENT,
     FUNCTION_CALL, CALL_ARGUMENTS, FUNCTION_PARAMS,
-    ARRAY
+    ARRAY, MAP
 }
\ No newline at end of file
@@ -0,0 +1,373 @@
+package com.sigma.optimization;
+
+import com.sigma.ast.*;
+import com.sigma.evaluation.Builtin;
+import com.sigma.evaluation.BuiltinRegistry;
+import com.sigma.evaluation.Operations;
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.BooleanValue;
+import com.sigma.runtime.Value;
+
+import java.util.ArrayList;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+/*
+ * Optimization pass run between the parser and the resolver. Operators and casts whose
+ * operands are all number, string or boolean literals are replaced by the literal they
+ * evaluate to, computed with the same Operations and Builtins the engines use, and
+ * if/butif branches whose condition folds to a constant are pruned, along with a whole
+ * if statement none of whose branches can run.
+ *
+ * An operation that fails, with a Sigma error or in Java, is left alone, since the
+ * error has to happen when (and if) the expression is reached. Arrays are never
+ * folded because they are mutable.
+ */
+public class ConstantFolder implements Visitor<Node, Void> {
+    private static final boolean printDebugMessages = false;
+
+    public Program fold(Program program) {
+        log("fold");
+        return (Program) program.accept(this, null);
+    }
+
+    // Traversal
+    // Nodes are immutable, so a node whose children fold is rebuilt around the new
+    // children and a node with nothing to fold is returned as it is
+    private Node fold(Node tree) {
+        return tree == null ? null : tree.accept(this, null);
+    }
+
+    private Block foldBlock(Block block) {
+        return block == null ? null : (Block) block.accept(this, null);
+    }
+
+    public Node visitProgram(Program program, Void context) {
+        Block body = foldBlock(program.getBody());
+        return body == program.getBody() ? program : new Program(program.getLineNumber(), body);
+    }
+
+    // A statement that folds to null can never do anything and is dropped. As the
+    // last statement it still gives the block its value, nothing, so a comment takes
+    // its place.
+    public Node visitBlock(Block block, Void context) {
+        ArrayList<Node> statements = new ArrayList<>(block.size());
+        boolean changed = false;
+        for (int i = 0; i < block.size(); i++) {
+            Node statement = fold(block.get(i));
+            if (statement == null && i == block.size() - 1) statement = new Comment(block.get(i).getLineNumber(), "");
+            changed |= statement != block.get(i);
+            if (statement != null) statements.add(statement);
+        }
+        return changed ? new Block(block.getLineNumber(), statements) : block;
+    }
+
+    public Node visitComment(Comment comment, Void context) {
+        return comment;
+    }
+
+    public Node visitVariableDeclaration(VariableDeclaration declaration, Void context) {
+        Node value = fold(declaration.getValue());
+        if (value == declaration.getValue()) return declaration;
+        return new VariableDeclaration(declaration.getLineNumber(), declaration.getName(), value);
+    }
+
+    public Node visitFunctionDefinition(FunctionDefinition definition, Void context) {
+        Block body = foldBlock(definition.getBody());
+        if (body == definition.getBody()) return definition;
+        ArrayList<Lexeme> parameters = new ArrayList<>();
+        for (int i = 0; i < definition.getParameterCount(); i++) parameters.add(definition.getParameter(i));
+        return new FunctionDefinition(definition.getLineNumber(), definition.getName(), parameters, body);
+    }
+
+    public Node visitAssignment(Assignment assignment, Void context) {
+        Node value = fold(assignment.getValue());
+        if (value == assignment.getValue()) return assignment;
+        return new Assignment(assignment.getLineNumber(), assignment.getName(), value);
+    }
+
+    public Node visitIfStatement(IfStatement ifStatement, Void context) {
+        ArrayList<Node> conditions = new ArrayList<>();
+        ArrayList<Block> blocks = new ArrayList<>();
+        boolean changed = false;
+        for (int i = 0; i < ifStatement.getBranchCount(); i++) {
+            conditions.add(fold(ifStatement.getCondition(i)));
+            blocks.add(foldBlock(ifStatement.getBlock(i)));
+            changed |= conditions.get(i) != ifStatement.getCondition(i) || blocks.get(i) != ifStatement.getBlock(i);
+        }
+        Block otherwise = foldBlock(ifStatement.getOtherwise());
+        changed |= otherwise != ifStatement.getOtherwise();
+        return pruneIfStatement(ifStatement, conditions, blocks, otherwise, changed);
+    }
+
+    public Node visitChangeStatement(ChangeStatement changeStatement, Void context) {
+        Node value = fold(changeStatement.getValue());
+        boolean changed = value != changeStatement.getValue();
+        ArrayList<Node> cases = new ArrayList<>();
+        ArrayList<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < changeStatement.getCaseCount(); i++) {
+            cases.add(fold(changeStatement.getCase(i)));
+            blocks.add(foldBlock(changeStatement.getBlock(i)));
+            changed |= cases.get(i) != changeStatement.getCase(i) || blocks.get(i) != changeStatement.getBlock(i);
+        }
+        Block otherwise = foldBlock(changeStatement.getOtherwise());
+        changed |= otherwise != changeStatement.getOtherwise();
+        if (!changed) return changeStatement;
+        return new ChangeStatement(changeStatement.getLineNumber(), value, cases, blocks, otherwise);
+    }
+
+    public Node visitForLoop(ForLoop loop, Void context) {
+        Node initializer = fold(loop.getInitializer());
+        Node condition = fold(loop.getCondition());
+        Node update = fold(loop.getUpdate());
+        Block body = foldBlock(loop.getBody());
+        if (initializer == loop.getInitializer() && condition == loop.getCondition() && update == loop.getUpdate() && body == loop.getBody()) {
+            return loop;
+        }
+        return new ForLoop(loop.getLineNumber(), (VariableDeclaration) initializer, condition, update, body);
+    }
+
+    public Node visitForeachLoop(ForeachLoop loop, Void context) {
+        Node array = fold(loop.getArray());
+        Block body = foldBlock(loop.getBody());
+        if (array == loop.getArray() && body == loop.getBody()) return loop;
+        return new ForeachLoop(loop.getLineNumber(), loop.getVariable(), array, body);
+    }
+
+    public Node visitWhenLoop(WhenLoop loop, Void context) {
+        Node condition = fold(loop.getCondition());
+        Block body = foldBlock(loop.getBody());
+        if (condition == loop.getCondition() && body == loop.getBody()) return loop;
+        return new WhenLoop(loop.getLineNumber(), condition, body);
+    }
+
+    public Node visitLoopLoop(LoopLoop loop, Void context) {
+        Node bound = fold(loop.getBound());
+        Block body = foldBlock(loop.getBody());
+        if (bound == loop.getBound() && body == loop.getBody()) return loop;
+        return new LoopLoop(loop.getLineNumber(), bound, body);
+    }
+
+    public Node visitParallelLoop(ParallelLoop loop, Void context) {
+        Node array = fold(loop.getArray());
+        Block body = foldBlock(loop.getBody());
+        if (array == loop.getArray() && body == loop.getBody()) return loop;
+        return new ParallelLoop(loop.getLineNumber(), loop.getVariable(), array, loop.getTarget(), loop.getCombiner(), body);
+    }
+
+    public Node visitReturnStatement(ReturnStatement returnStatement, Void context) {
+        Node value = fold(returnStatement.getValue());
+        if (value == returnStatement.getValue()) return returnStatement;
+        return new ReturnStatement(returnStatement.getLineNumber(), value);
+    }
+
+    public Node visitBreakStatement(BreakStatement breakStatement, Void context) {
+        return breakStatement;
+    }
+
+    public Node visitContinueStatement(ContinueStatement continueStatement, Void context) {
+        return continueStatement;
+    }
+
+    public Node visitCall(Call call, Void context) {
+        ArrayList<Node> arguments = new ArrayList<>(call.getArgumentCount());
+        boolean changed = false;
+        for (int i = 0; i < call.getArgumentCount(); i++) {
+            arguments.add(fold(call.getArgument(i)));
+            changed |= arguments.get(i) != call.getArgument(i);
+        }
+        if (changed) call = new Call(call.getLineNumber(), call.getName(), arguments);
+        return foldCall(call);
+    }
+
+    public Node visitBinaryOp(BinaryOp operation, Void context) {
+        Node left = fold(operation.getLeft());
+        Node right = fold(operation.getRight());
+        if (left != operation.getLeft() || right != operation.getRight()) {
+            operation = new BinaryOp(operation.getLineNumber(), operation.getOperator(), left, right);
+        }
+        return foldBinaryOp(operation);
+    }
+
+    public Node visitUnaryOp(UnaryOp operation, Void context) {
+        Node operand = fold(operation.getOperand());
+        if (operand != operation.getOperand()) {
+            operation = new UnaryOp(operation.getLineNumber(), operation.getOperator(), operand);
+        }
+        return foldUnaryOp(operation);
+    }
+
+    public Node visitLiteral(Literal literal, Void context) {
+        return literal;
+    }
+
+    public Node visitVariable(Variable variable, Void context) {
+        return variable;
+    }
+
+    public Node visitArrayLiteral(ArrayLiteral array, Void context) {
+        ArrayList<Node> elements = new ArrayList<>(array.size());
+        boolean changed = false;
+        for (int i = 0; i < array.size(); i++) {
+            elements.add(fold(array.get(i)));
+            changed |= elements.get(i) != array.get(i);
+        }
+        return changed ? new ArrayLiteral(array.getLineNumber(), elements) : array;
+    }
+
+    public Node visitMapLiteral(MapLiteral map, Void context) {
+        ArrayList<Node> keys = new ArrayList<>(map.size());
+        ArrayList<Node> values = map.isSet() ? null : new ArrayList<>(map.size());
+        boolean changed = false;
+        for (int i = 0; i < map.size(); i++) {
+            keys.add(fold(map.getKey(i)));
+            changed |= keys.get(i) != map.getKey(i);
+            if (values == null) continue;
+            values.add(fold(map.getValue(i)));
+            changed |= values.get(i) != map.getValue(i);
+        }
+        return changed ? new MapLiteral(map.getLineNumber(), keys, values) : map;
+    }
+
+    // Folding
+    private Node foldBinaryOp(BinaryOp operation) {
+        if (!isConstant(operation.getLeft()) || !isConstant(operation.getRight())) return operation;
+        Value left = value(operation.getLeft());
+        Value right = value(operation.getRight());
+        Value result;
+        try {
+            result = switch (operation.getOperator()) {
+                case PLUS -> Operations.plus(left, right, operation);
+                case MINUS -> Operations.minus(left, right, operation);
+                case TIMES -> Operations.times(left, right, operation);
+                case DIVIDE -> Operations.divide(left, right, operation);
+                case DOUBLE_DIVIDE -> Operations.doubleDivide(left, right, operation);
+                case CARET -> Operations.caret(left, right, operation);
+                case PERCENT -> Operations.percent(left, right, operation);
+                case AND_KEYWORD, OR_KEYWORD,
+                        NAND_KEYWORD, NOR_KEYWORD, XOR_KEYWORD, XNOR_KEYWORD -> Operations.booleanOperator(left, right, operation.getOperator(), operation);
+                default -> Operations.compare(left, right, operation.getOperator(), operation);
+            };
+        } catch (RuntimeException e) {
+            log("not folding " + operation + ": " + e);
+            return operation;
+        }
+        return literal(result, operation);
+    }
+
+    // ++ and -- need a variable, so they never fold
+    private Node foldUnaryOp(UnaryOp operation) {
+        if (!isConstant(operation.getOperand())) return operation;
+        Value operand = value(operation.getOperand());
+        Value result;
+        try {
+            result = switch (operation.getOperator()) {
+                case MINUS -> Operations.negate(operand, operation);
+                case EXCLAMATION, NOT_KEYWORD -> Operations.not(operand, operation);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            log("not folding " + operation + ": " + e);
+            return operation;
+        }
+        return literal(result, operation);
+    }
+
+    private Node foldCall(Call call) {
+        String name = call.getName().getStringVal();
+        Builtin builtin = BuiltinRegistry.lookup(name);
+        if (builtin == null || call.getArgumentCount() != builtin.getArity()) return call;
+        Value[] args = new Value[call.getArgumentCount()];
+        for (int i = 0; i < args.length; i++) {
+            if (!isConstant(call.getArgument(i))) return call;
+            args[i] = value(call.getArgument(i));
+        }
+        if (!isPure(name, args)) return call;
+        try {
+            return literal(builtin.call(args, call), call);
+        } catch (RuntimeException e) {
+            log("not folding " + call + ": " + e);
+            return call;
+        }
+    }
+
+    // Casts accept any literal; the math builtins only fail on non-numbers
+    private static boolean isPure(String name, Value[] args) {
+        return switch (name) {
+            case "num", "str", "tf" -> true;
+            case "abs", "floor", "ceil", "round" -> args[0].getType() == NUMBER;
+            case "sqrt" -> args[0].getType() == NUMBER && args[0].getNumVal() >= 0;
+            case "min", "max" -> args[0].getType() == NUMBER && args[1].getType() == NUMBER;
+            default -> false;
+        };
+    }
+
+    // Pruning
+    // Conditions are evaluated in order until one is true, so a constant false
+    // condition can be dropped along with its block, and nothing after a constant
+    // true condition can run
+    private static Node pruneIfStatement(IfStatement tree, ArrayList<Node> conditions, ArrayList<Block> blocks, Block otherwise, boolean changed) {
+        int branches = conditions.size();
+        Block but = otherwise;
+        while (conditions.size() > 1 && isConstant(conditions.get(0)) && !value(conditions.get(0)).isTruthy()) {
+            conditions.remove(0);
+            blocks.remove(0);
+        }
+        if (isConstant(conditions.get(0)) && value(conditions.get(0)).isTruthy()) {
+            truncate(conditions, blocks, 1);
+            but = null;
+        } else if (isConstant(conditions.get(0)) && conditions.size() == 1) {
+            // Only the but branch can run, and without one nothing can
+            if (but == null) return null;
+            conditions.set(0, new Literal(tree.getLineNumber(), BooleanValue.TRUE));
+            blocks.set(0, but);
+            but = null;
+        } else {
+            for (int i = 1; i < conditions.size(); i++) {
+                if (!isConstant(conditions.get(i))) continue;
+                if (value(conditions.get(i)).isTruthy()) {
+                    // Later branches are unreachable and this one becomes the but branch
+                    but = blocks.get(i);
+                    truncate(conditions, blocks, i);
+                    break;
+                }
+                conditions.remove(i);
+                blocks.remove(i--);
+            }
+        }
+        if (!changed && but == otherwise && conditions.size() == branches) return tree;
+        return new IfStatement(tree.getLineNumber(), conditions, blocks, but);
+    }
+
+    private static void truncate(ArrayList<Node> conditions, ArrayList<Block> blocks, int size) {
+        while (conditions.size() > size) {
+            conditions.remove(conditions.size() - 1);
+            blocks.remove(blocks.size() - 1);
+        }
+    }
+
+    // Literals
+    private static boolean isConstant(Node tree) {
+        if (!(tree instanceof Literal)) return false;
+        TokenType type = tree.getType();
+        return type == NUMBER || type == STRING || type == BOOLEAN;
+    }
+
+    private static Value value(Node literal) {
+        return ((Literal) literal).getValue();
+    }
+
+    private static Node literal(Value value, Node site) {
+        if (value == null) return site;
+        if (value.getType() != NUMBER && value.getType() != STRING && value.getType() != BOOLEAN) return site;
+        Literal literal = new Literal(site.getLineNumber(), value);
+        log("folded " + site + " to " + literal);
+        return literal;
+    }
+
+    // Debugging
+    private static void log(String message) {
+        if (printDebugMessages) System.out.println(message);
+    }
+}
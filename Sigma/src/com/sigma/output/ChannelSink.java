@@ -0,0 +1,100 @@
+package com.sigma.output;
+
+import com.sigma.runtime.Value;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Encodes to UTF-8 and writes to a channel in blocks. Nothing reaches the channel
+ * until CAPACITY characters are waiting or the sink is flushed, so logging a line
+ * costs a copy into the buffer rather than a locked, flushed System.out call.
+ *
+ * standard() is the process's standard output. It is flushed when the JVM exits, even
+ * through System.exit, but anything else printing to System.out in between should
+ * flush it first to keep the order.
+ */
+public final class ChannelSink implements OutputSink {
+    private static final int CAPACITY = 8192;
+    private static ChannelSink standard;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(CAPACITY);
+    private final ByteBuffer bytes = ByteBuffer.allocate(CAPACITY);
+
+    public ChannelSink(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public static synchronized ChannelSink standard() {
+        if (standard == null) {
+            standard = new ChannelSink(new FileOutputStream(FileDescriptor.out).getChannel());
+            ChannelSink sink = standard;
+            Runtime.getRuntime().addShutdownHook(new Thread(sink::flush));
+        }
+        return standard;
+    }
+
+    // Writing
+    public ChannelSink append(char c) {
+        if (!chars.hasRemaining()) drain();
+        chars.put(c);
+        return this;
+    }
+
+    public ChannelSink append(CharSequence text) {
+        int length = text.length();
+        for (int start = 0; start < length; ) {
+            if (!chars.hasRemaining()) drain();
+            int end = Math.min(length, start + chars.remaining());
+            chars.append(text, start, end);
+            start = end;
+        }
+        return this;
+    }
+
+    public synchronized void println(Value value, int lineNumber) {
+        print(value, lineNumber);
+        append(LINE_SEPARATOR);
+    }
+
+    public synchronized void println() {
+        append(LINE_SEPARATOR);
+    }
+
+    public synchronized void flush() {
+        drain();
+    }
+
+    // Encoding
+    // Encodes and writes the buffered characters. A high surrogate at the end waits
+    // in the buffer for the low one that completes it.
+    private void drain() {
+        chars.flip();
+        try {
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, false);
+                bytes.flip();
+                while (bytes.hasRemaining()) channel.write(bytes);
+                bytes.clear();
+                if (result.isUnderflow()) break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            chars.compact();
+        }
+    }
+}
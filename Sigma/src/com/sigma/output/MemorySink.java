@@ -0,0 +1,40 @@
+package com.sigma.output;
+
+import com.sigma.runtime.Value;
+
+/*
+ * Keeps the output in memory, for embedding a script and checking what it logged.
+ */
+public final class MemorySink implements OutputSink {
+    private final StringBuilder builder = new StringBuilder();
+
+    public MemorySink append(char c) {
+        builder.append(c);
+        return this;
+    }
+
+    public MemorySink append(CharSequence text) {
+        builder.append(text);
+        return this;
+    }
+
+    public synchronized void println(Value value, int lineNumber) {
+        print(value, lineNumber);
+        builder.append(LINE_SEPARATOR);
+    }
+
+    public synchronized void println() {
+        builder.append(LINE_SEPARATOR);
+    }
+
+    public void flush() {
+    }
+
+    public synchronized void clear() {
+        builder.setLength(0);
+    }
+
+    public synchronized String toString() {
+        return builder.toString();
+    }
+}
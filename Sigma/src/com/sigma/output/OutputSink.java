@@ -0,0 +1,41 @@
+package com.sigma.output;
+
+import com.sigma.runtime.Value;
+
+/*
+ * Where log writes. Values print themselves into the sink a piece at a time, so a
+ * logged array or map is never built up as one String first.
+ *
+ * Engines running on several threads can share a sink: each println is written
+ * whole, though lines from different threads may come out in any order.
+ */
+public interface OutputSink {
+    String LINE_SEPARATOR = System.lineSeparator();
+
+    OutputSink append(char c);
+
+    OutputSink append(CharSequence text);
+
+    default OutputSink append(double number) {
+        return append(Double.toString(number));
+    }
+
+    // A statement with no value logs as null. lineNumber is the line of the expression
+    // logged, which log shows after the value's type.
+    default void print(Value value, int lineNumber) {
+        if (value == null) append("null");
+        else value.print(this, lineNumber);
+    }
+
+    default void println(Value value, int lineNumber) {
+        print(value, lineNumber);
+        append(LINE_SEPARATOR);
+    }
+
+    default void println() {
+        append(LINE_SEPARATOR);
+    }
+
+    // Hands on everything written so far
+    void flush();
+}
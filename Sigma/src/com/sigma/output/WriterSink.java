@@ -0,0 +1,58 @@
+package com.sigma.output;
+
+import com.sigma.runtime.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/*
+ * Writes to a Writer, such as the one a javax.script ScriptContext hands out. The
+ * Writer does its own buffering.
+ */
+public final class WriterSink implements OutputSink {
+    private final Writer writer;
+
+    public WriterSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    public WriterSink append(char c) {
+        try {
+            writer.append(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public WriterSink append(CharSequence text) {
+        try {
+            writer.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public void println(Value value, int lineNumber) {
+        synchronized (writer) {
+            print(value, lineNumber);
+            append(LINE_SEPARATOR);
+        }
+    }
+
+    public void println() {
+        synchronized (writer) {
+            append(LINE_SEPARATOR);
+        }
+    }
+
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
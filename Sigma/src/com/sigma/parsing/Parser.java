@@ -1,295 +1,381 @@
 package com.sigma.parsing;
 
 import com.sigma.Sigma;
+import com.sigma.ast.*;
 import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenBuffer;
+import com.sigma.lexicalAnalysis.TokenStream;
 import com.sigma.lexicalAnalysis.TokenType;
 
+import com.sigma.runtime.NumberValue;
+import com.sigma.runtime.Value;
+
 import java.util.ArrayList;
+import java.util.function.Supplier;
 
 import static com.sigma.lexicalAnalysis.TokenType.*;
 
 public class Parser {
     private static final boolean printDebugMessages = false;
-    private final ArrayList<Lexeme> lexemes;
-    private Lexeme currentLexeme;
-    private int nextLexemeIndex;
-
-    // Constructor
-    public Parser(ArrayList<Lexeme> lexemes) {
-        this.lexemes = lexemes;
-        this.nextLexemeIndex = 0;
-        advance();
+    private static final int BATCH = 1024;
+    private static final Value ONE = new NumberValue(1);
+
+    private final TokenBuffer tokens;
+    private final TokenStream source;
+    private int current = 0;
+
+    // How many functions and loops enclose the statement being parsed, counting loops
+    // only since the innermost function, so return, break and continue can be checked.
+    // A pareach body starts both over, since nothing in it can leave the pareach.
+    private int functions = 0;
+    private int loops = 0;
+    private boolean parallel = false; // in a pareach body, and not a function inside it
+
+    // Scripts written before return was a keyword declare var return‼, assign it and end
+    // with return‼. Once that declaration is seen, return is read as the variable's name
+    // for the rest of the function it's in, functions inside it included.
+    private boolean returnIsVariable = false;
+
+    // Constructors
+    // Streams tokens from source, keeping only the ones not yet read
+    public Parser(TokenStream source) {
+        this.tokens = new TokenBuffer(BATCH + 1);
+        this.source = source;
+        source.read(tokens, BATCH);
+    }
+
+    // Tokens that were all lexed up front, ending with EOF
+    public Parser(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.source = null;
     }
 
     // Support methods
     private boolean check(TokenType type) {
-        return currentLexeme.getType() == type;
+        return tokens.is(current, type);
     }
 
     private boolean checkNext(TokenType type) {
-        if (nextLexemeIndex >= lexemes.size()) return false;
-        return lexemes.get(nextLexemeIndex).getType() == type;
+        return current + 1 < tokens.size() && tokens.is(current + 1, type);
+    }
+
+    private int line() {
+        return tokens.line(current);
+    }
+
+    private Lexeme currentLexeme() {
+        return tokens.lexeme(current);
+    }
+
+    // Tokens that only shape the tree, like ‼ and }, are skipped without ever
+    // becoming Lexemes
+    private void skip(TokenType expected) {
+        if (check(expected)) {
+            log(expected.toString());
+            advance();
+        } else error("Expected " + expected + " but found " + currentLexeme() + ".");
     }
 
     private Lexeme consume(TokenType expected) {
         Lexeme returnLexeme = null;
         if (check(expected)) {
             log(expected.toString());
-            returnLexeme = currentLexeme;
+            returnLexeme = currentLexeme();
             advance();
-        } else error("Expected " + expected + " but found " + currentLexeme + ".");
+        } else error("Expected " + expected + " but found " + currentLexeme() + ".");
         return returnLexeme;
     }
 
     private Lexeme consume() {
-        log(currentLexeme.getType().toString());
-        Lexeme returnLexeme = currentLexeme;
+        log(tokens.type(current).toString());
+        Lexeme returnLexeme = currentLexeme();
         advance();
         return returnLexeme;
     }
 
+    // Keeps the current token and the one after it in the buffer
     private void advance() {
-        currentLexeme = lexemes.get(nextLexemeIndex);
-        nextLexemeIndex++;
+        if (check(EOF)) return;
+        current++;
+        if (source != null && current + 1 >= tokens.size() && !check(EOF)) {
+            tokens.discard(current);
+            current = 0;
+            source.read(tokens, BATCH);
+        }
+        if (returnIsVariable && check(RETURN_KEYWORD)) tokens.rename(current, "return");
     }
 
     // Consumption functions
-    public Lexeme program() {
+    public Program program() {
         log("program");
-        Lexeme program = new Lexeme(PROGRAM, currentLexeme.getLineNumber());
-        if (statementListPending()) program.addChild(statementList());
-        return program;
+        int line = line();
+        Block body = statementListPending() ? statementList() : new Block(line, new ArrayList<>());
+        // Lex whatever the grammar stopped short of, so its syntax errors are still reported
+        while (!check(EOF)) advance();
+        return new Program(line, body);
     }
 
-    private Lexeme statementList() {
+    private Block statementList() {
         log("statementList");
-        Lexeme statementList = new Lexeme(STATEMENT_LIST, currentLexeme.getLineNumber());
+        int line = line();
+        ArrayList<Node> statements = new ArrayList<>();
         while (statementPending()) {
-            statementList.addChild(statement());
+            statements.add(statement());
         }
-        return statementList;
+        return new Block(line, statements);
     }
 
-    private Lexeme statement() {
-        Lexeme statement = null;
+    private Node statement() {
+        Node statement = null;
         log("statement");
         if (variableDeclarationPending()) {
             statement = variableDeclaration();
-            consume(BANGBANG);
+            skip(BANGBANG);
         } else if (assignmentPending()) {
             statement = assignment();
-            consume(BANGBANG);
+            skip(BANGBANG);
         } else if (functionDefinitionPending()) statement = functionDefinition();
         else if (loopPending()) statement = loop();
         else if (ifStatementPending()) statement = ifStatement();
         else if (changeStatementPending()) statement = changeStatement();
         else if (commentPending()) statement = comment();
-        else if (expressionPending()) {
+        else if (returnStatementPending()) {
+            statement = returnStatement();
+            skip(BANGBANG);
+        } else if (breakStatementPending()) {
+            statement = breakStatement();
+            skip(BANGBANG);
+        } else if (continueStatementPending()) {
+            statement = continueStatement();
+            skip(BANGBANG);
+        } else if (expressionPending()) {
             statement = expression();
-            consume(BANGBANG);
+            skip(BANGBANG);
         } else error("Expected statement.");
         return statement;
     }
 
-    private Lexeme variableDeclaration() {
+    private VariableDeclaration variableDeclaration() {
         log("variableDeclaration");
-        consume(VAR_KEYWORD);
-        Lexeme declaration = new Lexeme(VARIABLE_DECLARATION, currentLexeme.getLineNumber());
-        declaration.addChild(consume(IDENTIFIER));
+        skip(VAR_KEYWORD);
+        int line = line();
+        if (check(RETURN_KEYWORD)) {
+            returnIsVariable = true;
+            tokens.rename(current, "return");
+        }
+        Lexeme name = consume(IDENTIFIER);
+        Node value = null;
         if (check(ASSIGN_OPERATOR)) {
-            consume(ASSIGN_OPERATOR);
-            declaration.addChild(expression());
+            skip(ASSIGN_OPERATOR);
+            value = expression();
         }
-        return declaration;
+        return new VariableDeclaration(line, name, value);
     }
 
-    private Lexeme assignment() {
+    // ++x and x +<- y become plain assignments of x + 1 and x + y
+    private Assignment assignment() {
         log("assignment");
-        Lexeme assignment = new Lexeme(ASSIGNMENT, currentLexeme.getLineNumber());
-        if (check(INCREMENT)) {
-            Lexeme op = consume(INCREMENT);
-            assignment.addChild(consume(IDENTIFIER));
-            assignment.addChild(op);
-        } else if (check(DECREMENT)) {
-            Lexeme op = consume(DECREMENT);
-            assignment.addChild(consume(IDENTIFIER));
-            assignment.addChild(op);
+        int line = line();
+        if (check(INCREMENT) || check(DECREMENT)) {
+            TokenType operator = check(INCREMENT) ? PLUS : MINUS;
+            advance();
+            Lexeme name = consume(IDENTIFIER);
+            return new Assignment(line, name, new BinaryOp(line, operator, new Variable(line, name), new Literal(line, ONE)));
         } else if (check(IDENTIFIER)) {
-            assignment.addChild(consume(IDENTIFIER));
-            assignment.addChild(regularAssignment());
-        } else error("Expected assignment operator.");
-        return assignment;
+            Lexeme name = consume(IDENTIFIER);
+            if (check(ASSIGN_OPERATOR)) {
+                skip(ASSIGN_OPERATOR);
+                return new Assignment(line, name, expression());
+            }
+            TokenType operator = operatorAssignment();
+            Node value = expression();
+            if (operator == null) return new Assignment(line, name, value);
+            return new Assignment(line, name, new BinaryOp(line, operator, new Variable(line, name), value));
+        }
+        error("Expected assignment operator.");
+        return null;
     }
 
-    private Lexeme functionDefinition() {
+    private FunctionDefinition functionDefinition() {
         log("functionDefinition");
-        Lexeme funcDef = new Lexeme(FUNCTION_DEFINITION, currentLexeme.getLineNumber());
-        consume(FUNC_KEYWORD);
-        funcDef.addChild(consume(IDENTIFIER));
-        consume(ASSIGN_OPERATOR);
-        funcDef.addChild(functionParams());
-        funcDef.addChild(block());
-        consume(BANGBANG);
-        return funcDef;
-    }
-
-    private Lexeme loop() {
+        int line = line();
+        skip(FUNC_KEYWORD);
+        Lexeme name = consume(IDENTIFIER);
+        skip(ASSIGN_OPERATOR);
+        ArrayList<Lexeme> parameters = functionParams();
+        int enclosingLoops = loops;
+        boolean enclosingParallel = parallel;
+        boolean enclosingReturnIsVariable = returnIsVariable;
+        functions++;
+        loops = 0;
+        parallel = false;
+        Block body = block();
+        functions--;
+        loops = enclosingLoops;
+        parallel = enclosingParallel;
+        returnIsVariable = enclosingReturnIsVariable;
+        skip(BANGBANG);
+        return new FunctionDefinition(line, name, parameters, body);
+    }
+
+    private Node loop() {
         log("loop");
-        if (forLoopPending()) return forLoop();
-        else if (foreachLoopPending()) return foreachLoop();
-        else if (whenLoopPending()) return whenLoop();
-        else if (loopLoopPending()) return loopLoop();
+        loops++;
+        Node loop = null;
+        if (forLoopPending()) loop = forLoop();
+        else if (foreachLoopPending()) loop = foreachLoop();
+        else if (whenLoopPending()) loop = whenLoop();
+        else if (loopLoopPending()) loop = loopLoop();
+        else if (parallelLoopPending()) loop = parallelLoop();
         else error("Expected loop.");
-        return null;
+        loops--;
+        return loop;
     }
 
-    private Lexeme ifStatement() {
-        log("ifStatement");
-        Lexeme ifStatement = new Lexeme(IF_STATEMENT, currentLexeme.getLineNumber());
-        consume(IF_KEYWORD);
-        consume(OPEN_CURLY);
-        ifStatement.addChild(expression());
-        consume(CLOSED_CURLY);
+    private ReturnStatement returnStatement() {
+        log("returnStatement");
+        int line = line();
+        if (functions == 0) error(parallel ? "Expected return to be outside a pareach." : "Expected return to be inside a function.");
+        skip(RETURN_KEYWORD);
+        return new ReturnStatement(line, expressionPending() ? expression() : null);
+    }
 
-        consume(DOUBLE_FORWARD);
-        if (statementPending()) {
-            ifStatement.addChild(statementList());
-        } else {
-            ifStatement.addChild(new Lexeme(STATEMENT_LIST, currentLexeme.getLineNumber()));
-        }
-        consume(DOUBLE_BACKWARD);
+    private BreakStatement breakStatement() {
+        log("breakStatement");
+        int line = line();
+        if (loops == 0) error(parallel ? "Expected break to be inside a loop in the pareach." : "Expected break to be inside a loop.");
+        skip(BREAK_KEYWORD);
+        return new BreakStatement(line);
+    }
+
+    private ContinueStatement continueStatement() {
+        log("continueStatement");
+        int line = line();
+        if (loops == 0) error(parallel ? "Expected continue to be inside a loop in the pareach." : "Expected continue to be inside a loop.");
+        skip(CONTINUE_KEYWORD);
+        return new ContinueStatement(line);
+    }
 
-        ifStatement.addChild(butifStatementList());
-        if (butStatementPending()) ifStatement.addChild(butStatement());
-        return ifStatement;
+    private IfStatement ifStatement() {
+        log("ifStatement");
+        int line = line();
+        ArrayList<Node> conditions = new ArrayList<>();
+        ArrayList<Block> blocks = new ArrayList<>();
+        skip(IF_KEYWORD);
+        conditions.add(condition());
+        blocks.add(block());
+        while (butifStatementPending()) {
+            log("butifStatement");
+            skip(BUTIF_KEYWORD);
+            conditions.add(condition());
+            blocks.add(block());
+        }
+        Block otherwise = null;
+        if (butStatementPending()) {
+            log("butStatement");
+            skip(BUT_KEYWORD);
+            otherwise = block();
+        }
+        return new IfStatement(line, conditions, blocks, otherwise);
     }
 
-    private Lexeme comment() {
+    private Comment comment() {
         log("comment");
-        return consume(COMMENT);
+        int line = line();
+        return new Comment(line, consume(COMMENT).getStringVal());
     }
 
-    private Lexeme expression() {
+    private Node expression() {
         log("expression");
-        Lexeme expression = new Lexeme(EXPRESSION, currentLexeme.getLineNumber());
-        expression.addChild(orExpr());
-        return expression;
+        return orExpr();
     }
 
-    private Lexeme orExpr() {
+    // Binary operators are right associative: the right operand is the rest of the
+    // expression at the same level
+    private Node orExpr() {
         log("orExpr");
-        Lexeme xorExpr = xorExpr();
-        if (check(OR_KEYWORD) || check(NOR_KEYWORD)) {
-            Lexeme orOperator = consume();
-            orOperator.addChild(xorExpr);
-            orOperator.addChild(orExpr());
-            return orOperator;
-        }
+        Node xorExpr = xorExpr();
+        if (check(OR_KEYWORD) || check(NOR_KEYWORD)) return binaryOp(xorExpr, this::orExpr);
         return xorExpr;
     }
 
-    private Lexeme xorExpr() {
+    private Node xorExpr() {
         log("xorExpr");
-        Lexeme andExpr = andExpr();
-        if (check(XOR_KEYWORD) || check(XNOR_KEYWORD)) {
-            Lexeme xorOperator = consume();
-            xorOperator.addChild(andExpr);
-            xorOperator.addChild(xorExpr());
-            return xorOperator;
-        }
+        Node andExpr = andExpr();
+        if (check(XOR_KEYWORD) || check(XNOR_KEYWORD)) return binaryOp(andExpr, this::xorExpr);
         return andExpr;
     }
 
-    private Lexeme andExpr() {
+    private Node andExpr() {
         log("andExpr");
-        Lexeme weakEqualityExpr = weakEqualityExpr();
-        if (check(AND_KEYWORD) || check(NAND_KEYWORD)) {
-            Lexeme andOperator = consume();
-            andOperator.addChild(weakEqualityExpr);
-            andOperator.addChild(andExpr());
-            return andOperator;
-        }
+        Node weakEqualityExpr = weakEqualityExpr();
+        if (check(AND_KEYWORD) || check(NAND_KEYWORD)) return binaryOp(weakEqualityExpr, this::andExpr);
         return weakEqualityExpr;
     }
 
-    private Lexeme weakEqualityExpr() {
+    private Node weakEqualityExpr() {
         log("weakEqualityExpr");
-        Lexeme equalityExpr = equalityExpr();
+        Node equalityExpr = equalityExpr();
         if (check(DOUBLE_QUESTION) || check(NOT_DOUBLE_QUESTION) || check(APPROX) || check(NOT_APPROX)) {
-            Lexeme weakEqualityOperator = consume();
-            weakEqualityOperator.addChild(equalityExpr);
-            weakEqualityOperator.addChild(weakEqualityExpr());
-            return weakEqualityOperator;
+            return binaryOp(equalityExpr, this::weakEqualityExpr);
         }
         return equalityExpr;
     }
 
-    private Lexeme equalityExpr() {
+    private Node equalityExpr() {
         log("equalityExpr");
-        Lexeme comparisonExpr = comparisonExpr();
-        if (check(QUESTION) || check(NOT_QUESTION)) {
-            Lexeme equalityOperator = consume();
-            equalityOperator.addChild(comparisonExpr);
-            equalityOperator.addChild(equalityExpr());
-            return equalityOperator;
-        }
+        Node comparisonExpr = comparisonExpr();
+        if (check(QUESTION) || check(NOT_QUESTION)) return binaryOp(comparisonExpr, this::equalityExpr);
         return comparisonExpr;
     }
 
-    private Lexeme comparisonExpr() {
+    private Node comparisonExpr() {
         log("comparisonExpr");
-        Lexeme sumExpr = sumExpr();
+        Node sumExpr = sumExpr();
         if (check(LESS) || check(GREATER) || check(LESS_QUESTION) || check(GREATER_QUESTION) || check(GEQ) || check(LEQ)) {
-            Lexeme comparisonOperator = consume();
-            comparisonOperator.addChild(sumExpr);
-            comparisonOperator.addChild(comparisonExpr());
-            return comparisonOperator;
+            return binaryOp(sumExpr, this::comparisonExpr);
         }
         return sumExpr;
     }
 
-    private Lexeme sumExpr() {
+    private Node sumExpr() {
         log("sumExpr");
-        Lexeme productExpr = productExpr();
-        if (check(PLUS) || check(MINUS)) {
-            Lexeme sumOperator = consume();
-            sumOperator.addChild(productExpr);
-            sumOperator.addChild(sumExpr());
-            return sumOperator;
-        }
+        Node productExpr = productExpr();
+        if (check(PLUS) || check(MINUS)) return binaryOp(productExpr, this::sumExpr);
         return productExpr;
     }
 
-    private Lexeme productExpr() {
+    private Node productExpr() {
         log("productExpr");
-        Lexeme exponentExpr = exponentExpr();
-        if (check(TIMES) || check(DOUBLE_DIVIDE) || check(DIVIDE) || check(PERCENT)) {
-            Lexeme productOperator = consume();
-            productOperator.addChild(exponentExpr);
-            productOperator.addChild(productExpr());
-            return productOperator;
-        }
+        Node exponentExpr = exponentExpr();
+        if (check(TIMES) || check(DOUBLE_DIVIDE) || check(DIVIDE) || check(PERCENT)) return binaryOp(exponentExpr, this::productExpr);
         return exponentExpr;
     }
 
-    private Lexeme exponentExpr() {
+    private Node exponentExpr() {
         log("exponentExpr");
-        Lexeme unaryExpr = unaryExpr();
-        if (check(CARET)) {
-            Lexeme exponentOperator = consume(CARET);
-            exponentOperator.addChild(unaryExpr);
-            exponentOperator.addChild(exponentExpr());
-            return exponentOperator;
-        }
+        Node unaryExpr = unaryExpr();
+        if (check(CARET)) return binaryOp(unaryExpr, this::exponentExpr);
         return unaryExpr;
     }
 
-    private Lexeme unaryExpr() {
+    // Consumes the current operator, then parses its right operand with right
+    private Node binaryOp(Node left, Supplier<Node> right) {
+        log(tokens.type(current).toString());
+        int line = line();
+        TokenType operator = tokens.type(current);
+        advance();
+        return new BinaryOp(line, operator, left, right.get());
+    }
+
+    private Node unaryExpr() {
         log("unaryExpr");
         if (check(EXCLAMATION) || check(NOT_KEYWORD) || check(MINUS) || check(INCREMENT) || check(DECREMENT)) {
-            Lexeme unaryOperator = consume();
-            unaryOperator.addChild(unaryExpr());
-            return unaryOperator;
+            log(tokens.type(current).toString());
+            int line = line();
+            TokenType operator = tokens.type(current);
+            advance();
+            return new UnaryOp(line, operator, unaryExpr());
         } else if (primaryPending()) {
             return primary();
         } else {
@@ -298,249 +384,242 @@ public class Parser {
         }
     }
 
-    private Lexeme primary() {
+    private Node primary() {
         log("primary");
         if (functionCallPending()) return functionCall();
-        else if (check(NUMBER)) return consume(NUMBER);
-        else if (check(IDENTIFIER)) return consume(IDENTIFIER);
-        else if (check(STRING)) return consume(STRING);
-        else if (check(BOOLEAN)) return consume(BOOLEAN);
-        else if (check(NOTHING)) return consume(NOTHING);
-        else if (arrayPending()) return array();
+        else if (check(NUMBER) || check(STRING) || check(BOOLEAN) || check(NOTHING)) return literal();
+        else if (check(IDENTIFIER)) {
+            int line = line();
+            return new Variable(line, consume(IDENTIFIER));
+        } else if (arrayPending()) return array();
+        else if (mapPending()) return map();
         else if (parenthesizedExpressionPending()) return parenthesizedExpression();
         else error("Expected primary.");
         return null;
     }
 
-    private Lexeme parenthesizedExpression() {
+    private Literal literal() {
+        int line = line();
+        return new Literal(line, Value.of(consume()));
+    }
+
+    private Node parenthesizedExpression() {
         log("parenthesizedExpression");
-        Lexeme parenthesizedExpression;
-        consume(OPEN_CURLY);
+        Node parenthesizedExpression;
+        skip(OPEN_CURLY);
         parenthesizedExpression = expression();
-        consume(CLOSED_CURLY);
+        skip(CLOSED_CURLY);
         return parenthesizedExpression;
     }
 
-    private Lexeme regularAssignment() {
-        log("regularAssignment");
-        Lexeme regularAssignment = new Lexeme(REGULAR_ASSIGNMENT, currentLexeme.getLineNumber());
-        if (check(ASSIGN_OPERATOR)) regularAssignment.addChild(consume(ASSIGN_OPERATOR));
-        else if (operatorAssignmentPending()) regularAssignment.addChild(operatorAssignment());
-        else error("Expected assignment operator.");
-        regularAssignment.addChild(expression());
-        return regularAssignment;
-    }
-
-    private Lexeme functionParams() {
+    private ArrayList<Lexeme> functionParams() {
         log("functionParams");
-        Lexeme functionParams = new Lexeme(FUNCTION_PARAMS, currentLexeme.getLineNumber());
+        ArrayList<Lexeme> functionParams = new ArrayList<>();
         while (check(IDENTIFIER)) {
-            functionParams.addChild(consume(IDENTIFIER));
-            if (!check(DOUBLE_FORWARD)) consume(COMMA);
+            functionParams.add(consume(IDENTIFIER));
+            if (!check(DOUBLE_FORWARD)) skip(COMMA);
         }
         return functionParams;
     }
 
-    private Lexeme block() {
+    // An empty block is an empty Block, never null
+    private Block block() {
         log("block");
-        Lexeme block = null;
-        consume(DOUBLE_FORWARD);
+        int line = line();
+        Block block = null;
+        skip(DOUBLE_FORWARD);
         if (statementPending()) {
             block = statementList();
         }
-        consume(DOUBLE_BACKWARD);
-        return block;
+        skip(DOUBLE_BACKWARD);
+        return block != null ? block : new Block(line, new ArrayList<>());
     }
 
-    private Lexeme forLoop() {
-        log("forLoop");
-        Lexeme forLoop = new Lexeme(FOR_LOOP, currentLexeme.getLineNumber());
-        consume(FOR_KEYWORD);
-        consume(OPEN_CURLY);
-        forLoop.addChild(variableDeclaration());
-        consume(BANGBANG);
-        forLoop.addChild(expression());
-        consume(BANGBANG);
-        forLoop.addChild(assignment());
-        consume(CLOSED_CURLY);
-        forLoop.addChild(block());
-        return forLoop;
-    }
-
-    private Lexeme foreachLoop() {
-        log("foreachLoop");
-        Lexeme foreachLoop = new Lexeme(FOREACH_LOOP, currentLexeme.getLineNumber());
-        consume(FOREACH_KEYWORD);
-        consume(OPEN_CURLY);
-        consume(VAR_KEYWORD);
-        foreachLoop.addChild(consume(IDENTIFIER));
-        consume(OF_KEYWORD);
-        if (check(IDENTIFIER)) foreachLoop.addChild(consume(IDENTIFIER));
-        if (arrayPending()) foreachLoop.addChild(array());
-        consume(CLOSED_CURLY);
-        foreachLoop.addChild(block());
-        return foreachLoop;
-    }
-
-    private Lexeme whenLoop() {
-        log("whenLoop");
-        Lexeme whenLoop = new Lexeme(WHEN_LOOP, currentLexeme.getLineNumber());
-        consume(WHEN_KEYWORD);
-        consume(OPEN_CURLY);
-        whenLoop.addChild(expression());
-        consume(CLOSED_CURLY);
-        whenLoop.addChild(block());
-        return whenLoop;
+    private Node condition() {
+        skip(OPEN_CURLY);
+        Node condition = expression();
+        skip(CLOSED_CURLY);
+        return condition;
     }
 
-    private Lexeme loopLoop() {
-        log("loopLoop");
-        Lexeme loopLoop = new Lexeme(LOOP_LOOP, currentLexeme.getLineNumber());
-        consume(LOOP_KEYWORD);
-        consume(OPEN_CURLY);
-        loopLoop.addChild(expression());
-        consume(CLOSED_CURLY);
-        loopLoop.addChild(block());
-        return loopLoop;
-    }
-
-    private Lexeme butifStatementList() {
-        log("butifStatementList");
-        Lexeme butifStatementList = new Lexeme(BUTIF_STATEMENT_LIST, currentLexeme.getLineNumber());
-        while (butifStatementPending()) {
-            butifStatementList.addChild(butifStatement());
+    private ForLoop forLoop() {
+        log("forLoop");
+        int line = line();
+        skip(FOR_KEYWORD);
+        skip(OPEN_CURLY);
+        VariableDeclaration initializer = variableDeclaration();
+        skip(BANGBANG);
+        Node condition = expression();
+        skip(BANGBANG);
+        Node update = assignment();
+        skip(CLOSED_CURLY);
+        return new ForLoop(line, initializer, condition, update, block());
+    }
+
+    private ForeachLoop foreachLoop() {
+        log("foreachLoop");
+        int line = line();
+        skip(FOREACH_KEYWORD);
+        skip(OPEN_CURLY);
+        skip(VAR_KEYWORD);
+        Lexeme variable = consume(IDENTIFIER);
+        skip(OF_KEYWORD);
+        Node array = iterated();
+        skip(CLOSED_CURLY);
+        return new ForeachLoop(line, variable, array, block());
+    }
+
+    // The reduction is total <- combine after the array
+    private ParallelLoop parallelLoop() {
+        log("parallelLoop");
+        int line = line();
+        skip(PAREACH_KEYWORD);
+        skip(OPEN_CURLY);
+        skip(VAR_KEYWORD);
+        Lexeme variable = consume(IDENTIFIER);
+        skip(OF_KEYWORD);
+        Node array = iterated();
+        Lexeme target = null;
+        Lexeme combiner = null;
+        if (check(BANGBANG)) {
+            skip(BANGBANG);
+            target = consume(IDENTIFIER);
+            skip(ASSIGN_OPERATOR);
+            combiner = consume(IDENTIFIER);
         }
-        return butifStatementList;
-    }
-
-    private Lexeme butifStatement() {
-        log("butifStatement");
-        Lexeme butIfStatement = new Lexeme(BUTIF_STATEMENT, currentLexeme.getLineNumber());
-        consume(BUTIF_KEYWORD);
-        consume(OPEN_CURLY);
-        butIfStatement.addChild(expression());
-        consume(CLOSED_CURLY);
-
-        consume(DOUBLE_FORWARD);
-        if (statementPending()) {
-            butIfStatement.addChild(statementList());
-        } else {
-            butIfStatement.addChild(new Lexeme(STATEMENT_LIST, currentLexeme.getLineNumber()));
+        skip(CLOSED_CURLY);
+        int enclosingFunctions = functions;
+        int enclosingLoops = loops;
+        boolean enclosingParallel = parallel;
+        functions = 0;
+        loops = 0;
+        parallel = true;
+        Block body = block();
+        functions = enclosingFunctions;
+        loops = enclosingLoops;
+        parallel = enclosingParallel;
+        return new ParallelLoop(line, variable, array, target, combiner, body);
+    }
+
+    // What a foreach or pareach goes through: a variable, or an array or map literal
+    private Node iterated() {
+        Node array = null;
+        if (check(IDENTIFIER)) {
+            int arrayLine = line();
+            array = new Variable(arrayLine, consume(IDENTIFIER));
         }
-        consume(DOUBLE_BACKWARD);
-
-        return butIfStatement;
+        if (arrayPending()) array = array();
+        if (mapPending()) array = map();
+        return array;
     }
 
-    private Lexeme butStatement() {
-        log("butStatement");
-        Lexeme butStatement = new Lexeme(BUT_STATEMENT, currentLexeme.getLineNumber());
-        consume(BUT_KEYWORD);
-
-        consume(DOUBLE_FORWARD);
-        if (statementPending()) {
-            butStatement.addChild(statementList());
-        } else {
-            butStatement.addChild(new Lexeme(STATEMENT_LIST, currentLexeme.getLineNumber()));
-        }
-        consume(DOUBLE_BACKWARD);
+    private WhenLoop whenLoop() {
+        log("whenLoop");
+        int line = line();
+        skip(WHEN_KEYWORD);
+        Node condition = condition();
+        return new WhenLoop(line, condition, block());
+    }
 
-        return butStatement;
+    private LoopLoop loopLoop() {
+        log("loopLoop");
+        int line = line();
+        skip(LOOP_KEYWORD);
+        Node bound = condition();
+        return new LoopLoop(line, bound, block());
     }
 
-    private Lexeme changeStatement() {
+    private ChangeStatement changeStatement() {
         log("changeStatement");
-        Lexeme changeStatement = new Lexeme(CHANGE_STATEMENT, currentLexeme.getLineNumber());
-        consume(CHANGE_KEYWORD);
-        consume(OPEN_CURLY);
-        changeStatement.addChild(expression());
-        consume(CLOSED_CURLY);
-        consume(DOUBLE_FORWARD);
-        changeStatement.addChild(changeCases());
-        consume(DOUBLE_BACKWARD);
-        return changeStatement;
-    }
-
-    private Lexeme changeCases() {
-        log("cases");
-        Lexeme changeCases = new Lexeme(CHANGE_CASES, currentLexeme.getLineNumber());
-        changeCases.addChild(changeCase());
-        while (changeCasePending()) {
-            changeCases.addChild(changeCase());
-        }
+        int line = line();
+        skip(CHANGE_KEYWORD);
+        Node value = condition();
+        skip(DOUBLE_FORWARD);
+        ArrayList<Node> cases = new ArrayList<>();
+        ArrayList<Block> blocks = new ArrayList<>();
+        do {
+            log("case");
+            skip(CASE_KEYWORD);
+            cases.add(condition());
+            blocks.add(block());
+        } while (changeCasePending());
+        Block otherwise = null;
         if (noCasePending()) {
-            changeCases.addChild(noCase());
-        } else {
-            changeCases.addChild(new Lexeme(CHANGE_CASE, currentLexeme.getLineNumber()));
+            log("nocase");
+            skip(NOCASE_KEYWORD);
+            otherwise = block();
         }
-        return changeCases;
-    }
-
-    private Lexeme changeCase() {
-        log("case");
-        Lexeme changeCase = new Lexeme(CHANGE_CASE, currentLexeme.getLineNumber());
-        consume(CASE_KEYWORD);
-        consume(OPEN_CURLY);
-        changeCase.addChild(expression());
-        consume(CLOSED_CURLY);
-        changeCase.addChild(block());
-        return changeCase;
-    }
-
-    private Lexeme noCase() {
-        log("nocase");
-        Lexeme noCase = new Lexeme(CHANGE_CASE, currentLexeme.getLineNumber());
-        consume(NOCASE_KEYWORD);
-        noCase.addChild(block());
-        return noCase;
+        skip(DOUBLE_BACKWARD);
+        return new ChangeStatement(line, value, cases, blocks, otherwise);
     }
 
-    private Lexeme operatorAssignment() {
+    // The operator an operator assignment applies, like PLUS for +<-
+    private TokenType operatorAssignment() {
         log("operatorAssignment");
-        if (check(PLUS_ASSIGNMENT)) return consume(PLUS_ASSIGNMENT);
-        else if (check(MINUS_ASSIGNMENT)) return consume(MINUS_ASSIGNMENT);
-        else if (check(TIMES_ASSIGNMENT)) return consume(TIMES_ASSIGNMENT);
-        else if (check(TIMES_ASSIGNMENT)) return consume(TIMES_ASSIGNMENT);
-        else if (check(DIVIDE_ASSIGNMENT)) return consume(DIVIDE_ASSIGNMENT);
-        else if (check(DOUBLE_DIVIDE_ASSIGNMENT)) return consume(DOUBLE_DIVIDE_ASSIGNMENT);
-        else if (check(CARET_ASSIGNMENT)) return consume(CARET_ASSIGNMENT);
-        else if (check(PERCENT_ASSIGNMENT)) return consume(PERCENT_ASSIGNMENT);
-        else error("Expected assignment operator.");
-        return null;
-    }
-
-    private Lexeme array() {
+        TokenType operator = null;
+        if (check(PLUS_ASSIGNMENT)) operator = PLUS;
+        else if (check(MINUS_ASSIGNMENT)) operator = MINUS;
+        else if (check(TIMES_ASSIGNMENT)) operator = TIMES;
+        else if (check(DIVIDE_ASSIGNMENT)) operator = DIVIDE;
+        else if (check(DOUBLE_DIVIDE_ASSIGNMENT)) operator = DOUBLE_DIVIDE;
+        else if (check(CARET_ASSIGNMENT)) operator = CARET;
+        else if (check(PERCENT_ASSIGNMENT)) operator = PERCENT;
+        if (operator == null) error("Expected assignment operator.");
+        else skip(tokens.type(current));
+        return operator;
+    }
+
+    private ArrayLiteral array() {
         log("array");
-        consume(OPEN_PAREN);
-        ArrayList<Lexeme> arrayList = new ArrayList<>();
+        skip(OPEN_PAREN);
+        ArrayList<Node> elements = new ArrayList<>();
         while (expressionPending()) {
-            arrayList.add(expression());
-            if (!check(CLOSED_PAREN)) consume(COMMA);
+            elements.add(expression());
+            if (!check(CLOSED_PAREN)) skip(COMMA);
         }
-        consume(CLOSED_PAREN);
-        return new Lexeme(ARRAY, currentLexeme.getLineNumber(), arrayList);
+        skip(CLOSED_PAREN);
+        return new ArrayLiteral(line(), elements);
+    }
+
+    // Every element is either key <- value, making a map, or a lone key, making a set
+    private MapLiteral map() {
+        log("map");
+        int line = line();
+        skip(OPEN_SQUARE);
+        ArrayList<Node> keys = new ArrayList<>();
+        ArrayList<Node> values = new ArrayList<>();
+        boolean set = false;
+        while (expressionPending()) {
+            keys.add(expression());
+            boolean entry = check(ASSIGN_OPERATOR);
+            if (keys.size() == 1) set = !entry;
+            else if (set == entry) error("Expected " + (set ? "a set element" : "a map entry") + ".");
+            Node value = null;
+            if (entry) {
+                skip(ASSIGN_OPERATOR);
+                value = expression();
+            }
+            if (!set) values.add(value);
+            if (!check(CLOSED_SQUARE)) skip(COMMA);
+        }
+        skip(CLOSED_SQUARE);
+        return new MapLiteral(line, keys, set ? null : values);
     }
 
-    private Lexeme functionCall() {
+    private Call functionCall() {
         log("functionCall");
-        Lexeme functionCall = new Lexeme(FUNCTION_CALL, currentLexeme.getLineNumber());
-        functionCall.addChild(consume(IDENTIFIER));
-        consume(OPEN_CURLY);
-        functionCall.addChild(callArguments());
-        consume(CLOSED_CURLY);
-        return functionCall;
-    }
-
-    private Lexeme callArguments() {
-        log("callArguments");
-        Lexeme callArguments = new Lexeme(CALL_ARGUMENTS, currentLexeme.getLineNumber());
+        int line = line();
+        Lexeme name = consume(IDENTIFIER);
+        skip(OPEN_CURLY);
+        ArrayList<Node> arguments = new ArrayList<>();
         while (expressionPending()) {
-            callArguments.addChild(expression());
+            arguments.add(expression());
             if (!check(CLOSED_CURLY)) {
-                consume(COMMA);
+                skip(COMMA);
             }
         }
-        return callArguments;
+        skip(CLOSED_CURLY);
+        return new Call(line, name, arguments);
     }
 
     // Pending functions
@@ -556,11 +635,14 @@ public class Parser {
                 || ifStatementPending()
                 || changeStatementPending()
                 || commentPending()
+                || returnStatementPending()
+                || breakStatementPending()
+                || continueStatementPending()
                 || expressionPending();
     }
 
     private boolean variableDeclarationPending() {
-        return check(VAR_KEYWORD) && checkNext(IDENTIFIER);
+        return check(VAR_KEYWORD) && (checkNext(IDENTIFIER) || checkNext(RETURN_KEYWORD));
     }
 
     private boolean assignmentPending() {
@@ -572,7 +654,7 @@ public class Parser {
     }
 
     private boolean loopPending() {
-        return forLoopPending() || foreachLoopPending() || whenLoopPending() || loopLoopPending();
+        return forLoopPending() || foreachLoopPending() || whenLoopPending() || loopLoopPending() || parallelLoopPending();
     }
 
     private boolean ifStatementPending() {
@@ -603,6 +685,18 @@ public class Parser {
         return check(COMMENT);
     }
 
+    private boolean returnStatementPending() {
+        return check(RETURN_KEYWORD);
+    }
+
+    private boolean breakStatementPending() {
+        return check(BREAK_KEYWORD);
+    }
+
+    private boolean continueStatementPending() {
+        return check(CONTINUE_KEYWORD);
+    }
+
     private boolean expressionPending() {
         return orExprPending();
     }
@@ -648,7 +742,7 @@ public class Parser {
     }
 
     private boolean primaryPending() {
-        return check(NUMBER) || check(IDENTIFIER) || check(STRING) || check(BOOLEAN) || check(NOTHING) || arrayPending() || functionCallPending() || parenthesizedExpressionPending();
+        return check(NUMBER) || check(IDENTIFIER) || check(STRING) || check(BOOLEAN) || check(NOTHING) || arrayPending() || mapPending() || functionCallPending() || parenthesizedExpressionPending();
     }
 
     private boolean parenthesizedExpressionPending() {
@@ -675,14 +769,8 @@ public class Parser {
         return check(LOOP_KEYWORD);
     }
 
-    private boolean operatorAssignmentPending() {
-        return check(PLUS_ASSIGNMENT)
-                || check(MINUS_ASSIGNMENT)
-                || check(DIVIDE_ASSIGNMENT)
-                || check(TIMES_ASSIGNMENT)
-                || check(DOUBLE_DIVIDE_ASSIGNMENT)
-                || check(CARET_ASSIGNMENT)
-                || check(PERCENT_ASSIGNMENT);
+    private boolean parallelLoopPending() {
+        return check(PAREACH_KEYWORD);
     }
 
     private boolean operatorAssignmentPendingNext() {
@@ -699,6 +787,10 @@ public class Parser {
         return check(OPEN_PAREN);
     }
 
+    private boolean mapPending() {
+        return check(OPEN_SQUARE);
+    }
+
     private boolean functionCallPending() {
         return check(IDENTIFIER) && checkNext(OPEN_CURLY);
     }
@@ -710,6 +802,6 @@ public class Parser {
 
     // Error reporting
     private void error(String message) {
-        Sigma.syntaxError(message, currentLexeme);
+        Sigma.syntaxError(message, currentLexeme());
     }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.sigma.profiling;
+
+import com.sigma.ast.FunctionDefinition;
+import com.sigma.ast.Node;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Sampling profiler for --profile. The evaluator keeps a shadow stack of Sigma calls,
+ * each with the line it was called from. A background thread only raises a flag at
+ * every interval, and the evaluator takes the sample itself at the start of its next
+ * statement, so the stack is never read while it changes. That statement gives the
+ * line of the innermost frame; every other frame is on the line of the call above it.
+ *
+ * A call is the hot path, so the shadow stack is two int arrays, each function's id and
+ * the line of its call: pushing a frame stores no references, and so never pays for the
+ * collector's write barriers. Everything else is looked up when a sample is taken.
+ *
+ * Call counts are exact. Self and total times are estimated from the samples: a
+ * function's self time is the share of samples with it on top of the stack, its total
+ * time the share with it anywhere on the stack. Lines are counted the same way.
+ */
+public class Profiler {
+    private static final long INTERVAL = 10_000_000; // ns, 100 samples a second
+
+    private static final class FunctionStats {
+        private final FunctionDefinition definition;
+        private final String name;
+        private final int id;
+        private long calls = 0;
+        private long selfSamples = 0;
+        private long totalSamples = 0;
+        private long lastSample = -1;
+
+        private FunctionStats(FunctionDefinition definition, String name, int id) {
+            this.definition = definition;
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private static final class LineStats {
+        private final int line;
+        private long selfSamples = 0;
+        private long totalSamples = 0;
+        private long lastSample = -1;
+
+        private LineStats(int line) {
+            this.line = line;
+        }
+    }
+
+    private final IdentityHashMap<FunctionDefinition, FunctionStats> functions = new IdentityHashMap<>();
+    private final ArrayList<FunctionStats> byId = new ArrayList<>();
+    private final FunctionStats program = stats(null, "<program>");
+    private final HashMap<Integer, LineStats> lines = new HashMap<>();
+    private final HashMap<String, long[]> stacks = new HashMap<>();
+
+    // Shadow stack: the id of each frame's function and the line it was called from
+    private int[] frames = new int[64];
+    private int[] calls = new int[64];
+    private int depth = 0;
+    private FunctionStats lastEntered;
+
+    private volatile boolean sampleRequested = false;
+    private volatile boolean running = false;
+    private Thread sampler;
+    private long samples = 0;
+    private long startTime;
+    private long elapsed;
+
+    // Sampling
+    public void start() {
+        push(program, 0);
+        running = true;
+        startTime = System.nanoTime();
+        sampler = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(INTERVAL);
+                sampleRequested = true;
+            }
+        }, "sigma-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    public void stop() {
+        elapsed = System.nanoTime() - startTime;
+        running = false;
+        LockSupport.unpark(sampler);
+    }
+
+    // Called by the evaluator
+    boolean isSampleRequested() {
+        return sampleRequested;
+    }
+
+    // Most calls are to the same function as the call before, in recursion and loops
+    void enter(FunctionDefinition definition, Node call) {
+        FunctionStats function = lastEntered;
+        if (function == null || function.definition != definition) {
+            function = functions.computeIfAbsent(definition, key -> stats(key, key.getName().getStringVal()));
+            lastEntered = function;
+        }
+        push(function, call.getLineNumber());
+    }
+
+    private FunctionStats stats(FunctionDefinition definition, String name) {
+        FunctionStats function = new FunctionStats(definition, name, byId.size());
+        byId.add(function);
+        return function;
+    }
+
+    private void push(FunctionStats function, int line) {
+        function.calls++;
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+            calls = Arrays.copyOf(calls, depth * 2);
+        }
+        frames[depth] = function.id;
+        calls[depth] = line;
+        depth++;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    void sample(Node statement) {
+        sampleRequested = false;
+        StringBuilder stack = new StringBuilder();
+        LineStats line = null;
+        for (int i = 0; i < depth; i++) {
+            FunctionStats function = byId.get(frames[i]);
+            if (function.lastSample != samples) {
+                function.totalSamples++;
+                function.lastSample = samples;
+            }
+            int lineNumber = i == depth - 1 ? statement.getLineNumber() : calls[i + 1];
+            line = lines.computeIfAbsent(lineNumber, LineStats::new);
+            if (line.lastSample != samples) {
+                line.totalSamples++;
+                line.lastSample = samples;
+            }
+            if (i > 0) stack.append(';');
+            stack.append(function.name).append(':').append(lineNumber);
+        }
+        byId.get(frames[depth - 1]).selfSamples++;
+        line.selfSamples++;
+        stacks.computeIfAbsent(stack.toString(), key -> new long[1])[0]++;
+        samples++;
+    }
+
+    // Output
+    // One line per distinct stack, frames as function:line from the outside in,
+    // followed by its sample count: the input flamegraph.pl and speedscope expect
+    public void writeCollapsed(Path path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, long[]> stack : new TreeMap<>(stacks).entrySet()) {
+                out.println(stack.getKey() + " " + stack.getValue()[0]);
+            }
+        }
+    }
+
+    public void report(PrintStream out) {
+        out.printf("Profile: %d samples over %.1f ms%n", samples, elapsed / 1e6);
+        out.println();
+        out.printf("%-24s %10s %12s %12s%n", "Function", "Calls", "Self ms", "Total ms");
+        ArrayList<FunctionStats> byFunction = new ArrayList<>(functions.values());
+        byFunction.add(program);
+        byFunction.sort(Comparator.comparingLong((FunctionStats function) -> function.selfSamples).reversed()
+                .thenComparing(function -> function.name));
+        for (FunctionStats function : byFunction) {
+            out.printf("%-24s %10d %12.1f %12.1f%n", function.name, function.calls,
+                    millis(function.selfSamples), millis(function.totalSamples));
+        }
+        out.println();
+        out.printf("%-24s %10s %12s %12s%n", "Line", "", "Self ms", "Total ms");
+        ArrayList<LineStats> byLine = new ArrayList<>(lines.values());
+        byLine.sort(Comparator.comparingLong((LineStats line) -> line.selfSamples).reversed()
+                .thenComparingInt(line -> line.line));
+        for (LineStats line : byLine.subList(0, Math.min(20, byLine.size()))) {
+            out.printf("%-24d %10s %12.1f %12.1f%n", line.line, "", millis(line.selfSamples), millis(line.totalSamples));
+        }
+    }
+
+    private double millis(long count) {
+        return samples == 0 ? 0 : elapsed / 1e6 * count / samples;
+    }
+}
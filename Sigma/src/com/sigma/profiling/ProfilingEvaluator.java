@@ -0,0 +1,32 @@
+package com.sigma.profiling;
+
+import com.sigma.ast.Call;
+import com.sigma.ast.Node;
+import com.sigma.evaluation.Evaluator;
+import com.sigma.output.OutputSink;
+import com.sigma.runtime.ClosureValue;
+
+/*
+ * The tree-walking evaluator, reporting every statement and user function call to a
+ * Profiler. Only loaded with --profile.
+ */
+public class ProfilingEvaluator extends Evaluator {
+    private final Profiler profiler;
+
+    public ProfilingEvaluator(OutputSink out, Profiler profiler) {
+        super(out);
+        this.profiler = profiler;
+    }
+
+    protected void enterStatement(Node statement) {
+        if (profiler.isSampleRequested()) profiler.sample(statement);
+    }
+
+    protected void enterFunction(ClosureValue closure, Call call) {
+        profiler.enter(closure.getDefinition(), call);
+    }
+
+    protected void exitFunction() {
+        profiler.exit();
+    }
+}
@@ -0,0 +1,477 @@
+package com.sigma.resolution;
+
+import com.sigma.Sigma;
+import com.sigma.ast.*;
+import com.sigma.evaluation.Builtin;
+import com.sigma.evaluation.BuiltinRegistry;
+import com.sigma.lexicalAnalysis.Lexeme;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+
+/*
+ * Static pass run between the parser and the evaluator. Every scope the evaluator
+ * creates at runtime gets a matching scope here, so each identifier can be annotated
+ * with a (depth, slot) lexical address and looked up without scanning by name.
+ *
+ * Along the way it notes which loops have their count referred to, and which for loops
+ * have their variable read or changed, so the evaluator knows what it has to keep.
+ *
+ * A pareach body runs on many threads at once, so it may only read the variables
+ * declared outside it; changing one, or the array or map in one with a built-in like
+ * set or put, is a reference error here, before anything runs.
+ */
+public class Resolver implements Visitor<Void, Void> {
+    private static final boolean printDebugMessages = false;
+    private final ArrayList<HashMap<String, Integer>> scopes = new ArrayList<>();
+    private final HashMap<Integer, Node> loops = new HashMap<>(); // by the index of the scope holding count
+    private int parallel = 0; // index of the innermost pareach body's scope, or 0 outside one
+
+    public void resolve(Program program) {
+        log("resolve");
+        beginScope();
+        declareStatements(program.getBody());
+        visitBlock(program.getBody(), null);
+        endScope();
+    }
+
+    // Scopes
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    // Declarations are collected before a scope's statements are resolved, so that
+    // a function body can refer to names its enclosing scope declares later on
+    private void declare(Lexeme name) {
+        HashMap<String, Integer> scope = scopes.get(scopes.size() - 1);
+        Integer slot = scope.get(name.getStringVal());
+        if (slot == null) {
+            slot = scope.size();
+            scope.put(name.getStringVal(), slot);
+        }
+        name.resolve(0, slot);
+        for (int i = scopes.size() - 2; i >= 0; i--) {
+            Integer shadowedSlot = scopes.get(i).get(name.getStringVal());
+            if (shadowedSlot != null) {
+                noteUse(i, name, false);
+                Lexeme address = new Lexeme(IDENTIFIER, name.getLineNumber(), name.getStringVal());
+                address.resolve(scopes.size() - 1 - i, shadowedSlot);
+                name.addShadowed(address);
+            }
+        }
+    }
+
+    private void declareStatements(Block block) {
+        for (int i = 0; i < block.size(); i++) {
+            Node statement = block.get(i);
+            if (statement instanceof VariableDeclaration) declare(((VariableDeclaration) statement).getName());
+            else if (statement instanceof FunctionDefinition) declare(((FunctionDefinition) statement).getName());
+        }
+    }
+
+    private void resolveReference(Lexeme name, boolean write) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(name.getStringVal());
+            if (slot != null) {
+                if (write && i < parallel) {
+                    Sigma.referenceError("Variable " + name.getStringVal() + " can't be changed inside a pareach", name);
+                }
+                name.resolve(scopes.size() - 1 - i, slot);
+                noteUse(i, name, write);
+                return;
+            }
+        }
+    }
+
+    // Loops
+    private void beginLoop(Node loop) {
+        beginScope();
+        loops.put(scopes.size() - 1, loop);
+    }
+
+    private void endLoop() {
+        loops.remove(scopes.size() - 1);
+        endScope();
+    }
+
+    private void noteUse(int scope, Lexeme name, boolean write) {
+        Node loop = loops.get(scope);
+        if (loop == null) return;
+        String id = name.getStringVal();
+        if (loop instanceof ForLoop) {
+            ForLoop forLoop = (ForLoop) loop;
+            if (id.equals(forLoop.getCounter().getStringVal())) forLoop.setCounterUsed(true);
+            else if (!id.equals(forLoop.getInitializer().getName().getStringVal())) return;
+            else if (write) forLoop.setVariableWritten(true);
+            else forLoop.setVariableRead(true);
+        } else if (loop instanceof ForeachLoop) {
+            if (id.equals(((ForeachLoop) loop).getCounter().getStringVal())) ((ForeachLoop) loop).setCounterUsed(true);
+        } else if (loop instanceof WhenLoop) {
+            if (id.equals(((WhenLoop) loop).getCounter().getStringVal())) ((WhenLoop) loop).setCounterUsed(true);
+        } else if (loop instanceof LoopLoop) {
+            if (id.equals(((LoopLoop) loop).getCounter().getStringVal())) ((LoopLoop) loop).setCounterUsed(true);
+        } else if (loop instanceof ParallelLoop) {
+            if (id.equals(((ParallelLoop) loop).getCounter().getStringVal())) ((ParallelLoop) loop).setCounterUsed(true);
+        }
+    }
+
+    // A loop body gets a scope only if it declares something, as it only gets an
+    // environment of its own then
+    private void resolveLoopBody(Block body) {
+        if (body.hasDeclarations()) resolveBlock(body);
+        else visitBlock(body, null);
+    }
+
+    // Resolution
+    private void resolve(Node tree) {
+        if (tree != null) tree.accept(this, null);
+    }
+
+    // A block in a scope of its own
+    private void resolveBlock(Block block) {
+        beginScope();
+        declareStatements(block);
+        visitBlock(block, null);
+        endScope();
+    }
+
+    // Statements in the current scope
+    public Void visitBlock(Block block, Void context) {
+        log("resolveStatementList");
+        for (int i = 0; i < block.size(); i++) resolve(block.get(i));
+        return null;
+    }
+
+    public Void visitProgram(Program program, Void context) {
+        resolve(program);
+        return null;
+    }
+
+    public Void visitComment(Comment comment, Void context) {
+        return null;
+    }
+
+    public Void visitVariableDeclaration(VariableDeclaration declaration, Void context) {
+        resolve(declaration.getValue());
+        return null;
+    }
+
+    // Parameters and the body's declarations share one scope, which becomes the
+    // call's frame
+    public Void visitFunctionDefinition(FunctionDefinition definition, Void context) {
+        log("resolveFunctionDefinition");
+        beginScope();
+        boolean directParameters = true;
+        for (int i = 0; i < definition.getParameterCount(); i++) {
+            Lexeme parameter = definition.getParameter(i);
+            declare(parameter);
+            if (parameter.getSlot() != i || parameter.getShadowed() != null) directParameters = false;
+        }
+        declareStatements(definition.getBody());
+        visitBlock(definition.getBody(), null);
+        definition.setFrame(scopes.get(scopes.size() - 1).size(), directParameters);
+        endScope();
+        markTailCalls(definition);
+        return null;
+    }
+
+    public Void visitAssignment(Assignment assignment, Void context) {
+        resolveReference(assignment.getName(), true);
+        resolve(assignment.getValue());
+        return null;
+    }
+
+    public Void visitIfStatement(IfStatement ifStatement, Void context) {
+        log("resolveIfStatement");
+        for (int i = 0; i < ifStatement.getBranchCount(); i++) {
+            resolve(ifStatement.getCondition(i));
+            resolveBlock(ifStatement.getBlock(i));
+        }
+        if (ifStatement.getOtherwise() != null) resolveBlock(ifStatement.getOtherwise());
+        return null;
+    }
+
+    public Void visitChangeStatement(ChangeStatement changeStatement, Void context) {
+        log("resolveChangeStatement");
+        resolve(changeStatement.getValue());
+        for (int i = 0; i < changeStatement.getCaseCount(); i++) {
+            resolve(changeStatement.getCase(i));
+            resolveBlock(changeStatement.getBlock(i));
+        }
+        if (changeStatement.getOtherwise() != null) resolveBlock(changeStatement.getOtherwise());
+        return null;
+    }
+
+    // The i in the condition and update of a counted loop is resolved before the loop
+    // is, so that only other uses of it count as reading or changing it
+    public Void visitForLoop(ForLoop loop, Void context) {
+        log("resolveForLoop");
+        beginScope();
+        declare(loop.getInitializer().getName());
+        declare(loop.getCounter());
+        resolve(loop.getInitializer().getValue());
+        if (loop.getLimit() != null) {
+            resolve(((BinaryOp) loop.getCondition()).getLeft());
+            resolve(loop.getUpdate());
+        }
+        loops.put(scopes.size() - 1, loop);
+        if (loop.getLimit() != null) {
+            resolve(loop.getLimit());
+        } else {
+            resolve(loop.getCondition());
+            resolve(loop.getUpdate());
+        }
+        resolveLoopBody(loop.getBody());
+        endLoop();
+        return null;
+    }
+
+    public Void visitForeachLoop(ForeachLoop loop, Void context) {
+        log("resolveForeachLoop");
+        resolve(loop.getArray());
+        beginLoop(loop);
+        declare(loop.getCounter());
+        beginScope();
+        declare(loop.getVariable());
+        declareStatements(loop.getBody());
+        visitBlock(loop.getBody(), null);
+        endScope();
+        endLoop();
+        return null;
+    }
+
+    public Void visitWhenLoop(WhenLoop loop, Void context) {
+        log("resolveWhenLoop");
+        resolve(loop.getCondition());
+        beginLoop(loop);
+        declare(loop.getCounter());
+        resolveLoopBody(loop.getBody());
+        endLoop();
+        return null;
+    }
+
+    public Void visitLoopLoop(LoopLoop loop, Void context) {
+        log("resolveLoopLoop");
+        resolve(loop.getBound());
+        beginLoop(loop);
+        declare(loop.getCounter());
+        resolveLoopBody(loop.getBody());
+        endLoop();
+        return null;
+    }
+
+    // The element's environment holds count, the variable and the body's declarations.
+    // The target is written by the thread running the loop once the body is done, so it
+    // is resolved outside the body; the combination gets a scope of its own.
+    public Void visitParallelLoop(ParallelLoop loop, Void context) {
+        log("resolveParallelLoop");
+        resolve(loop.getArray());
+        if (loop.getTarget() != null) resolveReference(loop.getTarget(), true);
+        beginLoop(loop);
+        declare(loop.getCounter());
+        declare(loop.getVariable());
+        declareStatements(loop.getBody());
+        int enclosingParallel = parallel;
+        parallel = scopes.size() - 1;
+        visitBlock(loop.getBody(), null);
+        parallel = enclosingParallel;
+        endLoop();
+        if (loop.getCombination() != null) {
+            beginScope();
+            declare(loop.getLeft());
+            declare(loop.getRight());
+            visitBlock(loop.getCombination(), null);
+            endScope();
+        }
+        return null;
+    }
+
+    public Void visitReturnStatement(ReturnStatement returnStatement, Void context) {
+        resolve(returnStatement.getValue());
+        return null;
+    }
+
+    public Void visitBreakStatement(BreakStatement breakStatement, Void context) {
+        return null;
+    }
+
+    public Void visitContinueStatement(ContinueStatement continueStatement, Void context) {
+        return null;
+    }
+
+    // Built-ins are bound by name, wherever the call is
+    public Void visitCall(Call call, Void context) {
+        Builtin builtin = BuiltinRegistry.lookup(call.getName().getStringVal());
+        if (builtin == null) {
+            resolveReference(call.getName(), false);
+        } else if (call.getArgumentCount() != builtin.getArity()) {
+            Sigma.runtimeError("Invalid number of function arguments", call);
+        } else {
+            call.bind(builtin);
+            if (builtin.changesArgument() && call.getArgument(0) instanceof Variable) {
+                Lexeme changed = ((Variable) call.getArgument(0)).getName();
+                if (scopeOf(changed) < parallel) {
+                    Sigma.referenceError("Variable " + changed.getStringVal() + " can't be changed inside a pareach", changed);
+                }
+            }
+        }
+        for (int i = 0; i < call.getArgumentCount(); i++) resolve(call.getArgument(i));
+        return null;
+    }
+
+    // Index of the innermost scope declaring name, or the global scope's if none does
+    private int scopeOf(Lexeme name) {
+        for (int i = scopes.size() - 1; i > 0; i--) {
+            if (scopes.get(i).containsKey(name.getStringVal())) return i;
+        }
+        return 0;
+    }
+
+    public Void visitBinaryOp(BinaryOp operation, Void context) {
+        resolve(operation.getLeft());
+        resolve(operation.getRight());
+        return null;
+    }
+
+    public Void visitUnaryOp(UnaryOp operation, Void context) {
+        if ((operation.getOperator() == INCREMENT || operation.getOperator() == DECREMENT)
+                && operation.getOperand() instanceof Variable) {
+            resolveReference(((Variable) operation.getOperand()).getName(), true);
+        } else {
+            resolve(operation.getOperand());
+        }
+        return null;
+    }
+
+    public Void visitLiteral(Literal literal, Void context) {
+        return null;
+    }
+
+    public Void visitVariable(Variable variable, Void context) {
+        resolveReference(variable.getName(), false);
+        return null;
+    }
+
+    public Void visitArrayLiteral(ArrayLiteral array, Void context) {
+        for (int i = 0; i < array.size(); i++) resolve(array.get(i));
+        return null;
+    }
+
+    public Void visitMapLiteral(MapLiteral map, Void context) {
+        for (int i = 0; i < map.size(); i++) {
+            resolve(map.getKey(i));
+            if (!map.isSet()) resolve(map.getValue(i));
+        }
+        return null;
+    }
+
+    // Tail calls
+    // A call is in tail position when its value becomes the function's result with
+    // nothing left to run in the caller: the last statement of the body, the last
+    // statement of any branch of an if statement in that position, or the value of a
+    // return anywhere in the body. The older ending
+    //     result <- f { ... }‼
+    // result‼
+    // also counts when result is local to the body, as long as the body defines no
+    // function that could capture it and see the skipped assignment.
+    private void markTailCalls(FunctionDefinition definition) {
+        Block body = definition.getBody();
+        markReturns(body);
+        if (body.size() == 0) return;
+        int last = body.size() - 1;
+        markTailPosition(body.get(last));
+        if (last > 0 && body.get(last) instanceof Variable && !definesFunction(body)) {
+            Lexeme result = ((Variable) body.get(last)).getName();
+            if (result.getDepth() == 0) markTailAssignment(body.get(last - 1), result.getSlot(), 0);
+        }
+    }
+
+    private void markTailPosition(Node statement) {
+        if (statement instanceof Call) {
+            ((Call) statement).setTailCall(true);
+        } else if (statement instanceof IfStatement) {
+            for (Block branch : branches((IfStatement) statement)) markTailPosition(branch.last());
+        }
+    }
+
+    // Nested functions are left alone; their returns are marked with their own body
+    private static void markReturns(Block block) {
+        if (block == null) return;
+        for (int i = 0; i < block.size(); i++) {
+            Node statement = block.get(i);
+            if (statement instanceof ReturnStatement) {
+                Node value = ((ReturnStatement) statement).getValue();
+                if (value instanceof Call) ((Call) value).setTailCall(true);
+            } else {
+                for (Block nested : blocks(statement)) markReturns(nested);
+            }
+        }
+    }
+
+    // Only a plain x <- f { ... }: x +<- f { ... } still has an addition left to do
+    private void markTailAssignment(Node statement, int slot, int depth) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            Lexeme id = assignment.getName();
+            if (id.getDepth() != depth || id.getSlot() != slot) return;
+            if (assignment.getValue() instanceof Call) ((Call) assignment.getValue()).setTailCall(true);
+        } else if (statement instanceof IfStatement) {
+            for (Block branch : branches((IfStatement) statement)) markTailAssignment(branch.last(), slot, depth + 1);
+        }
+    }
+
+    private static ArrayList<Block> branches(IfStatement ifStatement) {
+        ArrayList<Block> branches = new ArrayList<>();
+        for (int i = 0; i < ifStatement.getBranchCount(); i++) branches.add(ifStatement.getBlock(i));
+        if (ifStatement.getOtherwise() != null) branches.add(ifStatement.getOtherwise());
+        return branches;
+    }
+
+    // The blocks a statement runs in the same function: the branches of an if or
+    // change statement and the bodies of loops
+    private static ArrayList<Block> blocks(Node statement) {
+        ArrayList<Block> blocks = new ArrayList<>();
+        if (statement instanceof IfStatement) {
+            blocks.addAll(branches((IfStatement) statement));
+        } else if (statement instanceof ChangeStatement) {
+            ChangeStatement changeStatement = (ChangeStatement) statement;
+            for (int i = 0; i < changeStatement.getCaseCount(); i++) blocks.add(changeStatement.getBlock(i));
+            if (changeStatement.getOtherwise() != null) blocks.add(changeStatement.getOtherwise());
+        } else if (statement instanceof ForLoop) {
+            blocks.add(((ForLoop) statement).getBody());
+        } else if (statement instanceof ForeachLoop) {
+            blocks.add(((ForeachLoop) statement).getBody());
+        } else if (statement instanceof WhenLoop) {
+            blocks.add(((WhenLoop) statement).getBody());
+        } else if (statement instanceof LoopLoop) {
+            blocks.add(((LoopLoop) statement).getBody());
+        } else if (statement instanceof ParallelLoop) {
+            blocks.add(((ParallelLoop) statement).getBody());
+        }
+        return blocks;
+    }
+
+    // Functions can only be defined as statements, so only blocks need to be searched
+    private static boolean definesFunction(Block block) {
+        if (block == null) return false;
+        for (int i = 0; i < block.size(); i++) {
+            Node statement = block.get(i);
+            if (statement instanceof FunctionDefinition) return true;
+            for (Block nested : blocks(statement)) {
+                if (definesFunction(nested)) return true;
+            }
+        }
+        return false;
+    }
+
+    // Debugging
+    private static void log(String message) {
+        if (printDebugMessages) System.out.println(message);
+    }
+}
@@ -0,0 +1,546 @@
+package com.sigma.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * The persistent tree behind ArrayValue: a B-tree whose leaves hold up to WIDTH
+ * elements and whose branches hold up to WIDTH children along with the running total
+ * of their sizes. Finding an index, inserting, removing and joining two trees only
+ * visit one or two paths, and only the nodes on those paths are copied, so arrays can
+ * share everything else. Numbers and booleans are stored unboxed a leaf at a time; a
+ * leaf becomes generic when a value of another type is put in it.
+ *
+ * Every node remembers the edit token of the array that made it. An operation given
+ * that same token changes the node in place instead of copying it, so an array that
+ * hasn't shared its nodes edits them like an ordinary list. Sharing gives the array
+ * a new token (see ArrayValue), after which none of its old nodes ever change again.
+ *
+ * insert can leave a node one entry over WIDTH; whoever holds the node splits it.
+ *
+ * A tree of numbers only can be mapped a leaf at a time: mapNumbers runs a kernel over
+ * each leaf's double[] and builds a tree of the same shape around the results.
+ */
+abstract class ArrayNode {
+    static final int WIDTH = 32;
+    static final ArrayNode EMPTY = new NumberLeaf(null, new double[0], 0);
+
+    final Object edit;
+
+    ArrayNode(Object edit) {
+        this.edit = edit;
+    }
+
+    abstract int size();
+
+    abstract int height();
+
+    // Elements of a leaf, children of a branch
+    abstract int width();
+
+    abstract Value get(int index);
+
+    abstract Leaf leafAt(int index);
+
+    abstract ArrayNode set(Object edit, int index, Value value);
+
+    abstract ArrayNode insert(Object edit, int index, Value value);
+
+    abstract ArrayNode remove(Object edit, int index);
+
+    // Halves of a node that an insert at position left over WIDTH. An insert at
+    // either end splits off just the new entry, so appending or prepending leaves
+    // full nodes behind it.
+    final ArrayNode[] split(Object edit, int position) {
+        int at = position == size() - 1 ? width() - 1 : position == 0 ? 1 : width() / 2;
+        return splitAt(edit, at);
+    }
+
+    abstract ArrayNode[] splitAt(Object edit, int at);
+
+    // Numbers
+    // Whether every element is a number
+    abstract boolean isNumeric();
+
+    // Only for a numeric tree
+    abstract ArrayNode mapNumbers(Object edit, ArrayValue.NumberKernel kernel);
+
+    final boolean isOverfull() {
+        return width() > WIDTH;
+    }
+
+    final boolean isEditable(Object edit) {
+        return edit != null && this.edit == edit;
+    }
+
+    // Room for a node copied under edit; only an owner will fill the spare slots
+    static int grow(Object edit, int count, int capacity) {
+        if (edit == null) return capacity;
+        return Math.max(capacity, Math.min(WIDTH + 1, Math.max(4, count * 2)));
+    }
+
+    // Joining
+    static ArrayNode concat(Object edit, ArrayNode left, ArrayNode right) {
+        if (left.size() == 0) return right;
+        if (right.size() == 0) return left;
+        ArrayNode[] joined = join(edit, left, right);
+        return joined.length == 1 ? joined[0] : Branch.of(edit, joined);
+    }
+
+    // One or two nodes as tall as the taller of left and right, holding both. The
+    // shorter tree goes down the facing edge of the taller one to the level where
+    // the heights match.
+    private static ArrayNode[] join(Object edit, ArrayNode left, ArrayNode right) {
+        if (left.height() > right.height()) {
+            Branch branch = (Branch) left;
+            return branch.replace(edit, branch.width - 1, join(edit, branch.children[branch.width - 1], right));
+        }
+        if (left.height() < right.height()) {
+            Branch branch = (Branch) right;
+            return branch.replace(edit, 0, join(edit, left, branch.children[0]));
+        }
+        if (left.width() + right.width() > WIDTH) return new ArrayNode[]{left, right};
+        if (left instanceof Leaf) return new ArrayNode[]{Leaf.merge(edit, (Leaf) left, (Leaf) right)};
+        Branch l = (Branch) left;
+        Branch r = (Branch) right;
+        ArrayNode[] children = Arrays.copyOf(l.children, l.width + r.width);
+        System.arraycopy(r.children, 0, children, l.width, r.width);
+        return new ArrayNode[]{Branch.of(edit, children)};
+    }
+
+    // Building
+    // Fills leaves to WIDTH and stacks them into branches, for arrays made all at once
+    static final class Builder {
+        private final Object edit;
+        private final ArrayList<ArrayNode> leaves = new ArrayList<>();
+        private Leaf leaf;
+
+        Builder(Object edit) {
+            this.edit = edit;
+        }
+
+        void add(Value value) {
+            if (leaf == null || leaf.count == WIDTH) {
+                if (leaf != null) leaves.add(leaf);
+                leaf = Leaf.of(edit, value, WIDTH);
+            }
+            leaf = (Leaf) leaf.insert(edit, leaf.count, value);
+        }
+
+        ArrayNode build() {
+            if (leaf != null) leaves.add(leaf);
+            if (leaves.isEmpty()) return EMPTY;
+            ArrayList<ArrayNode> level = leaves;
+            while (level.size() > 1) {
+                ArrayList<ArrayNode> parents = new ArrayList<>((level.size() + WIDTH - 1) / WIDTH);
+                for (int i = 0; i < level.size(); i += WIDTH) {
+                    parents.add(Branch.of(edit, level.subList(i, Math.min(i + WIDTH, level.size())).toArray(new ArrayNode[0])));
+                }
+                level = parents;
+            }
+            return level.get(0);
+        }
+    }
+
+    // Leaves
+    abstract static class Leaf extends ArrayNode {
+        int count;
+
+        Leaf(Object edit, int count) {
+            super(edit);
+            this.count = count;
+        }
+
+        // An empty leaf for the kind of value
+        static Leaf of(Object edit, Value value, int capacity) {
+            if (value instanceof NumberValue) return new NumberLeaf(edit, new double[capacity], 0);
+            if (value instanceof BooleanValue) return new BooleanLeaf(edit, 0, 0);
+            return new ValueLeaf(edit, new Value[capacity], 0);
+        }
+
+        static Leaf merge(Object edit, Leaf left, Leaf right) {
+            if (left instanceof NumberLeaf && right instanceof NumberLeaf) {
+                double[] values = Arrays.copyOf(((NumberLeaf) left).values, left.count + right.count);
+                System.arraycopy(((NumberLeaf) right).values, 0, values, left.count, right.count);
+                return new NumberLeaf(edit, values, values.length);
+            }
+            if (left instanceof BooleanLeaf && right instanceof BooleanLeaf) {
+                return new BooleanLeaf(edit, ((BooleanLeaf) left).bits | ((BooleanLeaf) right).bits << left.count, left.count + right.count);
+            }
+            Value[] values = new Value[left.count + right.count];
+            for (int i = 0; i < left.count; i++) values[i] = left.get(i);
+            for (int i = 0; i < right.count; i++) values[left.count + i] = right.get(i);
+            return new ValueLeaf(edit, values, values.length);
+        }
+
+        int size() {
+            return count;
+        }
+
+        int height() {
+            return 0;
+        }
+
+        int width() {
+            return count;
+        }
+
+        Leaf leafAt(int index) {
+            return this;
+        }
+
+        abstract boolean fits(Value value);
+
+        // A leaf of boxed values can still hold only numbers, like one whose other
+        // elements were removed; its numbers are unboxed for the kernel
+        boolean isNumeric() {
+            for (int i = 0; i < count; i++) {
+                if (!(get(i) instanceof NumberValue)) return false;
+            }
+            return true;
+        }
+
+        ArrayNode mapNumbers(Object edit, ArrayValue.NumberKernel kernel) {
+            double[] values = new double[count];
+            for (int i = 0; i < count; i++) values[i] = get(i).getNumVal();
+            double[] results = new double[count];
+            kernel.apply(values, results, count);
+            return new NumberLeaf(edit, results, count);
+        }
+
+        // The same elements in a generic leaf
+        ValueLeaf generalize(Object edit, int capacity) {
+            Value[] values = new Value[grow(edit, count, capacity)];
+            for (int i = 0; i < count; i++) values[i] = get(i);
+            return new ValueLeaf(edit, values, count);
+        }
+
+        ArrayNode set(Object edit, int index, Value value) {
+            if (!fits(value)) return generalize(edit, count).set(edit, index, value);
+            Leaf leaf = editable(edit, count);
+            leaf.store(index, value);
+            return leaf;
+        }
+
+        ArrayNode insert(Object edit, int index, Value value) {
+            if (!fits(value)) {
+                if (count == 0) return of(edit, value, 4).insert(edit, index, value);
+                return generalize(edit, count + 1).insert(edit, index, value);
+            }
+            Leaf leaf = editable(edit, count + 1);
+            leaf.open(index);
+            leaf.store(index, value);
+            return leaf;
+        }
+
+        ArrayNode remove(Object edit, int index) {
+            Leaf leaf = editable(edit, count);
+            leaf.close(index);
+            return leaf;
+        }
+
+        ArrayNode[] splitAt(Object edit, int at) {
+            return new ArrayNode[]{slice(edit, 0, at), slice(edit, at, count)};
+        }
+
+        // This leaf if it may be changed under edit and has room for capacity
+        // elements, otherwise a copy that can
+        abstract Leaf editable(Object edit, int capacity);
+
+        abstract Leaf slice(Object edit, int from, int to);
+
+        abstract void store(int index, Value value);
+
+        // Moves the elements from index on up by one, adding one to count
+        abstract void open(int index);
+
+        // Moves the elements after index down by one, taking one from count
+        abstract void close(int index);
+    }
+
+    static final class NumberLeaf extends Leaf {
+        double[] values;
+
+        NumberLeaf(Object edit, double[] values, int count) {
+            super(edit, count);
+            this.values = values;
+        }
+
+        boolean fits(Value value) {
+            return value instanceof NumberValue;
+        }
+
+        Value get(int index) {
+            return new NumberValue(values[index]);
+        }
+
+        double getNumber(int index) {
+            return values[index];
+        }
+
+        boolean isNumeric() {
+            return true;
+        }
+
+        ArrayNode mapNumbers(Object edit, ArrayValue.NumberKernel kernel) {
+            double[] results = new double[count];
+            kernel.apply(values, results, count);
+            return new NumberLeaf(edit, results, count);
+        }
+
+        Leaf editable(Object edit, int capacity) {
+            if (isEditable(edit) && values.length >= capacity) return this;
+            return new NumberLeaf(edit, Arrays.copyOf(values, grow(edit, count, capacity)), count);
+        }
+
+        Leaf slice(Object edit, int from, int to) {
+            return new NumberLeaf(edit, Arrays.copyOfRange(values, from, to), to - from);
+        }
+
+        void store(int index, Value value) {
+            values[index] = value.getNumVal();
+        }
+
+        void open(int index) {
+            System.arraycopy(values, index, values, index + 1, count - index);
+            count++;
+        }
+
+        void close(int index) {
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            count--;
+        }
+    }
+
+    // At most WIDTH + 1 booleans, so they fit in the bits of a long
+    static final class BooleanLeaf extends Leaf {
+        long bits;
+
+        BooleanLeaf(Object edit, long bits, int count) {
+            super(edit, count);
+            this.bits = bits;
+        }
+
+        boolean fits(Value value) {
+            return value instanceof BooleanValue;
+        }
+
+        Value get(int index) {
+            return BooleanValue.of((bits & 1L << index) != 0);
+        }
+
+        Leaf editable(Object edit, int capacity) {
+            if (isEditable(edit)) return this;
+            return new BooleanLeaf(edit, bits, count);
+        }
+
+        Leaf slice(Object edit, int from, int to) {
+            return new BooleanLeaf(edit, bits >>> from & (1L << to - from) - 1, to - from);
+        }
+
+        void store(int index, Value value) {
+            if (value.getBoolVal()) bits |= 1L << index;
+            else bits &= ~(1L << index);
+        }
+
+        void open(int index) {
+            long below = bits & (1L << index) - 1;
+            bits = below | (bits & ~((1L << index) - 1)) << 1;
+            count++;
+        }
+
+        void close(int index) {
+            long below = bits & (1L << index) - 1;
+            bits = below | bits >>> 1 & ~((1L << index) - 1);
+            count--;
+        }
+    }
+
+    static final class ValueLeaf extends Leaf {
+        Value[] values;
+
+        ValueLeaf(Object edit, Value[] values, int count) {
+            super(edit, count);
+            this.values = values;
+        }
+
+        boolean fits(Value value) {
+            return true;
+        }
+
+        Value get(int index) {
+            return values[index];
+        }
+
+        Leaf editable(Object edit, int capacity) {
+            if (isEditable(edit) && values.length >= capacity) return this;
+            return new ValueLeaf(edit, Arrays.copyOf(values, grow(edit, count, capacity)), count);
+        }
+
+        Leaf slice(Object edit, int from, int to) {
+            return new ValueLeaf(edit, Arrays.copyOfRange(values, from, to), to - from);
+        }
+
+        void store(int index, Value value) {
+            values[index] = value;
+        }
+
+        void open(int index) {
+            System.arraycopy(values, index, values, index + 1, count - index);
+            count++;
+        }
+
+        void close(int index) {
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            values[--count] = null;
+        }
+    }
+
+    // Branches
+    static final class Branch extends ArrayNode {
+        ArrayNode[] children;
+        int[] ends; // ends[i] is the size of children 0 to i together
+        int width;
+        private final int height;
+
+        private Branch(Object edit, ArrayNode[] children, int[] ends, int width, int height) {
+            super(edit);
+            this.children = children;
+            this.ends = ends;
+            this.width = width;
+            this.height = height;
+        }
+
+        static Branch of(Object edit, ArrayNode... children) {
+            Branch branch = new Branch(edit, children, new int[children.length], children.length, children[0].height() + 1);
+            branch.recount(0);
+            return branch;
+        }
+
+        int size() {
+            return ends[width - 1];
+        }
+
+        int height() {
+            return height;
+        }
+
+        int width() {
+            return width;
+        }
+
+        private int start(int child) {
+            return child == 0 ? 0 : ends[child - 1];
+        }
+
+        // The child holding index. Children are mostly the same size, so the guess
+        // from the average size is usually right or a step away.
+        private int childAt(int index) {
+            int child = (int) ((long) index * width / ends[width - 1]);
+            while (ends[child] <= index) child++;
+            while (child > 0 && ends[child - 1] > index) child--;
+            return child;
+        }
+
+        // The child to insert at index, preferring the end of a child to the start
+        // of the next one so that appending fills the last leaf
+        private int childBefore(int index) {
+            return index == 0 ? 0 : childAt(index - 1);
+        }
+
+        private void recount(int from) {
+            for (int i = from; i < width; i++) ends[i] = start(i) + children[i].size();
+        }
+
+        Value get(int index) {
+            int child = childAt(index);
+            return children[child].get(index - start(child));
+        }
+
+        Leaf leafAt(int index) {
+            int child = childAt(index);
+            return children[child].leafAt(index - start(child));
+        }
+
+        private Branch editable(Object edit, int capacity) {
+            if (isEditable(edit) && children.length >= capacity) return this;
+            int length = grow(edit, width, capacity);
+            return new Branch(edit, Arrays.copyOf(children, length), Arrays.copyOf(ends, length), width, height);
+        }
+
+        ArrayNode set(Object edit, int index, Value value) {
+            int child = childAt(index);
+            ArrayNode updated = children[child].set(edit, index - start(child), value);
+            Branch branch = editable(edit, width);
+            branch.children[child] = updated;
+            return branch;
+        }
+
+        ArrayNode insert(Object edit, int index, Value value) {
+            int child = childBefore(index);
+            int position = index - start(child);
+            ArrayNode updated = children[child].insert(edit, position, value);
+            Branch branch = editable(edit, width + 1);
+            if (updated.isOverfull()) {
+                ArrayNode[] halves = updated.split(edit, position);
+                System.arraycopy(branch.children, child + 1, branch.children, child + 2, branch.width - child - 1);
+                branch.children[child] = halves[0];
+                branch.children[child + 1] = halves[1];
+                branch.width++;
+                branch.recount(child);
+            } else {
+                branch.children[child] = updated;
+                for (int i = child; i < branch.width; i++) branch.ends[i]++;
+            }
+            return branch;
+        }
+
+        // Children left empty are dropped, except the last; the ArrayValue collapses
+        // a root left with a single child
+        ArrayNode remove(Object edit, int index) {
+            int child = childAt(index);
+            ArrayNode updated = children[child].remove(edit, index - start(child));
+            Branch branch = editable(edit, width);
+            if (updated.size() == 0 && width > 1) {
+                System.arraycopy(branch.children, child + 1, branch.children, child, branch.width - child - 1);
+                branch.children[--branch.width] = null;
+                branch.recount(child);
+            } else {
+                branch.children[child] = updated;
+                for (int i = child; i < branch.width; i++) branch.ends[i]--;
+            }
+            return branch;
+        }
+
+        boolean isNumeric() {
+            for (int i = 0; i < width; i++) {
+                if (!children[i].isNumeric()) return false;
+            }
+            return true;
+        }
+
+        // The sizes don't change, so the ends are copied as they are
+        ArrayNode mapNumbers(Object edit, ArrayValue.NumberKernel kernel) {
+            ArrayNode[] mapped = new ArrayNode[width];
+            for (int i = 0; i < width; i++) mapped[i] = children[i].mapNumbers(edit, kernel);
+            return new Branch(edit, mapped, Arrays.copyOf(ends, width), width, height);
+        }
+
+        ArrayNode[] splitAt(Object edit, int at) {
+            return new ArrayNode[]{
+                    of(edit, Arrays.copyOfRange(children, 0, at)),
+                    of(edit, Arrays.copyOfRange(children, at, width))
+            };
+        }
+
+        // One or two branches with the child at index replaced by nodes
+        ArrayNode[] replace(Object edit, int index, ArrayNode[] nodes) {
+            ArrayNode[] replaced = new ArrayNode[width - 1 + nodes.length];
+            System.arraycopy(children, 0, replaced, 0, index);
+            System.arraycopy(nodes, 0, replaced, index, nodes.length);
+            System.arraycopy(children, index + 1, replaced, index + nodes.length, width - index - 1);
+            Branch branch = of(edit, replaced);
+            return branch.isOverfull() ? branch.splitAt(edit, branch.width / 2) : new ArrayNode[]{branch};
+        }
+    }
+}
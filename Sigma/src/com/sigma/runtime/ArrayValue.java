@@ -0,0 +1,218 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+import java.util.*;
+
+/*
+ * Arrays are shared by reference: assigning an array or passing it to a function
+ * does not copy it, and set, add and remove change it for everyone holding it. The
+ * operators never change their operands; they return new arrays.
+ *
+ * The elements live in a persistent ArrayNode tree, so indexing, set, add and remove
+ * take O(log n) and a new array made by an operator shares all but one path of the
+ * tree with the old one. The array holds an edit token while it is the only one
+ * using its nodes and changes them in place; giving the nodes to another array or an
+ * iterator drops the token, and its next change copies the path it touches.
+ *
+ * Iterating sees the array as it was when the iteration started.
+ *
+ * An array of numbers only can be mapped with a NumberKernel, which gets the unboxed
+ * numbers a leaf at a time instead of a NumberValue per element.
+ */
+public final class ArrayValue extends Value implements Iterable<Value> {
+    // Writes the results for the first count values; values must not be changed
+    public interface NumberKernel {
+        void apply(double[] values, double[] results, int count);
+    }
+
+    private ArrayNode root;
+    private Object edit; // null while the array may share its nodes
+
+    public ArrayValue(List<Value> elements) {
+        edit = new Object();
+        ArrayNode.Builder builder = new ArrayNode.Builder(edit);
+        for (Value element : elements) builder.add(element);
+        root = builder.build();
+    }
+
+    public ArrayValue() {
+        root = ArrayNode.EMPTY;
+    }
+
+    private ArrayValue(ArrayNode root, Object edit) {
+        this.root = root;
+        this.edit = edit;
+    }
+
+    public TokenType getType() {
+        return TokenType.ARRAY;
+    }
+
+    // A copy; changing it leaves the array alone
+    public ArrayList<Value> getElements() {
+        ArrayList<Value> elements = new ArrayList<>(size());
+        for (Iterator<Value> cursor = new Cursor(root); cursor.hasNext(); ) elements.add(cursor.next());
+        return elements;
+    }
+
+    public boolean isTruthy() {
+        return true;
+    }
+
+    // Access
+    public int size() {
+        return root.size();
+    }
+
+    public Value get(int index) {
+        Objects.checkIndex(index, size());
+        return root.get(index);
+    }
+
+    public void set(int index, Value value) {
+        Objects.checkIndex(index, size());
+        root = root.set(owned(), index, value);
+    }
+
+    public void add(Value value) {
+        add(size(), value);
+    }
+
+    public void add(int index, Value value) {
+        Objects.checkIndex(index, size() + 1);
+        root = settle(owned(), root.insert(owned(), index, value), index);
+    }
+
+    public void remove(int index) {
+        Objects.checkIndex(index, size());
+        root = settle(owned(), root.remove(owned(), index), index);
+    }
+
+    public boolean contains(Value value) {
+        for (Iterator<Value> cursor = new Cursor(root); cursor.hasNext(); ) {
+            if (cursor.next().equals(value)) return true;
+        }
+        return false;
+    }
+
+    public Iterator<Value> iterator() {
+        return new Cursor(share());
+    }
+
+    // New arrays
+    public ArrayValue appended(Value value) {
+        int size = size();
+        return new ArrayValue(settle(null, share().insert(null, size, value), size), null);
+    }
+
+    public ArrayValue prepended(Value value) {
+        return new ArrayValue(settle(null, share().insert(null, 0, value), 0), null);
+    }
+
+    public ArrayValue concat(ArrayValue other) {
+        return new ArrayValue(ArrayNode.concat(null, share(), other.share()), null);
+    }
+
+    public ArrayValue reversed() {
+        Object edit = new Object();
+        ArrayNode.Builder builder = new ArrayNode.Builder(edit);
+        for (int i = size() - 1; i >= 0; i--) builder.add(root.get(i));
+        return new ArrayValue(builder.build(), edit);
+    }
+
+    // Every element but those equal to the value
+    public ArrayValue without(Value value) {
+        Object edit = new Object();
+        ArrayNode.Builder builder = new ArrayNode.Builder(edit);
+        for (Iterator<Value> cursor = new Cursor(root); cursor.hasNext(); ) {
+            Value element = cursor.next();
+            if (!element.equals(value)) builder.add(element);
+        }
+        return new ArrayValue(builder.build(), edit);
+    }
+
+    // A new array of the kernel's results, or null if an element isn't a number
+    public ArrayValue mapNumbers(NumberKernel kernel) {
+        if (!root.isNumeric()) return null;
+        if (size() == 0) return new ArrayValue();
+        Object edit = new Object();
+        return new ArrayValue(root.mapNumbers(edit, kernel), edit);
+    }
+
+    // Ownership
+    private Object owned() {
+        if (edit == null) edit = new Object();
+        return edit;
+    }
+
+    // The nodes, which from now on may be held elsewhere and must not change
+    private ArrayNode share() {
+        edit = null;
+        return root;
+    }
+
+    // Splits a root left overfull by an insert at index, and takes apart a root left
+    // with one child by a remove
+    private static ArrayNode settle(Object edit, ArrayNode root, int index) {
+        if (root.isOverfull()) return ArrayNode.Branch.of(edit, root.split(edit, index));
+        while (root instanceof ArrayNode.Branch && root.width() == 1) root = ((ArrayNode.Branch) root).children[0];
+        return root.size() == 0 ? ArrayNode.EMPTY : root;
+    }
+
+    // Walks the tree a leaf at a time
+    private static final class Cursor implements Iterator<Value> {
+        private final ArrayNode root;
+        private final int size;
+        private ArrayNode.Leaf leaf;
+        private int index = 0;
+        private int offset = 0;
+
+        Cursor(ArrayNode root) {
+            this.root = root;
+            this.size = root.size();
+        }
+
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        public Value next() {
+            if (index >= size) throw new NoSuchElementException();
+            if (leaf == null || offset == leaf.count) {
+                leaf = root.leafAt(index);
+                offset = 0;
+            }
+            index++;
+            return leaf.get(offset++);
+        }
+    }
+
+    // Equality
+    public boolean equals(Object compare) {
+        if (!(compare instanceof ArrayValue)) return false;
+        ArrayValue other = (ArrayValue) compare;
+        if (other.size() != size()) return false;
+        Iterator<Value> others = new Cursor(other.root);
+        for (Iterator<Value> cursor = new Cursor(root); cursor.hasNext(); ) {
+            if (!cursor.next().equals(others.next())) return false;
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int hash = 1;
+        for (Iterator<Value> cursor = new Cursor(root); cursor.hasNext(); ) hash = 31 * hash + cursor.next().hashCode();
+        return hash;
+    }
+
+    protected void describe(OutputSink out) {
+        out.append('[');
+        for (Iterator<Value> cursor = new Cursor(root); cursor.hasNext(); ) {
+            cursor.next().print(out);
+            if (cursor.hasNext()) out.append(", ");
+        }
+        out.append(']');
+    }
+}
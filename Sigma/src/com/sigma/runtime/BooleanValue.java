@@ -0,0 +1,35 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+public final class BooleanValue extends Value {
+    public static final BooleanValue TRUE = new BooleanValue(true);
+    public static final BooleanValue FALSE = new BooleanValue(false);
+
+    private final boolean value;
+
+    private BooleanValue(boolean value) {
+        this.value = value;
+    }
+
+    public static BooleanValue of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public TokenType getType() {
+        return TokenType.BOOLEAN;
+    }
+
+    public boolean getBoolVal() {
+        return value;
+    }
+
+    public boolean isTruthy() {
+        return value;
+    }
+
+    protected void describe(OutputSink out) {
+        out.append(value ? "true" : "fals");
+    }
+}
@@ -0,0 +1,50 @@
+package com.sigma.runtime;
+
+import com.sigma.ast.Block;
+import com.sigma.ast.FunctionDefinition;
+import com.sigma.environments.Environment;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+/*
+ * A function together with the environment it was defined in. A new closure is made
+ * every time a definition is evaluated, so two calls to a function that returns an
+ * inner function get two independent closures.
+ */
+public final class ClosureValue extends Value {
+    private final FunctionDefinition definition;
+    private final Environment definingEnvironment;
+
+    public ClosureValue(FunctionDefinition definition, Environment definingEnvironment) {
+        this.definition = definition;
+        this.definingEnvironment = definingEnvironment;
+    }
+
+    public TokenType getType() {
+        return TokenType.FUNCTION_DEFINITION;
+    }
+
+    public FunctionDefinition getDefinition() {
+        return definition;
+    }
+
+    public Environment getDefiningEnvironment() {
+        return definingEnvironment;
+    }
+
+    public String getName() {
+        return definition.getName().getStringVal();
+    }
+
+    public Block getBody() {
+        return definition.getBody();
+    }
+
+    public boolean isTruthy() {
+        return true;
+    }
+
+    protected void describe(OutputSink out) {
+        out.append(getName());
+    }
+}
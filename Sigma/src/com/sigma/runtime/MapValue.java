@@ -0,0 +1,214 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * Maps, like arrays, are shared by reference, and put, include and delete change them
+ * for everyone holding them. Keys are numbers, strings or booleans, compared with
+ * equals; arrays can change after they go in, so they can't be keys.
+ *
+ * A set is a map that keeps only its keys: every key it holds maps to true. An empty
+ * map becomes a map or a set the first time something is put or included in it, so []
+ * starts either.
+ *
+ * The table is open addressing with linear probing over an index of slots twice the
+ * size of the entry arrays, so it never fills past half. Entries are stored in the
+ * order they were first put, which is the order keys{} and foreach give them back.
+ * Deleting leaves a gap in the entries and a DELETED mark in the index, both cleared
+ * the next time the entries fill up and the table is rebuilt.
+ */
+public final class MapValue extends Value {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // Kinds
+    private static final int UNDECIDED = 0;
+    private static final int MAP = 1;
+    private static final int SET = 2;
+
+    // Index slots that hold no entry
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+
+    private int kind = UNDECIDED;
+    private int[] index;
+    private int[] hashes;
+    private Value[] keys;
+    private Value[] values; // only for a map
+    private int entries = 0; // deleted ones included
+    private int size = 0;
+
+    public MapValue() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    public static boolean isKey(Value value) {
+        return value instanceof NumberValue || value instanceof StringValue || value instanceof BooleanValue;
+    }
+
+    public TokenType getType() {
+        return TokenType.MAP;
+    }
+
+    public boolean isMap() {
+        return kind == MAP;
+    }
+
+    public boolean isSet() {
+        return kind == SET;
+    }
+
+    public boolean isTruthy() {
+        return true;
+    }
+
+    // Access
+    public int size() {
+        return size;
+    }
+
+    public boolean has(Value key) {
+        return find(key, hash(key)) >= 0;
+    }
+
+    // The value for the key, or null if it has none
+    public Value get(Value key) {
+        int slot = find(key, hash(key));
+        if (slot < 0) return null;
+        return values == null ? BooleanValue.TRUE : values[index[slot]];
+    }
+
+    public void put(Value key, Value value) {
+        if (kind == UNDECIDED) {
+            kind = MAP;
+            values = new Value[keys.length];
+        }
+        store(key, value);
+    }
+
+    public void include(Value key) {
+        if (kind == UNDECIDED) kind = SET;
+        store(key, BooleanValue.TRUE);
+    }
+
+    private void store(Value key, Value value) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            if (values != null) values[index[slot]] = value;
+            return;
+        }
+        if (entries == keys.length) allocate(Math.max(DEFAULT_CAPACITY, size * 2));
+        slot = hash & index.length - 1;
+        while (index[slot] >= 0) slot = slot + 1 & index.length - 1;
+        index[slot] = entries;
+        hashes[entries] = hash;
+        keys[entries] = key;
+        if (values != null) values[entries] = value;
+        entries++;
+        size++;
+    }
+
+    // Whether the key was there
+    public boolean delete(Value key) {
+        int slot = find(key, hash(key));
+        if (slot < 0) return false;
+        int entry = index[slot];
+        index[slot] = DELETED;
+        keys[entry] = null;
+        if (values != null) values[entry] = null;
+        size--;
+        return true;
+    }
+
+    // The keys in the order they were put
+    public ArrayValue keys() {
+        ArrayValue array = new ArrayValue();
+        for (int i = 0; i < entries; i++) {
+            if (keys[i] != null) array.add(keys[i]);
+        }
+        return array;
+    }
+
+    // Table
+    private static int hash(Value key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ hash >>> 16;
+    }
+
+    // The index slot holding the key, or -1
+    private int find(Value key, int hash) {
+        int mask = index.length - 1;
+        for (int slot = hash & mask; ; slot = slot + 1 & mask) {
+            int entry = index[slot];
+            if (entry == EMPTY) return -1;
+            if (entry >= 0 && hashes[entry] == hash && keys[entry].equals(key)) return slot;
+        }
+    }
+
+    // Makes room for capacity entries, keeping the live ones in order
+    private void allocate(int capacity) {
+        int[] oldHashes = hashes;
+        Value[] oldKeys = keys;
+        Value[] oldValues = values;
+        int oldEntries = entries;
+        index = new int[capacity * 2];
+        Arrays.fill(index, EMPTY);
+        hashes = new int[capacity];
+        keys = new Value[capacity];
+        values = kind == MAP ? new Value[capacity] : null;
+        entries = 0;
+        int mask = index.length - 1;
+        for (int i = 0; i < oldEntries; i++) {
+            if (oldKeys[i] == null) continue;
+            int slot = oldHashes[i] & mask;
+            while (index[slot] != EMPTY) slot = slot + 1 & mask;
+            index[slot] = entries;
+            hashes[entries] = oldHashes[i];
+            keys[entries] = oldKeys[i];
+            if (values != null) values[entries] = oldValues[i];
+            entries++;
+        }
+    }
+
+    // Equality
+    // Both empty, or of the same kind with the same keys and values in any order
+    public boolean equals(Object compare) {
+        if (!(compare instanceof MapValue)) return false;
+        MapValue other = (MapValue) compare;
+        if (other.size != size) return false;
+        if (size == 0) return true;
+        if (other.kind != kind) return false;
+        for (int i = 0; i < entries; i++) {
+            if (keys[i] == null) continue;
+            if (!other.has(keys[i]) || values != null && !Objects.equals(other.get(keys[i]), values[i])) return false;
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < entries; i++) {
+            if (keys[i] != null) hash += keys[i].hashCode() ^ (values == null ? 0 : Objects.hashCode(values[i]));
+        }
+        return hash;
+    }
+
+    protected void describe(OutputSink out) {
+        out.append('[');
+        boolean first = true;
+        for (int i = 0; i < entries; i++) {
+            if (keys[i] == null) continue;
+            if (!first) out.append(", ");
+            first = false;
+            keys[i].print(out);
+            if (values == null) continue;
+            out.append(" <- ");
+            values[i].print(out);
+        }
+        out.append(']');
+    }
+}
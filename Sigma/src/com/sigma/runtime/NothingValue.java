@@ -0,0 +1,31 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+public final class NothingValue extends Value {
+    public static final NothingValue NOTHING = new NothingValue();
+
+    private NothingValue() {
+    }
+
+    public TokenType getType() {
+        return TokenType.NOTHING;
+    }
+
+    public boolean isTruthy() {
+        return false;
+    }
+
+    protected void describe(OutputSink out) {
+        out.append("nothing");
+    }
+
+    public void print(OutputSink out) {
+        out.append('[').append(getType().name()).append(']');
+    }
+
+    public void print(OutputSink out, int lineNumber) {
+        out.append('[').append(getType().name()).append("] (line ").append(Integer.toString(lineNumber)).append(')');
+    }
+}
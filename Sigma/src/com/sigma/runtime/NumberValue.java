@@ -0,0 +1,37 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+public final class NumberValue extends Value {
+    private final double value; // Sigma only supports a single real number type
+
+    public NumberValue(double value) {
+        this.value = value;
+    }
+
+    public TokenType getType() {
+        return TokenType.NUMBER;
+    }
+
+    public double getNumVal() {
+        return value;
+    }
+
+    public boolean isTruthy() {
+        return value != 0;
+    }
+
+    // Equality
+    public boolean equals(Object compare) {
+        return compare instanceof NumberValue && Double.doubleToLongBits(((NumberValue) compare).value) == Double.doubleToLongBits(value);
+    }
+
+    public int hashCode() {
+        return Double.hashCode(value);
+    }
+
+    protected void describe(OutputSink out) {
+        out.append(value);
+    }
+}
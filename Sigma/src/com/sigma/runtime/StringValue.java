@@ -0,0 +1,112 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.OutputSink;
+
+import java.util.ArrayDeque;
+
+/*
+ * A string made by concat is a rope: it keeps its two halves and its length, and
+ * only copies the characters into one String the first time something asks for them.
+ * That String then replaces the halves, so each rope is flattened at most once, and
+ * building a string a piece at a time costs one node per piece instead of a copy of
+ * everything so far. length() never needs the characters.
+ *
+ * The contents change in one write from the halves to the String, so threads sharing
+ * a rope can flatten it at the same time and both get the same characters.
+ */
+public final class StringValue extends Value {
+    // Results this short are copied right away; a rope node would cost more
+    private static final int SHORT = 32;
+
+    private final int length;
+    private volatile Object content; // the String, or a Concat until first flattened
+
+    public StringValue(String value) {
+        this.content = value;
+        this.length = value.length();
+    }
+
+    private StringValue(StringValue left, StringValue right) {
+        this.content = new Concat(left, right);
+        this.length = left.length + right.length;
+    }
+
+    public static StringValue concat(StringValue left, StringValue right) {
+        if (left.length == 0) return right;
+        if (right.length == 0) return left;
+        if (left.length + right.length <= SHORT) return new StringValue(left.getStringVal() + right.getStringVal());
+        return new StringValue(left, right);
+    }
+
+    public static StringValue concat(StringValue left, String right) {
+        return concat(left, new StringValue(right));
+    }
+
+    public static StringValue concat(String left, StringValue right) {
+        return concat(new StringValue(left), right);
+    }
+
+    public TokenType getType() {
+        return TokenType.STRING;
+    }
+
+    public String getStringVal() {
+        Object content = this.content;
+        return content instanceof String ? (String) content : flatten();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isTruthy() {
+        return length != 0;
+    }
+
+    // Ropes
+    private static final class Concat {
+        final StringValue left;
+        final StringValue right;
+
+        Concat(StringValue left, StringValue right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    // Walks the rope with a stack rather than recursion, since a string built in a
+    // loop is a rope as deep as the loop ran
+    private String flatten() {
+        StringBuilder builder = new StringBuilder(length);
+        ArrayDeque<StringValue> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object part = pending.pop().content;
+            if (part instanceof String) {
+                builder.append((String) part);
+            } else {
+                pending.push(((Concat) part).right);
+                pending.push(((Concat) part).left);
+            }
+        }
+        String flat = builder.toString();
+        content = flat;
+        return flat;
+    }
+
+    // Equality
+    public boolean equals(Object compare) {
+        if (!(compare instanceof StringValue)) return false;
+        StringValue other = (StringValue) compare;
+        return other.length == length && other.getStringVal().equals(getStringVal());
+    }
+
+    public int hashCode() {
+        return getStringVal().hashCode();
+    }
+
+    protected void describe(OutputSink out) {
+        out.append('"').append(getStringVal()).append('"');
+    }
+}
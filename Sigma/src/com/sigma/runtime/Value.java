@@ -0,0 +1,66 @@
+package com.sigma.runtime;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.MemorySink;
+import com.sigma.output.OutputSink;
+
+import java.util.ArrayList;
+
+/*
+ * A runtime value. Values are kept separate from the Lexemes of the parse tree so that
+ * evaluating an expression doesn't allocate a full parse node; the type tag reuses the
+ * TokenType of the matching literal. Only arrays and maps are mutable.
+ */
+public abstract class Value {
+    public static Value of(Lexeme literal) {
+        return switch (literal.getType()) {
+            case NUMBER -> new NumberValue(literal.getNumVal());
+            case STRING -> new StringValue(literal.getStringVal());
+            case BOOLEAN -> BooleanValue.of(literal.getBoolVal());
+            case NOTHING -> NothingValue.NOTHING;
+            default -> throw new IllegalArgumentException(literal + " is not a literal");
+        };
+    }
+
+    public abstract TokenType getType();
+
+    public double getNumVal() {
+        throw new IllegalStateException(getType() + " is not a number");
+    }
+
+    public String getStringVal() {
+        throw new IllegalStateException(getType() + " is not a string");
+    }
+
+    public boolean getBoolVal() {
+        throw new IllegalStateException(getType() + " is not a boolean");
+    }
+
+    public ArrayList<Value> getElements() {
+        throw new IllegalStateException(getType() + " is not an array");
+    }
+
+    public abstract boolean isTruthy();
+
+    // Output
+    // Writes the value the way it shows inside an array or map
+    public void print(OutputSink out) {
+        out.append('[').append(getType().name()).append("]: ");
+        describe(out);
+    }
+
+    // Writes the value the way log shows it, with the line of the expression logged
+    public void print(OutputSink out, int lineNumber) {
+        out.append('[').append(getType().name()).append("] (line ").append(Integer.toString(lineNumber)).append("): ");
+        describe(out);
+    }
+
+    protected abstract void describe(OutputSink out);
+
+    public String toString() {
+        MemorySink sink = new MemorySink();
+        print(sink);
+        return sink.toString();
+    }
+}
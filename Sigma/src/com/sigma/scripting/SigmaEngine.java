@@ -0,0 +1,180 @@
+package com.sigma.scripting;
+
+import com.sigma.Diagnostics;
+import com.sigma.Sigma;
+import com.sigma.SigmaException;
+import com.sigma.ast.Program;
+import com.sigma.lexicalAnalysis.Lexer;
+import com.sigma.parsing.Parser;
+import com.sigma.runtime.*;
+
+import javax.script.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.*;
+
+/*
+ * Runs Sigma inside a Java program through javax.script. A script is compiled once
+ * into a SigmaScript and can then be evaluated any number of times, each run with its
+ * own globals, and errors come back as ScriptExceptions instead of ending the JVM.
+ *
+ *     SigmaEngine engine = new SigmaEngine("vm");
+ *     CompiledScript script = engine.compile("log { 6 * 7 }‼");
+ *     script.eval(); // prints [NUMBER]: 42.0 to the context's writer
+ *
+ * Bindings become variables the script can read, and the script's global variables
+ * are copied back into the engine scope when it finishes. Numbers, strings, booleans,
+ * lists and null are converted both ways; functions stay Sigma values.
+ */
+public class SigmaEngine extends AbstractScriptEngine implements Compilable {
+    private final String engine;
+    private final SigmaEngineFactory factory;
+
+    public SigmaEngine() {
+        this("tree");
+    }
+
+    // engine is "tree" or "vm". The VM can only be chosen here, not on the command line.
+    public SigmaEngine(String engine) {
+        this(engine, null);
+    }
+
+    SigmaEngine(String engine, SigmaEngineFactory factory) {
+        if (!engine.equals("tree") && !engine.equals("vm")) throw new IllegalArgumentException("Unknown engine " + engine);
+        this.engine = engine;
+        this.factory = factory;
+    }
+
+    String getEngine() {
+        return engine;
+    }
+
+    // Compiling
+    // Syntax errors are reported together; unlike the command line, a script with
+    // syntax errors is never run
+    public SigmaScript compile(String script) throws ScriptException {
+        Diagnostics diagnostics = new Diagnostics();
+        Diagnostics previous = Sigma.getDiagnostics();
+        Sigma.setDiagnostics(diagnostics);
+        try {
+            Program program = new Parser(new Lexer(script)).program();
+            if (diagnostics.hasErrors()) {
+                throw new ScriptException(String.join("\n", diagnostics.getSyntaxErrors()), filename(context), -1);
+            }
+            return compile(program);
+        } catch (SigmaException e) {
+            throw scriptException(e, context);
+        } finally {
+            Sigma.setDiagnostics(previous);
+        }
+    }
+
+    public SigmaScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    // Folds and resolves a tree straight from the Parser. Resolving annotates the
+    // tree's names in place, so a tree can only be compiled once.
+    public SigmaScript compile(Program program) {
+        return new SigmaScript(this, program);
+    }
+
+    // Evaluating
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    public ScriptEngineFactory getFactory() {
+        return factory != null ? factory : new SigmaEngineFactory();
+    }
+
+    // Conversions
+    static Value toValue(Object object) throws ScriptException {
+        if (object == null) return NothingValue.NOTHING;
+        if (object instanceof Value) return (Value) object;
+        if (object instanceof Number) return new NumberValue(((Number) object).doubleValue());
+        if (object instanceof CharSequence || object instanceof Character) return new StringValue(object.toString());
+        if (object instanceof Boolean) return BooleanValue.of((Boolean) object);
+        if (object instanceof Map) {
+            MapValue map = new MapValue();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) map.put(toKey(entry.getKey()), toValue(entry.getValue()));
+            return map;
+        }
+        if (object instanceof Set) {
+            MapValue set = new MapValue();
+            for (Object element : (Set<?>) object) set.include(toKey(element));
+            return set;
+        }
+        if (object instanceof Iterable) {
+            ArrayValue array = new ArrayValue();
+            for (Object element : (Iterable<?>) object) array.add(toValue(element));
+            return array;
+        }
+        throw new ScriptException("Cannot convert " + object.getClass().getName() + " to a Sigma value");
+    }
+
+    private static Value toKey(Object object) throws ScriptException {
+        Value key = toValue(object);
+        if (!MapValue.isKey(key)) throw new ScriptException("Cannot use " + key.getType() + " as a Sigma map key");
+        return key;
+    }
+
+    static Object toJava(Value value) {
+        if (value == null) return null;
+        return switch (value.getType()) {
+            case NUMBER -> value.getNumVal();
+            case STRING -> value.getStringVal();
+            case BOOLEAN -> value.getBoolVal();
+            case NOTHING -> null;
+            case ARRAY -> {
+                List<Object> list = new ArrayList<>(((ArrayValue) value).size());
+                for (Value element : (ArrayValue) value) list.add(toJava(element));
+                yield list;
+            }
+            case MAP -> {
+                MapValue map = (MapValue) value;
+                ArrayValue keys = map.keys();
+                if (map.isSet()) {
+                    Set<Object> set = new LinkedHashSet<>();
+                    for (Value key : keys) set.add(toJava(key));
+                    yield set;
+                }
+                Map<Object, Object> result = new LinkedHashMap<>();
+                for (Value key : keys) result.put(toJava(key), toJava(map.get(key)));
+                yield result;
+            }
+            default -> value;
+        };
+    }
+
+    // Errors
+    static ScriptException scriptException(SigmaException error, ScriptContext context) {
+        ScriptException exception = new ScriptException(error.getMessage(), filename(context), error.getLineNumber());
+        exception.initCause(error);
+        return exception;
+    }
+
+    private static String filename(ScriptContext context) {
+        Object filename = context.getAttribute(ScriptEngine.FILENAME);
+        return filename == null ? null : filename.toString();
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        try {
+            StringWriter source = new StringWriter();
+            reader.transferTo(source);
+            return source.toString();
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+    }
+}
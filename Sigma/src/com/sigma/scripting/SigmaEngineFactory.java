@@ -0,0 +1,77 @@
+package com.sigma.scripting;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+
+/*
+ * Lets javax.script.ScriptEngineManager find the Sigma engine by the name "sigma",
+ * the extension .sigma or its MIME type. Registered in
+ * META-INF/services/javax.script.ScriptEngineFactory.
+ */
+public class SigmaEngineFactory implements ScriptEngineFactory {
+    private static final String VERSION = "1.0";
+
+    public String getEngineName() {
+        return "Sigma";
+    }
+
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    public List<String> getExtensions() {
+        return List.of("sigma");
+    }
+
+    public List<String> getMimeTypes() {
+        return List.of("application/x-sigma", "text/x-sigma");
+    }
+
+    public List<String> getNames() {
+        return List.of("sigma", "Sigma");
+    }
+
+    public String getLanguageName() {
+        return "Sigma";
+    }
+
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> getNames().get(0);
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            // Compiled scripts can run on several threads, each run with its own globals
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    // Sigma has no methods, so the closest thing is a call with the object first
+    public String getMethodCallSyntax(String object, String method, String... args) {
+        StringBuilder call = new StringBuilder(method).append(" { ").append(object);
+        for (String arg : args) call.append(", ").append(arg);
+        return call.append(" }").toString();
+    }
+
+    // Sigma strings write tabs and newlines as ¬ and ˇ, and have no way to escape a quote
+    public String getOutputStatement(String toDisplay) {
+        return "log { \"" + toDisplay.replace('\t', '¬').replace('\n', 'ˇ') + "\" }‼";
+    }
+
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) program.append(statement).append("‼\n");
+        return program.toString();
+    }
+
+    public ScriptEngine getScriptEngine() {
+        return new SigmaEngine("tree", this);
+    }
+}
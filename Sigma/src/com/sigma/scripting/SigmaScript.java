@@ -0,0 +1,104 @@
+package com.sigma.scripting;
+
+import com.sigma.SigmaException;
+import com.sigma.ast.Program;
+import com.sigma.environments.Environment;
+import com.sigma.evaluation.Evaluator;
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.optimization.ConstantFolder;
+import com.sigma.output.OutputSink;
+import com.sigma.output.WriterSink;
+import com.sigma.resolution.Resolver;
+import com.sigma.runtime.Value;
+import com.sigma.vm.Chunk;
+import com.sigma.vm.Compiler;
+import com.sigma.vm.VirtualMachine;
+
+import javax.script.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.sigma.lexicalAnalysis.TokenType.IDENTIFIER;
+
+/*
+ * A folded and resolved program, and its bytecode when it runs on the vm engine.
+ * Nothing a run does is kept in the script, so it can be run again, or on several
+ * threads at once, and every run starts from empty globals.
+ */
+public class SigmaScript extends CompiledScript {
+    private final SigmaEngine engine;
+    private final Program program;
+    private final Compiler compiler;
+    private final Chunk chunk;
+
+    SigmaScript(SigmaEngine engine, Program program) {
+        this.engine = engine;
+        this.program = new ConstantFolder().fold(program);
+        new Resolver().resolve(this.program);
+        if (engine.getEngine().equals("vm")) {
+            compiler = new Compiler();
+            chunk = compiler.compile(this.program);
+        } else {
+            compiler = null;
+            chunk = null;
+        }
+    }
+
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+
+    // The folded and resolved tree
+    public Program getProgram() {
+        return program;
+    }
+
+    // Runs the program in global, which is usually empty, and returns the value of its
+    // last statement. Errors are thrown as SigmaExceptions.
+    public Value run(Environment global, OutputSink out) {
+        try {
+            if (chunk != null) return new VirtualMachine(compiler, out).run(chunk, global);
+            return new Evaluator(out).eval(program, global);
+        } finally {
+            out.flush();
+        }
+    }
+
+    // Bindings are declared in an environment around the globals, where the Resolver
+    // never looks, so they don't disturb the globals' slots and the script can still
+    // declare a variable of the same name
+    public Object eval(ScriptContext context) throws ScriptException {
+        Environment bindings = new Environment();
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (int scope : new int[]{ScriptContext.GLOBAL_SCOPE, ScriptContext.ENGINE_SCOPE}) {
+            Bindings scoped = context.getBindings(scope);
+            if (scoped != null) attributes.putAll(scoped);
+        }
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            if (!isIdentifier(attribute.getKey())) continue;
+            bindings.add(new Lexeme(IDENTIFIER, 0, attribute.getKey()), SigmaEngine.toValue(attribute.getValue()));
+        }
+
+        Environment global = new Environment(bindings);
+        Value result;
+        try {
+            result = run(global, new WriterSink(context.getWriter()));
+        } catch (SigmaException e) {
+            throw SigmaEngine.scriptException(e, context);
+        }
+
+        Bindings engineScope = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (engineScope != null) global.forEach((name, value) -> engineScope.put(name, SigmaEngine.toJava(value)));
+        return SigmaEngine.toJava(result);
+    }
+
+    // Skips attributes like javax.script.filename that a script couldn't refer to anyway
+    private static boolean isIdentifier(String name) {
+        if (name.isEmpty() || Character.isDigit(name.charAt(0))) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+package com.sigma.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * A compiled unit of bytecode: the top level of a program or the body of one function.
+ * Its locals are the slots it keeps in its frame on the VM's stack. A slotted function
+ * keeps its parameters there too, and its calls make no Environment at all.
+ */
+public class Chunk {
+    private final String name;
+    private int[] code = new int[64];
+    private int size = 0;
+    private final ArrayList<Object> constants = new ArrayList<>();
+    private Object[] constantPool;
+    private int locals = 0;
+    private boolean slotted = false;
+
+    // Where the last two instructions start and the last position a jump lands on, so
+    // that the Compiler can take back an instruction nothing jumps past
+    private int last = -1;
+    private int previous = -1;
+    private int landing = 0;
+
+    public Chunk(String name) {
+        this.name = name;
+    }
+
+    // Writing
+    int emit(int value) {
+        if (size == code.length) code = Arrays.copyOf(code, Math.max(16, size * 2));
+        code[size] = value;
+        return size++;
+    }
+
+    int emitOp(int opCode) {
+        previous = last;
+        last = size;
+        return emit(opCode);
+    }
+
+    // The position the next instruction will start at, which a jump lands on
+    int target() {
+        landing = size;
+        return size;
+    }
+
+    boolean lastIs(int opCode) {
+        return last >= 0 && code[last] == opCode;
+    }
+
+    // Takes back the last instruction if it is opCode
+    boolean unemit(int opCode) {
+        if (!lastIs(opCode) || landing > last) return false;
+        size = last;
+        last = previous;
+        previous = -1;
+        return true;
+    }
+
+    // Takes back the instruction before the last one if it is opCode
+    boolean unemitBeforeLast(int opCode) {
+        if (previous < 0 || code[previous] != opCode || landing > previous) return false;
+        System.arraycopy(code, last, code, previous, size - last);
+        size -= last - previous;
+        last = previous;
+        previous = -1;
+        return true;
+    }
+
+    void patch(int index, int value) {
+        code[index] = value;
+    }
+
+    int addConstant(Object constant) {
+        constants.add(constant);
+        constantPool = null;
+        return constants.size() - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void setFrame(int locals, boolean slotted) {
+        this.locals = locals;
+        this.slotted = slotted;
+    }
+
+    // Reading
+    public String getName() {
+        return name;
+    }
+
+    int[] getCode() {
+        if (code.length != size) code = Arrays.copyOf(code, size);
+        return code;
+    }
+
+    Object[] getConstants() {
+        if (constantPool == null) constantPool = constants.toArray();
+        return constantPool;
+    }
+
+    int getLocals() {
+        return locals;
+    }
+
+    boolean isSlotted() {
+        return slotted;
+    }
+
+    // Debugging
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder("== " + name + " (" + locals + " locals) ==\n");
+        int ip = 0;
+        while (ip < size) {
+            int opCode = code[ip];
+            builder.append(String.format("%04d %-14s", ip, OpCode.name(opCode)));
+            for (int i = 1; i <= OpCode.operandCount(opCode); i++) builder.append(" ").append(code[ip + i]);
+            if (OpCode.operandCount(opCode) > 0 && opCode != OpCode.JUMP && opCode != OpCode.JUMP_IF_FALSE
+                    && opCode != OpCode.NEXT && opCode != OpCode.REPEAT && opCode != OpCode.ARRAY && opCode != OpCode.CLEAR) {
+                builder.append("  ; ").append(constants.get(code[ip + 1]));
+            }
+            builder.append("\n");
+            ip += 1 + OpCode.operandCount(opCode);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,786 @@
+package com.sigma.vm;
+
+import com.sigma.ast.*;
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.NothingValue;
+import com.sigma.runtime.NumberValue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.sigma.lexicalAnalysis.TokenType.*;
+import static com.sigma.vm.OpCode.*;
+
+/*
+ * Compiles a resolved syntax tree to bytecode for the VirtualMachine. Every statement
+ * compiles to code that leaves exactly one value (possibly null) on the stack, which
+ * mirrors the tree-walker returning the value of the last statement in a block.
+ *
+ * Every scope the Resolver made is either slotted or gets an Environment at the same
+ * point the Evaluator makes one. A scope is slotted when no function is defined and no
+ * pareach runs anywhere inside it, since nothing can then keep hold of its variables:
+ * the VM keeps them in slots of the frame instead. Slotted scopes are always the
+ * innermost ones, so the depth of a variable in an Environment only drops by their
+ * number.
+ *
+ * break and continue compile to plain jumps. The compiler counts the environments
+ * pushed and the values a foreach or change statement keeps on the stack, so a jump
+ * out of them pops exactly what the normal way out would have.
+ */
+public class Compiler implements Visitor<Void, Void> {
+    private static final boolean printDebugMessages = false;
+    private final ConcurrentHashMap<Node, Chunk> chunks = new ConcurrentHashMap<>(); // by function or block; nodes compare by identity
+    private Chunk chunk;
+
+    // Where the code being compiled is, for break, continue and return
+    private int environments = 0; // pushed since the start of the chunk
+    private int held = 0; // values kept on the stack by enclosing statements
+    private ArrayList<Loop> loops = new ArrayList<>();
+
+    // The scopes of the chunk being compiled, innermost last, the slots the open ones
+    // use and the most the chunk uses at once
+    private ArrayList<Scope> scopes = new ArrayList<>();
+    private int slots = 0;
+    private int locals = 0;
+
+    private static final class Scope {
+        final boolean slotted;
+        final int base; // its first slot, if slotted
+        final int size;
+
+        Scope(boolean slotted, int base, int size) {
+            this.slotted = slotted;
+            this.base = base;
+            this.size = size;
+        }
+    }
+
+    // The environments and held values at a loop's exit and at the start of its next
+    // iteration, and the jumps to patch to each
+    private static final class Loop {
+        final int environments;
+        final int held;
+        final ArrayList<Integer> breaks = new ArrayList<>();
+        final ArrayList<Integer> continues = new ArrayList<>();
+
+        Loop(int environments, int held) {
+            this.environments = environments;
+            this.held = held;
+        }
+    }
+
+    public synchronized Chunk compile(Program program) {
+        log("compile");
+        chunk = new Chunk("program");
+        scopes = new ArrayList<>();
+        slots = 0;
+        locals = 0;
+        compileStatementList(program.getBody());
+        emit(RETURN);
+        chunk.setFrame(locals, false);
+        if (printDebugMessages) log(chunk.disassemble());
+        chunk.getCode(); // trims the code and builds the constant pool up front
+        chunk.getConstants();
+        return chunk;
+    }
+
+    // Function bodies are compiled the first time they are called, and the blocks a
+    // pareach runs on other machines the first time it runs. Several machines can run
+    // the same compiled program at once, so compiling is synchronized and a chunk is
+    // only published once it is complete.
+    public Chunk getFunction(FunctionDefinition definition) {
+        Chunk function = chunks.get(definition);
+        return function != null ? function : compileChunk(definition, definition.getName().getStringVal(), definition.getBody(), definition);
+    }
+
+    // A block run in an environment made for it, returning its value
+    public Chunk getBlock(Block block) {
+        Chunk compiled = chunks.get(block);
+        return compiled != null ? compiled : compileChunk(block, "pareach", block, null);
+    }
+
+    // A function's parameters can only go straight into slots when they are direct
+    private synchronized Chunk compileChunk(Node key, String name, Block body, FunctionDefinition function) {
+        Chunk compiled = chunks.get(key);
+        if (compiled != null) return compiled;
+        log("compileChunk");
+        Chunk enclosing = chunk;
+        int enclosingEnvironments = environments;
+        int enclosingHeld = held;
+        ArrayList<Loop> enclosingLoops = loops;
+        ArrayList<Scope> enclosingScopes = scopes;
+        int enclosingSlots = slots;
+        int enclosingLocals = locals;
+        chunk = new Chunk(name);
+        environments = 0;
+        held = 0;
+        loops = new ArrayList<>();
+        scopes = new ArrayList<>();
+        slots = 0;
+        locals = 0;
+        boolean slotted = false;
+        if (function != null) {
+            slotted = function.hasDirectParameters() && !captures(body);
+            scopes.add(new Scope(slotted, 0, function.getFrameSize()));
+            if (slotted) slots = locals = function.getFrameSize();
+        }
+        compileStatementList(body);
+        emit(RETURN);
+        chunk.setFrame(locals, slotted);
+        compiled = chunk;
+        chunk = enclosing;
+        environments = enclosingEnvironments;
+        held = enclosingHeld;
+        loops = enclosingLoops;
+        scopes = enclosingScopes;
+        slots = enclosingSlots;
+        locals = enclosingLocals;
+        if (printDebugMessages) log(compiled.disassemble());
+        compiled.getCode(); // trims the code and builds the constant pool up front
+        compiled.getConstants();
+        chunks.put(key, compiled);
+        return compiled;
+    }
+
+    // Emitting
+    private void emit(int opCode) {
+        chunk.emitOp(opCode);
+    }
+
+    private void emit(int opCode, Object operand) {
+        chunk.emitOp(opCode);
+        chunk.emit(chunk.addConstant(operand));
+    }
+
+    private void emit(int opCode, Object operand, int count) {
+        chunk.emitOp(opCode);
+        chunk.emit(chunk.addConstant(operand));
+        chunk.emit(count);
+    }
+
+    private int emitJump(int opCode) {
+        chunk.emitOp(opCode);
+        return chunk.emit(0);
+    }
+
+    private int emitJump(int opCode, Object site) {
+        chunk.emitOp(opCode);
+        chunk.emit(chunk.addConstant(site));
+        return chunk.emit(0);
+    }
+
+    private void patchJump(int operand) {
+        chunk.patch(operand, chunk.target() - (operand + 1));
+    }
+
+    // Drops the value of a statement: a NULL pushed only to be dropped isn't pushed at
+    // all, and an assignment doesn't copy the value it stores
+    private void discard() {
+        if (chunk.unemit(NULL)) return;
+        if ((chunk.lastIs(STORE) || chunk.lastIs(STORE_LOCAL)) && chunk.unemitBeforeLast(DUP)) return;
+        emit(POP);
+    }
+
+    private void emitSwitch(int site, int table, int before) {
+        chunk.emitOp(SWITCH);
+        chunk.emit(site);
+        chunk.emit(table);
+        chunk.emit(before);
+    }
+
+    private void emitLoop(int target) {
+        chunk.emitOp(JUMP);
+        int operand = chunk.emit(0);
+        chunk.patch(operand, target - (operand + 1));
+    }
+
+    private void emitIncrement(Lexeme count, Node loop) {
+        emitLoad(count);
+        emit(OpCode.INCREMENT, loop);
+        emitStore(count);
+    }
+
+    // Scopes
+    // A scope inside a slotted one is slotted too. Its slots follow those of the scopes
+    // around it and are marked undefined each time it's entered, as a new Environment
+    // would start out empty.
+    private void beginScope(Block region, int size) {
+        boolean slotted = (!scopes.isEmpty() && scopes.get(scopes.size() - 1).slotted) || !captures(region);
+        if (!slotted) {
+            scopes.add(new Scope(false, 0, size));
+            emit(PUSH_ENV);
+            environments++;
+            return;
+        }
+        scopes.add(new Scope(true, slots, size));
+        if (size > 0) {
+            chunk.emitOp(CLEAR);
+            chunk.emit(slots);
+            chunk.emit(size);
+        }
+        slots += size;
+        locals = Math.max(locals, slots);
+    }
+
+    private void endScope() {
+        Scope scope = scopes.remove(scopes.size() - 1);
+        if (scope.slotted) {
+            slots -= scope.size;
+        } else {
+            emit(POP_ENV);
+            environments--;
+        }
+    }
+
+    private int slottedScopes() {
+        int count = 0;
+        for (int i = scopes.size() - 1; i >= 0 && scopes.get(i).slotted; i--) count++;
+        return count;
+    }
+
+    // How many slots a scope needs for the names declared in it, numbered as the
+    // Resolver numbered them
+    private static int size(Block block, Lexeme... declared) {
+        int size = 0;
+        for (Lexeme name : declared) size = Math.max(size, name.getSlot() + 1);
+        if (block == null) return size;
+        for (int i = 0; i < block.size(); i++) {
+            Node statement = block.get(i);
+            if (statement instanceof VariableDeclaration) size = Math.max(size, ((VariableDeclaration) statement).getName().getSlot() + 1);
+            else if (statement instanceof FunctionDefinition) size = Math.max(size, ((FunctionDefinition) statement).getName().getSlot() + 1);
+        }
+        return size;
+    }
+
+    // Whether a function is defined or a pareach runs anywhere in a block. Either keeps
+    // the Environment it runs in, and with it every Environment around that. Both are
+    // only ever statements, so only blocks need to be searched.
+    private static boolean captures(Block block) {
+        if (block == null) return false;
+        for (int i = 0; i < block.size(); i++) {
+            if (captures(block.get(i))) return true;
+        }
+        return false;
+    }
+
+    private static boolean captures(Node statement) {
+        if (statement instanceof FunctionDefinition || statement instanceof ParallelLoop) return true;
+        if (statement instanceof Block) return captures((Block) statement);
+        if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            for (int i = 0; i < ifStatement.getBranchCount(); i++) {
+                if (captures(ifStatement.getBlock(i))) return true;
+            }
+            return captures(ifStatement.getOtherwise());
+        }
+        if (statement instanceof ChangeStatement) {
+            ChangeStatement changeStatement = (ChangeStatement) statement;
+            for (int i = 0; i < changeStatement.getCaseCount(); i++) {
+                if (captures(changeStatement.getBlock(i))) return true;
+            }
+            return captures(changeStatement.getOtherwise());
+        }
+        if (statement instanceof ForLoop) return captures(((ForLoop) statement).getBody());
+        if (statement instanceof ForeachLoop) return captures(((ForeachLoop) statement).getBody());
+        if (statement instanceof WhenLoop) return captures(((WhenLoop) statement).getBody());
+        if (statement instanceof LoopLoop) return captures(((LoopLoop) statement).getBody());
+        return false;
+    }
+
+    // Variables
+    // A variable of a slotted scope is in its slot. Any other is in an Environment, at
+    // a depth that doesn't count the slotted scopes in between; reading or writing one
+    // of its slots before it's defined looks the name up in the Environments instead.
+    private Scope scopeOf(Lexeme name) {
+        int index = scopes.size() - 1 - name.getDepth();
+        return name.isResolved() && index >= 0 ? scopes.get(index) : null;
+    }
+
+    private Lexeme environmentAddress(Lexeme name) {
+        int slotted = slottedScopes();
+        if (!name.isResolved() || slotted == 0) return name;
+        Lexeme address = new Lexeme(IDENTIFIER, name.getLineNumber(), name.getStringVal());
+        address.resolve(name.getDepth() - slotted, name.getSlot());
+        return address;
+    }
+
+    private static Lexeme unresolved(Lexeme name) {
+        return new Lexeme(IDENTIFIER, name.getLineNumber(), name.getStringVal());
+    }
+
+    private void emitLoad(Lexeme name) {
+        Scope scope = scopeOf(name);
+        if (scope != null && scope.slotted) emit(LOAD_LOCAL, unresolved(name), scope.base + name.getSlot());
+        else emit(LOAD, environmentAddress(name));
+    }
+
+    private void emitStore(Lexeme name) {
+        Scope scope = scopeOf(name);
+        if (scope != null && scope.slotted) emit(STORE_LOCAL, unresolved(name), scope.base + name.getSlot());
+        else emit(STORE, environmentAddress(name));
+    }
+
+    // Declares name in the innermost scope
+    private void emitDefine(Lexeme name) {
+        Scope scope = scopes.isEmpty() ? null : scopes.get(scopes.size() - 1);
+        if (scope == null || !scope.slotted) {
+            emit(DEFINE, name);
+            return;
+        }
+        ArrayList<Integer> shadowedSlots = new ArrayList<>();
+        ArrayList<Lexeme> shadowedAddresses = new ArrayList<>();
+        if (name.getShadowed() != null) {
+            for (Lexeme address : name.getShadowed()) {
+                Scope shadowed = scopeOf(address);
+                if (shadowed != null && shadowed.slotted) shadowedSlots.add(shadowed.base + address.getSlot());
+                else shadowedAddresses.add(environmentAddress(address));
+            }
+        }
+        emit(DEFINE_LOCAL, new Local(name, scope.base + name.getSlot(), shadowedSlots.stream().mapToInt(Integer::intValue).toArray(),
+                shadowedAddresses.toArray(new Lexeme[0])));
+    }
+
+    // Pops the held values and environments above what the loop or function being
+    // left expects
+    private void unwind(int toEnvironments, int toHeld) {
+        for (int i = held; i > toHeld; i--) emit(POP);
+        for (int i = environments; i > toEnvironments; i--) emit(POP_ENV);
+    }
+
+    private Loop beginLoop() {
+        Loop loop = new Loop(environments, held);
+        loops.add(loop);
+        return loop;
+    }
+
+    // Continues jump to the code that follows, which must be where the next iteration
+    // starts with the environments and held values the loop began with
+    private void patchContinues(Loop loop) {
+        for (int jump : loop.continues) patchJump(jump);
+    }
+
+    // Breaks jump to the code that follows, the loop's exit
+    private void endLoop(Loop loop) {
+        for (int jump : loop.breaks) patchJump(jump);
+        loops.remove(loops.size() - 1);
+    }
+
+    private void emitCounter(Lexeme count) {
+        emit(CONSTANT, new NumberValue(0));
+        emitDefine(count);
+    }
+
+    // Statements
+    private void compileStatementList(Block block) {
+        if (block == null || block.size() == 0) {
+            emit(NULL);
+            return;
+        }
+        for (int i = 0; i < block.size(); i++) {
+            if (i > 0) discard();
+            compileStatement(block.get(i));
+        }
+    }
+
+    private void compileBlock(Block block) {
+        beginScope(block, size(block));
+        compileStatementList(block);
+        endScope();
+    }
+
+    // A loop body only gets an environment of its own if it declares something, as
+    // the Resolver only gives it a scope then
+    private void compileLoopBody(Block body) {
+        if (body.hasDeclarations()) compileBlock(body);
+        else compileStatementList(body);
+    }
+
+    private void compileStatement(Node tree) {
+        if (tree == null) emit(NULL);
+        else tree.accept(this, null);
+    }
+
+    public Void visitProgram(Program program, Void context) {
+        compileStatementList(program.getBody());
+        return null;
+    }
+
+    public Void visitBlock(Block block, Void context) {
+        compileStatementList(block);
+        return null;
+    }
+
+    public Void visitComment(Comment comment, Void context) {
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitVariableDeclaration(VariableDeclaration declaration, Void context) {
+        if (declaration.getValue() != null) compileStatement(declaration.getValue());
+        else emit(CONSTANT, NothingValue.NOTHING);
+        emitDefine(declaration.getName());
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitFunctionDefinition(FunctionDefinition definition, Void context) {
+        emit(FUNCTION, definition);
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitCall(Call call, Void context) {
+        String name = call.getName().getStringVal();
+        if (name.equals("log")) {
+            for (int i = 0; i < call.getArgumentCount(); i++) {
+                compileStatement(call.getArgument(i));
+                emit(PRINT, call.getArgument(i));
+            }
+            if (call.getArgumentCount() == 0) emit(PRINT_LINE);
+            emit(NULL);
+        } else if (call.getBuiltin() != null) {
+            for (int i = 0; i < call.getArgumentCount(); i++) compileStatement(call.getArgument(i));
+            emit(BUILTIN, call, call.getArgumentCount());
+        } else {
+            emitLoad(call.getName());
+            for (int i = 0; i < call.getArgumentCount(); i++) compileStatement(call.getArgument(i));
+            emit(call.isTailCall() ? TAIL_CALL : CALL, call, call.getArgumentCount());
+        }
+        return null;
+    }
+
+    public Void visitAssignment(Assignment assignment, Void context) {
+        compileStatement(assignment.getValue());
+        emitStore(assignment.getName());
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitBinaryOp(BinaryOp operation, Void context) {
+        compileStatement(operation.getLeft());
+        compileStatement(operation.getRight());
+        emit(BINARY, operation);
+        return null;
+    }
+
+    public Void visitUnaryOp(UnaryOp operation, Void context) {
+        switch (operation.getOperator()) {
+            case MINUS -> {
+                compileStatement(operation.getOperand());
+                emit(NEGATE, operation);
+            }
+            case EXCLAMATION, NOT_KEYWORD -> {
+                compileStatement(operation.getOperand());
+                emit(NOT, operation);
+            }
+            case INCREMENT, DECREMENT -> {
+                if (!(operation.getOperand() instanceof Variable)) {
+                    emit(REFERENCE_ERROR, "Can only increment or decrement a variable", chunk.addConstant(operation.getOperand()));
+                    emit(NULL);
+                    return null;
+                }
+                Lexeme name = ((Variable) operation.getOperand()).getName();
+                emitLoad(name);
+                emit(operation.getOperator() == TokenType.INCREMENT ? OpCode.INCREMENT : OpCode.DECREMENT, operation);
+                emit(DUP);
+                emitStore(name);
+            }
+            default -> {
+                emit(ERROR, "Unrecognized operator: " + operation.getOperator(), chunk.addConstant(operation));
+                emit(NULL);
+            }
+        }
+        return null;
+    }
+
+    public Void visitLiteral(Literal literal, Void context) {
+        emit(CONSTANT, literal.getValue());
+        return null;
+    }
+
+    public Void visitVariable(Variable variable, Void context) {
+        emitLoad(variable.getName());
+        return null;
+    }
+
+    public Void visitArrayLiteral(ArrayLiteral array, Void context) {
+        for (int i = 0; i < array.size(); i++) compileStatement(array.get(i));
+        emit(OpCode.ARRAY);
+        chunk.emit(array.size());
+        return null;
+    }
+
+    public Void visitMapLiteral(MapLiteral map, Void context) {
+        for (int i = 0; i < map.size(); i++) {
+            compileStatement(map.getKey(i));
+            if (!map.isSet()) compileStatement(map.getValue(i));
+        }
+        emit(OpCode.MAP, map);
+        return null;
+    }
+
+    // Control flow
+    public Void visitIfStatement(IfStatement ifStatement, Void context) {
+        ArrayList<Integer> exits = new ArrayList<>();
+        for (int i = 0; i < ifStatement.getBranchCount(); i++) {
+            compileStatement(ifStatement.getCondition(i));
+            int next = emitJump(JUMP_IF_FALSE);
+            compileBlock(ifStatement.getBlock(i));
+            exits.add(emitJump(JUMP));
+            patchJump(next);
+        }
+        if (ifStatement.getOtherwise() != null) compileBlock(ifStatement.getOtherwise());
+        else emit(NULL);
+        for (int exit : exits) patchJump(exit);
+        return null;
+    }
+
+    // Literal cases are one SWITCH: it looks the value up and jumps to the block of the
+    // first literal case it equals. A case that isn't a literal is compared in order
+    // before it, guarded by a SWITCH that jumps past it and the cases after it when a
+    // literal case before it matches. The last SWITCH goes to the literal match or to
+    // nocase. The blocks follow the cases, with the table holding where each starts.
+    public Void visitChangeStatement(ChangeStatement changeStatement, Void context) {
+        if (changeStatement.getValue() == null) {
+            emit(ERROR, "Missing identifier", chunk.addConstant(changeStatement));
+            emit(NULL);
+            return null;
+        }
+        int caseCount = changeStatement.getCaseCount();
+        int[] targets = new int[caseCount + 1];
+        int site = chunk.addConstant(changeStatement);
+        int table = chunk.addConstant(targets);
+        ArrayList<Integer> matches = new ArrayList<>(); // jumps from cases that aren't literals
+        ArrayList<Integer> matched = new ArrayList<>(); // and the case each is for
+        ArrayList<Integer> exits = new ArrayList<>();
+        compileStatement(changeStatement.getValue());
+        held++;
+        for (int i = 0; i < changeStatement.getComputedCaseCount(); i++) {
+            int index = changeStatement.getComputedCase(i);
+            Node changeCase = changeStatement.getCase(index);
+            emitSwitch(site, table, index);
+            emit(DUP);
+            compileStatement(changeCase);
+            emit(CHECK_MISSING, changeCase);
+            emit(BINARY, new BinaryOp(changeStatement.getLineNumber(), QUESTION, changeStatement.getValue(), changeCase));
+            int next = emitJump(JUMP_IF_FALSE);
+            matches.add(emitJump(JUMP));
+            matched.add(index);
+            patchJump(next);
+        }
+        emitSwitch(site, table, caseCount + 1);
+        for (int i = 0; i < caseCount; i++) {
+            targets[i] = chunk.target();
+            compileBlock(changeStatement.getBlock(i));
+            emit(POP);
+            exits.add(emitJump(JUMP));
+        }
+        targets[caseCount] = chunk.target();
+        if (changeStatement.getOtherwise() != null) {
+            compileBlock(changeStatement.getOtherwise());
+            emit(POP);
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            int operand = matches.get(i);
+            chunk.patch(operand, targets[matched.get(i)] - (operand + 1));
+        }
+        for (int exit : exits) patchJump(exit);
+        emit(POP);
+        held--;
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitForLoop(ForLoop loop, Void context) {
+        if (loop.isCounted()) return compileCountedLoop(loop);
+        VariableDeclaration initializer = loop.getInitializer();
+        Lexeme count = loop.getCounter();
+        beginScope(loop.getBody(), size(null, initializer.getName(), count));
+        compileStatement(initializer.getValue());
+        emitDefine(initializer.getName());
+        if (loop.isCounterUsed()) emitCounter(count);
+        Loop jumps = beginLoop();
+        int top = chunk.target();
+        compileStatement(loop.getCondition());
+        int exit = emitJump(JUMP_IF_FALSE);
+        compileLoopBody(loop.getBody());
+        discard();
+        patchContinues(jumps);
+        if (loop.isCounterUsed()) emitIncrement(count, loop);
+        compileStatement(loop.getUpdate());
+        discard();
+        emitLoop(top);
+        patchJump(exit);
+        endLoop(jumps);
+        endScope();
+        emit(NULL);
+        return null;
+    }
+
+    // The variable of a counted loop is held on the stack while the loop runs, and only
+    // stored for something else that reads it, as in the Evaluator. A start that isn't a
+    // number is counted up with the loop's own condition and update instead.
+    private Void compileCountedLoop(ForLoop loop) {
+        VariableDeclaration initializer = loop.getInitializer();
+        Lexeme count = loop.getCounter();
+        beginScope(loop.getBody(), size(null, initializer.getName(), count));
+        compileStatement(initializer.getValue());
+        emit(DUP);
+        emitDefine(initializer.getName());
+        if (loop.isCounterUsed()) emitCounter(count);
+        emit(FOR_START);
+        held++;
+        Loop jumps = beginLoop();
+        int top = chunk.target();
+        compileStatement(loop.getLimit());
+        int exit = emitJump(FOR_TEST, loop);
+        compileLoopBody(loop.getBody());
+        discard();
+        patchContinues(jumps);
+        if (loop.isCounterUsed()) emitIncrement(count, loop);
+        int unread = emitJump(FOR_STEP, loop);
+        emitStore(initializer.getName());
+        patchJump(unread);
+        emitLoop(top);
+        patchJump(exit);
+        endLoop(jumps);
+        emit(POP);
+        held--;
+        endScope();
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitForeachLoop(ForeachLoop loop, Void context) {
+        Lexeme count = loop.getCounter();
+        compileStatement(loop.getArray());
+        emit(ITERATE, loop);
+        held++;
+        beginScope(loop.getBody(), size(null, count));
+        if (loop.isCounterUsed()) emitCounter(count);
+        Loop jumps = beginLoop();
+        int top = chunk.target();
+        int exit = emitJump(NEXT);
+        beginScope(loop.getBody(), size(loop.getBody(), loop.getVariable()));
+        emitDefine(loop.getVariable());
+        compileStatementList(loop.getBody());
+        discard();
+        endScope();
+        patchContinues(jumps);
+        if (loop.isCounterUsed()) emitIncrement(count, loop);
+        emitLoop(top);
+        patchJump(exit);
+        endLoop(jumps);
+        endScope();
+        emit(POP);
+        held--;
+        emit(NULL);
+        return null;
+    }
+
+    // The condition is resolved outside the loop's scope, so it's compiled without it
+    public Void visitWhenLoop(WhenLoop loop, Void context) {
+        Lexeme count = loop.getCounter();
+        beginScope(loop.getBody(), size(null, count));
+        if (loop.isCounterUsed()) emitCounter(count);
+        Loop jumps = beginLoop();
+        int top = chunk.target();
+        Scope scope = scopes.remove(scopes.size() - 1);
+        if (!scope.slotted) emit(ENTER_PARENT);
+        compileStatement(loop.getCondition());
+        if (!scope.slotted) emit(LEAVE_PARENT);
+        scopes.add(scope);
+        int exit = emitJump(JUMP_IF_FALSE);
+        compileLoopBody(loop.getBody());
+        discard();
+        patchContinues(jumps);
+        if (loop.isCounterUsed()) emitIncrement(count, loop);
+        emitLoop(top);
+        patchJump(exit);
+        endLoop(jumps);
+        endScope();
+        emit(NULL);
+        return null;
+    }
+
+    // The bound is evaluated once and COUNTER turns it into a counter, held on the stack
+    // while the loop runs, that REPEAT counts up to it
+    public Void visitLoopLoop(LoopLoop loop, Void context) {
+        Lexeme count = loop.getCounter();
+        compileStatement(loop.getBound());
+        emit(CHECK_MISSING, loop.getBound());
+        emit(COUNTER);
+        held++;
+        beginScope(loop.getBody(), size(null, count));
+        if (loop.isCounterUsed()) emitCounter(count);
+        Loop jumps = beginLoop();
+        int top = chunk.target();
+        int exit = emitJump(REPEAT);
+        compileLoopBody(loop.getBody());
+        discard();
+        patchContinues(jumps);
+        if (loop.isCounterUsed()) emitIncrement(count, loop);
+        emitLoop(top);
+        patchJump(exit);
+        endLoop(jumps);
+        endScope();
+        emit(POP);
+        held--;
+        emit(NULL);
+        return null;
+    }
+
+    // The body and the combination run on other machines, from chunks of their own
+    public Void visitParallelLoop(ParallelLoop loop, Void context) {
+        compileStatement(loop.getArray());
+        emit(PAREACH, loop);
+        emit(NULL);
+        return null;
+    }
+
+    // The held values are popped before the value is computed, so a tail call in the
+    // return leaves nothing of this function's behind on the stack. Environments don't
+    // need popping: RETURN goes back to the caller's.
+    public Void visitReturnStatement(ReturnStatement returnStatement, Void context) {
+        unwind(environments, 0);
+        if (returnStatement.getValue() != null) compileStatement(returnStatement.getValue());
+        else emit(CONSTANT, NothingValue.NOTHING);
+        emit(RETURN);
+        emit(NULL); // never reached, but the statement list expects a value
+        return null;
+    }
+
+    public Void visitBreakStatement(BreakStatement breakStatement, Void context) {
+        if (loops.isEmpty()) return leave();
+        Loop loop = loops.get(loops.size() - 1);
+        unwind(loop.environments, loop.held);
+        loop.breaks.add(emitJump(JUMP));
+        emit(NULL);
+        return null;
+    }
+
+    public Void visitContinueStatement(ContinueStatement continueStatement, Void context) {
+        if (loops.isEmpty()) return leave();
+        Loop loop = loops.get(loops.size() - 1);
+        unwind(loop.environments, loop.held);
+        loop.continues.add(emitJump(JUMP));
+        emit(NULL);
+        return null;
+    }
+
+    // A break or continue outside any loop, left in a script run despite its syntax
+    // errors, ends the function with no value, as in the Evaluator
+    private Void leave() {
+        unwind(environments, 0);
+        emit(NULL);
+        emit(RETURN);
+        emit(NULL);
+        return null;
+    }
+
+    // Debugging
+    private static void log(String message) {
+        if (printDebugMessages) System.out.println(message);
+    }
+}
@@ -0,0 +1,38 @@
+package com.sigma.vm;
+
+import com.sigma.environments.Environment;
+import com.sigma.lexicalAnalysis.Lexeme;
+
+/*
+ * A variable declared in a slot of the frame, the operand of DEFINE_LOCAL. As with
+ * Environment.add, declaring it fails if it is already defined or if a variable it
+ * shadows is: shadowedSlots are those kept in slots of the same frame, and
+ * shadowedAddresses those in Environments, counted from the innermost one.
+ */
+final class Local {
+    final Lexeme name;
+    final int slot;
+    private final int[] shadowedSlots;
+    private final Lexeme[] shadowedAddresses;
+
+    Local(Lexeme name, int slot, int[] shadowedSlots, Lexeme[] shadowedAddresses) {
+        this.name = name;
+        this.slot = slot;
+        this.shadowedSlots = shadowedSlots;
+        this.shadowedAddresses = shadowedAddresses;
+    }
+
+    boolean shadowsDefinedVariable(Object[] stack, int base, Environment environment) {
+        for (int shadowed : shadowedSlots) {
+            if (stack[base + shadowed] != VirtualMachine.UNDEFINED) return true;
+        }
+        for (Lexeme address : shadowedAddresses) {
+            if (environment.defines(address)) return true;
+        }
+        return false;
+    }
+
+    public String toString() {
+        return name.toString();
+    }
+}
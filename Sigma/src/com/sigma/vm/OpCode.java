@@ -0,0 +1,115 @@
+package com.sigma.vm;
+
+/*
+ * Instruction set of the Sigma virtual machine. Operands follow their opcode inline
+ * in the code array; constant operands are indexes into the chunk's constant pool and
+ * jump operands are offsets relative to the instruction after the jump. LOAD_LOCAL,
+ * STORE_LOCAL and DEFINE_LOCAL work on a slot of the current frame, whose slots sit on
+ * the stack just above the closure being run; CLEAR marks a scope's slots undefined as
+ * the scope is entered. BINARY runs its site's OperatorNode, so an operator specializes
+ * the same way in both engines. TAIL_CALL is CALL for calls the Resolver marked as tail
+ * calls: it replaces the current frame instead of pushing a new one. COUNTER replaces
+ * the bound of a loop {n} on top of the stack with a counter, and REPEAT counts it up,
+ * jumping once it reaches the bound. FOR_START likewise replaces the start of a counted
+ * for loop with its variable; FOR_TEST pops the limit and jumps once the variable has
+ * passed it, and FOR_STEP counts the variable up, pushing its new value for the store
+ * that follows or jumping over the store when nothing else reads the variable. SWITCH
+ * looks the value on top of the stack up among the literal cases of its change
+ * statement and, if the case found comes before its last operand, jumps to the absolute
+ * position the table gives for it; the table's last entry is where nocase starts. PAREACH pops the array and runs the whole loop,
+ * waiting for every element to finish. ERROR and REFERENCE_ERROR end the run with a
+ * runtime or reference error at their site.
+ */
+public final class OpCode {
+    // Stack
+    public static final int CONSTANT = 0;       // index
+    public static final int NULL = 1;
+    public static final int POP = 2;
+    public static final int DUP = 3;
+
+    // Variables
+    public static final int LOAD = 4;           // name
+    public static final int STORE = 5;          // name
+    public static final int DEFINE = 6;         // name
+    public static final int FUNCTION = 7;       // definition
+    public static final int LOAD_LOCAL = 8;     // name, slot
+    public static final int STORE_LOCAL = 9;    // name, slot
+    public static final int DEFINE_LOCAL = 10;  // local
+    public static final int CLEAR = 11;         // slot, count
+
+    // Operators
+    public static final int BINARY = 12;        // site
+    public static final int INCREMENT = 13;     // site
+    public static final int DECREMENT = 14;     // site
+    public static final int NEGATE = 15;        // site
+    public static final int NOT = 16;           // site
+    public static final int ARRAY = 17;         // count
+
+    // Control flow
+    public static final int JUMP = 18;          // offset
+    public static final int JUMP_IF_FALSE = 19; // offset
+    public static final int PUSH_ENV = 20;
+    public static final int POP_ENV = 21;
+    public static final int ENTER_PARENT = 22;
+    public static final int LEAVE_PARENT = 23;
+    public static final int CHECK_MISSING = 24; // site
+    public static final int ITERATE = 25;       // site
+    public static final int NEXT = 26;          // offset
+    public static final int COUNTER = 27;
+    public static final int REPEAT = 28;        // offset
+    public static final int FOR_START = 29;
+    public static final int FOR_TEST = 30;      // loop, offset
+    public static final int FOR_STEP = 31;      // loop, offset
+
+    // Functions
+    public static final int PRINT = 32;         // site
+    public static final int PRINT_LINE = 33;
+    public static final int BUILTIN = 34;       // call, count
+    public static final int CALL = 35;          // call, count
+    public static final int RETURN = 36;
+    public static final int ERROR = 37;         // message, site
+    public static final int TAIL_CALL = 38;     // call, count
+    public static final int REFERENCE_ERROR = 39; // message, site
+
+    // Maps
+    public static final int MAP = 40;           // site
+
+    // Change
+    public static final int SWITCH = 41;        // site, table, before
+
+    // Parallel loops
+    public static final int PAREACH = 42;       // loop
+
+    private static final String[] names = {
+            "CONSTANT", "NULL", "POP", "DUP",
+            "LOAD", "STORE", "DEFINE", "FUNCTION", "LOAD_LOCAL", "STORE_LOCAL", "DEFINE_LOCAL", "CLEAR",
+            "BINARY", "INCREMENT", "DECREMENT", "NEGATE", "NOT", "ARRAY",
+            "JUMP", "JUMP_IF_FALSE", "PUSH_ENV", "POP_ENV", "ENTER_PARENT", "LEAVE_PARENT", "CHECK_MISSING", "ITERATE", "NEXT", "COUNTER", "REPEAT", "FOR_START", "FOR_TEST", "FOR_STEP",
+            "PRINT", "PRINT_LINE", "BUILTIN", "CALL", "RETURN", "ERROR", "TAIL_CALL", "REFERENCE_ERROR",
+            "MAP",
+            "SWITCH",
+            "PAREACH"
+    };
+
+    private static final int[] operandCounts = {
+            1, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 1, 2,
+            1, 1, 1, 1, 1, 1,
+            1, 1, 0, 0, 0, 0, 1, 1, 1, 0, 1, 0, 2, 2,
+            1, 0, 2, 2, 0, 2, 2, 2,
+            1,
+            3,
+            1
+    };
+
+    private OpCode() {
+    }
+
+    public static String name(int opCode) {
+        return names[opCode];
+    }
+
+    public static int operandCount(int opCode) {
+        return operandCounts[opCode];
+    }
+}
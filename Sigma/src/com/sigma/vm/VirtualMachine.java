@@ -0,0 +1,401 @@
+package com.sigma.vm;
+
+import com.sigma.Sigma;
+import com.sigma.ast.BinaryOp;
+import com.sigma.ast.Call;
+import com.sigma.ast.ChangeStatement;
+import com.sigma.ast.ForLoop;
+import com.sigma.ast.FunctionDefinition;
+import com.sigma.ast.MapLiteral;
+import com.sigma.ast.Node;
+import com.sigma.ast.ParallelLoop;
+import com.sigma.environments.Environment;
+import com.sigma.evaluation.BuiltinRegistry;
+import com.sigma.evaluation.Operations;
+import com.sigma.evaluation.ParallelLoops;
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.output.ChannelSink;
+import com.sigma.output.OutputSink;
+import com.sigma.runtime.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static com.sigma.vm.OpCode.*;
+
+/*
+ * Stack-based interpreter for chunks produced by the Compiler. Sigma function calls
+ * push an explicit frame instead of recursing in Java, so deep recursion in a script
+ * is limited by the heap rather than the Java stack.
+ *
+ * A frame's closure sits on the stack just below its base, followed by the slots of
+ * its locals, parameters first, and then whatever its code pushes. Returning pops all
+ * of it and leaves the result in the closure's place.
+ */
+public class VirtualMachine {
+    private static final boolean printDebugMessages = false;
+    private static final Value ONE = new NumberValue(1);
+
+    // What a slot holds until its variable is defined, since a variable can hold null
+    static final Object UNDEFINED = new Object();
+    private final Compiler compiler;
+    private final OutputSink out;
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+
+    private static final class Frame {
+        int[] code;
+        Object[] constants;
+        int ip;
+        Environment environment;
+        int base;
+    }
+
+    // What COUNTER leaves on the stack for REPEAT: how many times a loop {n} runs and how
+    // many of them have started
+    private static final class Repetition {
+        final double times;
+        long started = 0;
+
+        Repetition(double times) {
+            this.times = times;
+        }
+    }
+
+    // What FOR_START leaves on the stack for FOR_TEST and FOR_STEP: the variable of a
+    // counted for loop, as a double if it starts out as a number
+    private static final class Range {
+        final boolean counted;
+        double i;
+        Value value;
+
+        Range(Value start) {
+            counted = start instanceof NumberValue;
+            if (counted) i = start.getNumVal();
+            else value = start;
+        }
+    }
+
+    public VirtualMachine(Compiler compiler) {
+        this(compiler, ChannelSink.standard());
+    }
+
+    public VirtualMachine(Compiler compiler, OutputSink out) {
+        this.compiler = compiler;
+        this.out = out;
+    }
+
+    public Value run(Chunk chunk, Environment global) {
+        log("run");
+        int[] code = chunk.getCode();
+        Object[] constants = chunk.getConstants();
+        int ip = 0;
+        Environment environment = global;
+        sp = 0;
+        frameCount = 0;
+        pushFrame();
+        push(null); // no closure, but the frame is laid out like a function's
+        int base = sp;
+        reserve(chunk.getLocals());
+
+        while (true) {
+            int opCode = code[ip++];
+            switch (opCode) {
+                case CONSTANT -> push(constants[code[ip++]]);
+                case NULL -> push(null);
+                case POP -> stack[--sp] = null;
+                case DUP -> push(stack[sp - 1]);
+
+                case LOAD -> push(environment.lookup((Lexeme) constants[code[ip++]]));
+                case STORE -> environment.update((Lexeme) constants[code[ip++]], (Value) pop());
+                case DEFINE -> environment.add((Lexeme) constants[code[ip++]], (Value) pop());
+                case LOAD_LOCAL -> {
+                    int name = code[ip++];
+                    Object value = stack[base + code[ip++]];
+                    push(value != UNDEFINED ? value : environment.lookup((Lexeme) constants[name]));
+                }
+                case STORE_LOCAL -> {
+                    int name = code[ip++];
+                    int slot = base + code[ip++];
+                    if (stack[slot] != UNDEFINED) stack[slot] = pop();
+                    else environment.update((Lexeme) constants[name], (Value) pop());
+                }
+                case DEFINE_LOCAL -> {
+                    Local local = (Local) constants[code[ip++]];
+                    if (stack[base + local.slot] != UNDEFINED || local.shadowsDefinedVariable(stack, base, environment)) {
+                        Sigma.referenceError("Variable " + local.name.getStringVal() + " already exists", local.name);
+                    }
+                    stack[base + local.slot] = pop();
+                }
+                case CLEAR -> {
+                    int slot = base + code[ip++];
+                    Arrays.fill(stack, slot, slot + code[ip++], UNDEFINED);
+                }
+                case FUNCTION -> {
+                    FunctionDefinition definition = (FunctionDefinition) constants[code[ip++]];
+                    if (BuiltinRegistry.isProtected(definition.getName().getStringVal())) {
+                        Sigma.runtimeError("Cannot override built-in function " + definition.getName().getStringVal(), definition);
+                    } else {
+                        environment.add(definition.getName(), new ClosureValue(definition, environment));
+                    }
+                }
+
+                case BINARY -> {
+                    BinaryOp site = (BinaryOp) constants[code[ip++]];
+                    Value r = (Value) pop();
+                    push(site.getNode().execute((Value) pop(), r, site));
+                }
+                case INCREMENT -> push(Operations.plus((Value) pop(), ONE, (Node) constants[code[ip++]]));
+                case DECREMENT -> push(Operations.minus((Value) pop(), ONE, (Node) constants[code[ip++]]));
+                case NEGATE -> push(Operations.negate((Value) pop(), (Node) constants[code[ip++]]));
+                case NOT -> push(Operations.not((Value) pop(), (Node) constants[code[ip++]]));
+                case ARRAY -> {
+                    int count = code[ip++];
+                    ArrayValue elements = new ArrayValue();
+                    for (int i = sp - count; i < sp; i++) elements.add((Value) stack[i]);
+                    popAll(count);
+                    push(elements);
+                }
+                case MAP -> {
+                    MapLiteral literal = (MapLiteral) constants[code[ip++]];
+                    int width = literal.isSet() ? 1 : 2;
+                    int start = sp - literal.size() * width;
+                    MapValue map = new MapValue();
+                    for (int i = 0; i < literal.size(); i++) {
+                        Value key = (Value) stack[start + i * width];
+                        if (!MapValue.isKey(key)) Sigma.runtimeError("Map keys must be numbers, strings or booleans", literal.getKey(i));
+                        if (literal.isSet()) map.include(key);
+                        else map.put(key, (Value) stack[start + i * width + 1]);
+                    }
+                    popAll(literal.size() * width);
+                    push(map);
+                }
+
+                case JUMP -> {
+                    int offset = code[ip++];
+                    ip += offset;
+                }
+                case JUMP_IF_FALSE -> {
+                    int offset = code[ip++];
+                    if (!((Value) pop()).isTruthy()) ip += offset;
+                }
+                case PUSH_ENV -> environment = new Environment(environment);
+                case POP_ENV -> environment = environment.getParent();
+                case ENTER_PARENT -> {
+                    push(environment);
+                    environment = environment.getParent();
+                }
+                case LEAVE_PARENT -> {
+                    Object value = pop();
+                    environment = (Environment) pop();
+                    push(value);
+                }
+                case SWITCH -> {
+                    ChangeStatement site = (ChangeStatement) constants[code[ip++]];
+                    int[] targets = (int[]) constants[code[ip++]];
+                    int before = code[ip++];
+                    int match = site.matchLiteral((Value) stack[sp - 1]);
+                    if (match < before) ip = targets[match];
+                }
+                case CHECK_MISSING -> {
+                    Node site = (Node) constants[code[ip++]];
+                    if (stack[sp - 1] == null) Sigma.runtimeError("Missing expression", site);
+                }
+                case PAREACH -> {
+                    ParallelLoop loop = (ParallelLoop) constants[code[ip++]];
+                    ParallelLoops.run(loop, (Value) pop(), environment, this::engine);
+                }
+                case ITERATE -> {
+                    Node site = (Node) constants[code[ip++]];
+                    Value array = (Value) pop();
+                    if (array instanceof MapValue) array = ((MapValue) array).keys();
+                    if (!(array instanceof ArrayValue)) {
+                        Sigma.runtimeError("Cannot iterate over " + (array == null ? "nothing" : array.getType()), site);
+                        return null;
+                    }
+                    push(((ArrayValue) array).iterator());
+                }
+                case NEXT -> {
+                    int offset = code[ip++];
+                    @SuppressWarnings("unchecked")
+                    Iterator<Value> iterator = (Iterator<Value>) stack[sp - 1];
+                    if (iterator.hasNext()) push(iterator.next());
+                    else ip += offset;
+                }
+                case COUNTER -> push(new Repetition(((Value) pop()).getNumVal()));
+                case REPEAT -> {
+                    int offset = code[ip++];
+                    Repetition repetition = (Repetition) stack[sp - 1];
+                    if (repetition.started < repetition.times) repetition.started++;
+                    else ip += offset;
+                }
+                case FOR_START -> push(new Range((Value) pop()));
+                case FOR_TEST -> {
+                    ForLoop loop = (ForLoop) constants[code[ip++]];
+                    int offset = code[ip++];
+                    Value limit = (Value) pop();
+                    Range range = (Range) stack[sp - 1];
+                    BinaryOp condition = (BinaryOp) loop.getCondition();
+                    boolean more;
+                    if (!range.counted) more = condition.getNode().execute(range.value, limit, condition).isTruthy();
+                    else if (limit instanceof NumberValue) more = loop.isInclusive() ? range.i <= limit.getNumVal() : range.i < limit.getNumVal();
+                    else more = condition.getNode().execute(new NumberValue(range.i), limit, condition).isTruthy();
+                    if (!more) ip += offset;
+                }
+                case FOR_STEP -> {
+                    ForLoop loop = (ForLoop) constants[code[ip++]];
+                    int offset = code[ip++];
+                    Range range = (Range) stack[sp - 1];
+                    if (!range.counted) {
+                        range.value = Operations.plus(range.value, ONE, loop.getUpdate());
+                        push(range.value);
+                    } else if (loop.isVariableRead()) {
+                        push(new NumberValue(++range.i));
+                    } else {
+                        range.i++;
+                        ip += offset;
+                    }
+                }
+
+                case PRINT -> out.println((Value) pop(), ((Node) constants[code[ip++]]).getLineNumber());
+                case PRINT_LINE -> out.println();
+                case BUILTIN -> {
+                    Call call = (Call) constants[code[ip++]];
+                    Value[] args = popArguments(code[ip++]);
+                    push(call.getBuiltin().call(args, call));
+                }
+                case CALL, TAIL_CALL -> {
+                    Call call = (Call) constants[code[ip++]];
+                    int count = code[ip++];
+                    Value function = (Value) stack[sp - count - 1];
+                    if (function.getType() != TokenType.FUNCTION_DEFINITION)
+                        Sigma.runtimeError("Attempt to call " + function.getType() + " as function failed", call.getName());
+                    ClosureValue closure = (ClosureValue) function;
+                    FunctionDefinition definition = closure.getDefinition();
+                    Chunk body = compiler.getFunction(definition);
+
+                    // A tail call has nothing left to run in the current function, so
+                    // the callee's closure and arguments move down to where the current
+                    // one's were, and it returns straight to the caller
+                    if (opCode == TAIL_CALL) {
+                        System.arraycopy(stack, sp - count - 1, stack, base - 1, count + 1);
+                        Arrays.fill(stack, base + count, sp, null);
+                        sp = base + count;
+                    } else {
+                        if (frameCount > Sigma.MAX_CALL_DEPTH) Sigma.runtimeError("Stack overflow: calls nested too deep", call);
+                        Frame caller = frames[frameCount - 1];
+                        caller.code = code;
+                        caller.constants = constants;
+                        caller.ip = ip;
+                        caller.environment = environment;
+                        caller.base = base;
+                        pushFrame();
+                    }
+
+                    // A slotted function's arguments are already its first slots
+                    base = sp - count;
+                    if (body.isSlotted()) {
+                        if (count != definition.getParameterCount()) Sigma.runtimeError("Invalid number of function arguments", call);
+                        reserve(body.getLocals() - count);
+                        environment = closure.getDefiningEnvironment();
+                    } else {
+                        environment = frame(closure, call, count);
+                    }
+                    code = body.getCode();
+                    constants = body.getConstants();
+                    ip = 0;
+                }
+                case RETURN -> {
+                    Object result = pop();
+                    frameCount--;
+                    Arrays.fill(stack, base - 1, sp, null);
+                    sp = base - 1;
+                    if (frameCount == 0) return (Value) result;
+                    push(result);
+                    Frame caller = frames[frameCount - 1];
+                    code = caller.code;
+                    constants = caller.constants;
+                    ip = caller.ip;
+                    environment = caller.environment;
+                    base = caller.base;
+                }
+                case ERROR -> Sigma.runtimeError((String) constants[code[ip++]], (Node) constants[code[ip++]]);
+                case REFERENCE_ERROR -> Sigma.referenceError((String) constants[code[ip++]], (Node) constants[code[ip++]]);
+
+                default -> {
+                    Sigma.runtimeError("Unknown opcode " + opCode, 0);
+                    return null;
+                }
+            }
+        }
+    }
+
+    // Each of a pareach's tasks runs its blocks on a machine of its own
+    private ParallelLoops.Engine engine() {
+        VirtualMachine machine = new VirtualMachine(compiler, out);
+        return (block, environment) -> machine.run(compiler.getBlock(block), environment);
+    }
+
+    // Stack
+    private void push(Object value) {
+        if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private void popAll(int count) {
+        for (int i = 0; i < count; i++) stack[--sp] = null;
+    }
+
+    // Pushes count undefined slots, for a frame's locals
+    private void reserve(int count) {
+        if (sp + count > stack.length) stack = Arrays.copyOf(stack, Math.max(sp * 2, sp + count));
+        Arrays.fill(stack, sp, sp + count, UNDEFINED);
+        sp += count;
+    }
+
+    // Pops the arguments of a call straight into the callee's frame once the call
+    // site has seen this function, as the Evaluator does
+    private Environment frame(ClosureValue closure, Call call, int count) {
+        FunctionDefinition definition = closure.getDefinition();
+        Environment frame = new Environment(closure.getDefiningEnvironment(), definition);
+        if (call.getTarget() == definition) {
+            for (int i = count - 1; i >= 0; i--) frame.bind(i, (Value) pop());
+            return frame;
+        }
+        Value[] args = popArguments(count);
+        if (definition.hasDirectParameters() && count == definition.getParameterCount()) {
+            for (int i = 0; i < count; i++) frame.bind(i, args[i]);
+            call.setTarget(definition);
+        } else {
+            frame.extend(definition, args, call);
+        }
+        return frame;
+    }
+
+    private Value[] popArguments(int count) {
+        Value[] args = new Value[count];
+        for (int i = count - 1; i >= 0; i--) args[i] = (Value) pop();
+        return args;
+    }
+
+    private void pushFrame() {
+        if (frameCount == frames.length) frames = Arrays.copyOf(frames, frameCount * 2);
+        if (frames[frameCount] == null) frames[frameCount] = new Frame();
+        frameCount++;
+    }
+
+    // Debugging
+    private static void log(String message) {
+        if (printDebugMessages) System.out.println(message);
+    }
+}
@@ -0,0 +1,57 @@
+package com.sigma.benchmarks;
+
+import com.sigma.scripting.SigmaEngine;
+import org.openjdk.jmh.annotations.*;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Running the demonstrate/ scripts through javax.script: eval reuses one compiled
+ * script, compileAndEval compiles it again for every run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    @Param({"crissCross", "factitude", "noDoubles"})
+    public String script;
+
+    @Param({"tree", "vm"})
+    public String engine;
+
+    private String source;
+    private SigmaEngine sigma;
+    private CompiledScript compiled;
+
+    @Setup
+    public void setUp() throws IOException, ScriptException {
+        source = Sources.demonstrate(script);
+        sigma = new SigmaEngine(engine);
+        compiled = sigma.compile(source);
+    }
+
+    private static ScriptContext context() {
+        ScriptContext context = new SimpleScriptContext();
+        context.setWriter(Writer.nullWriter());
+        return context;
+    }
+
+    @Benchmark
+    public Object eval() throws ScriptException {
+        return compiled.eval(context());
+    }
+
+    @Benchmark
+    public Object compileAndEval() throws ScriptException {
+        return sigma.compile(source).eval(context());
+    }
+}
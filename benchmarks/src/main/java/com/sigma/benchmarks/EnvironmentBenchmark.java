@@ -0,0 +1,78 @@
+package com.sigma.benchmarks;
+
+import com.sigma.environments.Environment;
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.TokenType;
+import com.sigma.runtime.NumberValue;
+import com.sigma.runtime.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Lookups and updates of a variable declared in the outermost of `depth` nested
+ * environments, each holding `size` variables. The resolved variants use the
+ * (depth, slot) address the Resolver assigns; the by-name variants take the
+ * fallback path used for names the Resolver couldn't place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    @Param({"4", "64", "512"})
+    public int size;
+
+    private Environment innermost;
+    private Lexeme byName;
+    private Lexeme resolved;
+    private final Value value = new NumberValue(42);
+
+    @Setup
+    public void setUp() {
+        Environment environment = null;
+        for (int level = 0; level < depth; level++) {
+            environment = new Environment(environment);
+            for (int i = 0; i < size; i++) {
+                environment.add(new Lexeme(TokenType.IDENTIFIER, 1, "v" + level + "_" + i), new NumberValue(i));
+            }
+        }
+        innermost = environment;
+        byName = new Lexeme(TokenType.IDENTIFIER, 1, "v0_" + (size - 1));
+        resolved = new Lexeme(TokenType.IDENTIFIER, 1, "v0_" + (size - 1));
+        resolved.resolve(depth - 1, size - 1);
+    }
+
+    @Benchmark
+    public Value lookupByName() {
+        return innermost.lookup(byName);
+    }
+
+    @Benchmark
+    public void updateByName() {
+        innermost.update(byName, value);
+    }
+
+    @Benchmark
+    public Value lookupResolved() {
+        return innermost.lookup(resolved);
+    }
+
+    @Benchmark
+    public void updateResolved() {
+        innermost.update(resolved, value);
+    }
+
+    // Declaring checks the whole chain for an existing variable of the same name
+    @Benchmark
+    public Environment declare() {
+        Environment scope = new Environment(innermost);
+        scope.add(new Lexeme(TokenType.IDENTIFIER, 1, "fresh"), value);
+        return scope;
+    }
+}
@@ -0,0 +1,63 @@
+package com.sigma.benchmarks;
+
+import com.sigma.ast.Program;
+import com.sigma.environments.Environment;
+import com.sigma.evaluation.Evaluator;
+import com.sigma.lexicalAnalysis.Lexer;
+import com.sigma.optimization.ConstantFolder;
+import com.sigma.parsing.Parser;
+import com.sigma.resolution.Resolver;
+import com.sigma.runtime.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * End-to-end runs of the demonstrate/ scripts: evaluate measures the tree-walker on
+ * an already resolved tree, run includes lexing, parsing, folding and resolving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+    @Param({"apply", "crissCross", "distanceTo21", "factitude", "maxOfThree", "noDoubles", "noSevens", "squareMachine"})
+    public String script;
+
+    private String source;
+    private Program tree;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = Sources.demonstrate(script);
+        tree = parse(source);
+        out = System.out;
+        System.setOut(Sources.discard());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    private static Program parse(String source) {
+        Program program = new ConstantFolder().fold(new Parser(new Lexer(source)).program());
+        new Resolver().resolve(program);
+        return program;
+    }
+
+    @Benchmark
+    public Value evaluate() {
+        return new Evaluator().eval(tree, new Environment());
+    }
+
+    @Benchmark
+    public Value run() {
+        return new Evaluator().eval(parse(source), new Environment());
+    }
+}
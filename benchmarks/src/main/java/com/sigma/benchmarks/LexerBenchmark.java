@@ -0,0 +1,38 @@
+package com.sigma.benchmarks;
+
+import com.sigma.lexicalAnalysis.Lexeme;
+import com.sigma.lexicalAnalysis.Lexer;
+import com.sigma.lexicalAnalysis.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int blocks;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Sources.generate(blocks);
+    }
+
+    @Benchmark
+    public TokenBuffer lex() {
+        return new Lexer(source).tokenize();
+    }
+
+    // Every token as a Lexeme, as the Lexer used to produce them
+    @Benchmark
+    public ArrayList<Lexeme> lexemes() {
+        return new Lexer(source).lex();
+    }
+}
@@ -0,0 +1,40 @@
+package com.sigma.benchmarks;
+
+import com.sigma.ast.Program;
+import com.sigma.lexicalAnalysis.Lexer;
+import com.sigma.lexicalAnalysis.TokenBuffer;
+import com.sigma.parsing.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int blocks;
+
+    private String source;
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setUp() {
+        source = Sources.generate(blocks);
+        tokens = new Lexer(source).tokenize();
+    }
+
+    @Benchmark
+    public Program program() {
+        return new Parser(tokens).program();
+    }
+
+    // Lexing and parsing together, with the Parser pulling lexemes as it goes
+    @Benchmark
+    public Program streamed() {
+        return new Parser(new Lexer(source)).program();
+    }
+}
@@ -0,0 +1,93 @@
+package com.sigma.benchmarks;
+
+import com.sigma.ast.Program;
+import com.sigma.environments.Environment;
+import com.sigma.evaluation.Evaluator;
+import com.sigma.lexicalAnalysis.Lexer;
+import com.sigma.output.OutputSink;
+import com.sigma.output.WriterSink;
+import com.sigma.parsing.Parser;
+import com.sigma.profiling.Profiler;
+import com.sigma.profiling.ProfilingEvaluator;
+import com.sigma.resolution.Resolver;
+import com.sigma.runtime.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of --profile: the same programs on the plain Evaluator and on the
+ * ProfilingEvaluator with the sampler running. Each runs in its own fork, so the plain
+ * runs never see the profiling subclass and show the cost of profiling being off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfilerBenchmark {
+    private static final String CALLS = """
+            func fib <- x »
+                if {x < 2} »
+                    x‼
+                « but »
+                    fib{ x - 1 } + fib{ x - 2 }‼
+                «
+            «‼
+            fib {15}‼
+            """;
+
+    private static final String LOOPS = """
+            func work <- n »
+                var total <- 0‼
+                for {var i <- 0‼ i < n‼ ++i} »
+                    total +<- i * 2 % 7‼
+                «
+                total‼
+            «‼
+            work {2000}‼
+            """;
+
+    @Param({"calls", "loops"})
+    public String program;
+
+    private Program tree;
+    private OutputSink out;
+
+    @Setup
+    public void setUp() {
+        tree = new Parser(new Lexer(program.equals("calls") ? CALLS : LOOPS)).program();
+        new Resolver().resolve(tree);
+        out = new WriterSink(Writer.nullWriter());
+    }
+
+    @Benchmark
+    @Fork(1)
+    public Value plain() {
+        return new Evaluator(out).eval(tree, new Environment());
+    }
+
+    @State(Scope.Benchmark)
+    public static class Sampling {
+        Profiler profiler;
+
+        @Setup
+        public void setUp() {
+            profiler = new Profiler();
+            profiler.start();
+        }
+
+        @TearDown
+        public void tearDown() {
+            profiler.stop();
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    public Value profiled(Sampling sampling) {
+        return new ProfilingEvaluator(out, sampling.profiler).eval(tree, new Environment());
+    }
+}
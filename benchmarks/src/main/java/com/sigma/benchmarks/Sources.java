@@ -0,0 +1,57 @@
+package com.sigma.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * Sigma sources for the benchmarks: generated programs of a given size, and the
+ * scripts in Sigma/demonstrate.
+ */
+final class Sources {
+    private Sources() {
+    }
+
+    // Each block declares its own names, so the generated program also resolves and
+    // runs without redeclaration errors
+    static String generate(int blocks) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            source.append("\\ block ").append(i).append("\n");
+            source.append("var x").append(i).append(" <- ").append(i).append(" * 2 + 3 % 4‼\n");
+            source.append("var s").append(i).append(" <- \"item \" + str { x").append(i).append(" }‼\n");
+            source.append("func f").append(i).append(" <- a, b »\n");
+            source.append("    var return <- a + b * 1.5‼\n");
+            source.append("    return‼\n");
+            source.append("«‼\n");
+            source.append("if { x").append(i).append(" > 10 and not fals } »\n");
+            source.append("    x").append(i).append(" <- f").append(i).append(" { x").append(i).append(", 2 }‼\n");
+            source.append("« but »\n");
+            source.append("    x").append(i).append(" +<- 1‼\n");
+            source.append("«\n");
+            source.append("foreach { var e").append(i).append(" of (1, 2, \"three\", true) } »\n");
+            source.append("    s").append(i).append(" +<- str { e").append(i).append(" }‼\n");
+            source.append("«\n");
+        }
+        return source.toString();
+    }
+
+    static Path demonstrate() {
+        Path path = Paths.get(System.getProperty("sigma.demonstrate", "Sigma/demonstrate"));
+        if (!Files.isDirectory(path)) path = Paths.get("..", "Sigma", "demonstrate");
+        return path;
+    }
+
+    static String demonstrate(String script) throws IOException {
+        return Files.readString(demonstrate().resolve(script + ".sigma"), StandardCharsets.UTF_8);
+    }
+
+    // Scripts print with log; the output is thrown away so it doesn't end up in the results
+    static PrintStream discard() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+}